@@ -44,6 +44,10 @@ public interface BillingService extends OpenmrsService {
 	
 	List<Billing> getAllBillsByPatient(Integer patientId); //get all bills for patient given patientId
 	
+	List<Billing> getAllBillsByPatient(Integer patientId, Integer startIndex, Integer limit); //get one page of the bills for patient given patientId
+	
+	Integer getCountOfBillsByPatient(Integer patientId); //count the bills for patient given patientId
+	
 	List<Encounter> getEncountersByPatientId(Integer patientId);
 	
 }
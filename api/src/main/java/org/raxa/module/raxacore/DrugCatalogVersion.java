@@ -0,0 +1,75 @@
+package org.raxa.module.raxacore;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Version of the drug catalog, i.e. the drugs, drug groups and drug infos, so clients can tell
+ * whether their copy is current. The version is bumped whenever any of them is saved through this
+ * server and restarts with the server, so the ETag includes the time the server started.
+ */
+public final class DrugCatalogVersion {
+	
+	private static final long STARTED = System.currentTimeMillis();
+	
+	private static long version = 0;
+	
+	private static long lastModified = STARTED;
+	
+	private DrugCatalogVersion() {
+	}
+	
+	/**
+	 * Moves the catalog to a new version
+	 */
+	public static synchronized void bump() {
+		version++;
+		lastModified = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Bumps the version now and again once the transaction commits, so a client reading before the
+	 * commit cannot keep the old catalog under the new version
+	 */
+	public static void bumpAfterCommit() {
+		bump();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCommit() {
+					bump();
+				}
+			});
+		}
+	}
+	
+	/**
+	 * @return the HTTP entity tag of the current version, quoted
+	 */
+	public static synchronized String getETag() {
+		return "\"drugs-" + Long.toString(STARTED, 36) + "-" + version + "\"";
+	}
+	
+	/**
+	 * @return the time the catalog last changed, or the server started, in milliseconds
+	 */
+	public static synchronized long getLastModified() {
+		return lastModified;
+	}
+}
@@ -26,6 +26,11 @@ import org.openmrs.Provider;
 
 public class DrugInventory extends BaseOpenmrsMetadata implements Serializable {
 	
+	/**
+	 * Status of a batch that has no quantity left
+	 */
+	public static final String STATUS_OUT = "out";
+	
 	private Integer id;
 	
 	private Integer drugId;
@@ -60,6 +65,8 @@ public class DrugInventory extends BaseOpenmrsMetadata implements Serializable {
 	
 	private DrugPurchaseOrder drugPurchaseOrder;
 	
+	private Integer version;
+	
 	public DrugInventory() {
 		
 	}
@@ -214,4 +221,18 @@ public class DrugInventory extends BaseOpenmrsMetadata implements Serializable {
 		this.supplier = supplier;
 	}
 	
+	/**
+	 * @return the version, incremented by every update of the inventory
+	 */
+	public Integer getVersion() {
+		return version;
+	}
+	
+	/**
+	 * @param version the version to set
+	 */
+	public void setVersion(Integer version) {
+		this.version = version;
+	}
+	
 }
@@ -0,0 +1,71 @@
+package org.raxa.module.raxacore;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+/**
+ * One line item of a DrugPurchaseOrder or prescription: the DrugInventory received or dispensed,
+ * and either the uuid of the batch its quantity is taken out of, or the location whose batches
+ * the quantity is allocated from, first expiry first out
+ */
+public final class DrugInventoryMovement {
+	
+	private final DrugInventory drugInventory;
+	
+	private final String batchUuid;
+	
+	private final Integer allocationLocationId;
+	
+	public DrugInventoryMovement(DrugInventory drugInventory, String batchUuid) {
+		this(drugInventory, batchUuid, null);
+	}
+	
+	private DrugInventoryMovement(DrugInventory drugInventory, String batchUuid, Integer allocationLocationId) {
+		this.drugInventory = drugInventory;
+		this.batchUuid = batchUuid;
+		this.allocationLocationId = allocationLocationId;
+	}
+	
+	/**
+	 * @param drugInventory the DrugInventory received or dispensed
+	 * @param locationId the location whose batches the quantity is taken out of
+	 * @return a movement whose batches are chosen by DrugInventoryService when it is saved
+	 */
+	public static DrugInventoryMovement allocate(DrugInventory drugInventory, Integer locationId) {
+		return new DrugInventoryMovement(drugInventory, null, locationId);
+	}
+	
+	/**
+	 * @return the drugInventory received or dispensed
+	 */
+	public DrugInventory getDrugInventory() {
+		return drugInventory;
+	}
+	
+	/**
+	 * @return the uuid of the batch the quantity is taken out of, or null
+	 */
+	public String getBatchUuid() {
+		return batchUuid;
+	}
+	
+	/**
+	 * @return the location whose batches the quantity is allocated from, or null
+	 */
+	public Integer getAllocationLocationId() {
+		return allocationLocationId;
+	}
+}
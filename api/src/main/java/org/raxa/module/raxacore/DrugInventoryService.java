@@ -13,11 +13,15 @@ package org.raxa.module.raxacore;
  * specific language governing permissions and limitations under the License.
  */
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import org.openmrs.Encounter;
 import org.openmrs.EncounterType;
 import org.openmrs.Patient;
 import org.openmrs.annotation.Authorized;
+import org.openmrs.api.APIException;
 import org.openmrs.api.OpenmrsService;
 import org.openmrs.util.PrivilegeConstants;
 import org.raxa.module.raxacore.db.DrugInventoryDAO;
@@ -32,6 +36,21 @@ public interface DrugInventoryService extends OpenmrsService {
 	
 	List<DrugInventory> getAllDrugInventories();
 	
+	/**
+	 * Gets one page of all DrugInventories, in the order they were created
+	 * 
+	 * @param startIndex index of the first inventory of the page, 0 if null
+	 * @param limit maximum number of inventories in the page
+	 * @return the DrugInventories
+	 * @throws IllegalArgumentException if limit is less than 1
+	 */
+	List<DrugInventory> getAllDrugInventories(Integer startIndex, Integer limit);
+	
+	/**
+	 * @return the number of DrugInventories
+	 */
+	Integer getCountOfAllDrugInventories();
+	
 	List<DrugInventory> getAllDrugInventoriesByStatus(String status);
 	
 	DrugInventory updateDrugInventory(DrugInventory drugInventory);
@@ -43,4 +62,74 @@ public interface DrugInventoryService extends OpenmrsService {
 	List<DrugInventory> getDrugInventoriesByLocation(Integer location);
 	
 	List<DrugInventory> getDrugInventoriesByDrugPurchaseOrder(Integer drugPurchaseOrderId);
+	
+	/**
+	 * Gets the DrugInventories with the given uuids using a single query
+	 * 
+	 * @param uuids
+	 * @return the DrugInventories found, by uuid
+	 */
+	Map<String, DrugInventory> getDrugInventoriesByUuids(Collection<String> uuids);
+	
+	/**
+	 * Applies all stock movements of a purchase order or prescription at once. The batches are
+	 * resolved with a single query, the quantity of each movement is taken out of its batch with an
+	 * atomic conditional update (a batch that runs empty is marked "out"), and everything is flushed
+	 * in JDBC batches. Movements created with {@link DrugInventoryMovement#allocate} are first split
+	 * over batches as by {@link #allocateDrugInventoryMovements(DrugInventory, Integer)}.
+	 * 
+	 * @param movements the line items of the purchase order or prescription
+	 * @param saveInventories whether the inventories of the movements are saved as well; false for
+	 *            prescriptions, which only take stock out of batches
+	 * @return the DrugInventories saved or updated
+	 * @throws APIException if a movement taking stock has a quantity below 1, or a batch is not found or
+	 *             does not hold enough stock; nothing is saved
+	 */
+	List<DrugInventory> saveDrugInventoryMovements(List<DrugInventoryMovement> movements, boolean saveInventories)
+	        throws APIException;
+	
+	/**
+	 * Gets the total stock of a drug in a location. DrugStocks are kept up to date with every save,
+	 * update and delete of a DrugInventory, so this is a single lookup instead of summing inventories.
+	 * 
+	 * @param drugId
+	 * @param locationId
+	 * @return the DrugStock, or null if the location holds none of the drug
+	 */
+	DrugStock getDrugStock(Integer drugId, Integer locationId);
+	
+	/**
+	 * Splits the quantity of a DrugInventory over the batches of its drug in a location, first
+	 * expiry first out. The batches are read with a single locking query.
+	 * 
+	 * @param drugInventory the DrugInventory to dispense, with drug and quantity set
+	 * @param locationId the location the quantity is taken out of
+	 * @return one movement per batch used, each with a copy of drugInventory holding the quantity
+	 *         taken and the batch and expiryDate of the batch
+	 * @throws APIException if the location holds less than the quantity
+	 */
+	List<DrugInventoryMovement> allocateDrugInventoryMovements(DrugInventory drugInventory, Integer locationId)
+	        throws APIException;
+	
+	/**
+	 * Gets one page of the DrugInventories of a location that expire before a date, in the order they
+	 * expire. Inventories that are retired or "out" are left out.
+	 * 
+	 * @param locationId
+	 * @param expiryDate inventories expiring before this date are returned
+	 * @param startIndex index of the first inventory of the page, 0 if null
+	 * @param limit maximum number of inventories in the page
+	 * @return the DrugInventories
+	 * @throws IllegalArgumentException if limit is less than 1
+	 */
+	List<DrugInventory> getDrugInventoriesExpiringBefore(Integer locationId, Date expiryDate, Integer startIndex,
+	        Integer limit);
+	
+	/**
+	 * Gets the total stock of every drug held in a location
+	 * 
+	 * @param locationId
+	 * @return the DrugStocks
+	 */
+	List<DrugStock> getDrugStocksByLocation(Integer locationId);
 }
@@ -31,6 +31,10 @@ public interface DrugPurchaseOrderService extends OpenmrsService {
 	
 	List<DrugPurchaseOrder> getAllDrugPurchaseOrders();
 	
+	List<DrugPurchaseOrder> getAllDrugPurchaseOrders(Integer startIndex, Integer limit);
+	
+	Integer getCountOfAllDrugPurchaseOrders();
+	
 	List<DrugPurchaseOrder> getAllDrugPurchaseOrdersNotReceived();
 	
 	DrugPurchaseOrder updateDrugPurchaseOrder(DrugPurchaseOrder drugPurchaseOrder);
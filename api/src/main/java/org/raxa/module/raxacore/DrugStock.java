@@ -0,0 +1,112 @@
+package org.raxa.module.raxacore;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import java.io.Serializable;
+import java.util.Date;
+import org.openmrs.Drug;
+import org.openmrs.Location;
+
+/**
+ * DrugStock is the total quantity of a drug held in a location, summed over its DrugInventories.
+ * It is maintained by DrugInventoryService whenever an inventory of the drug changes.
+ */
+public class DrugStock implements Serializable {
+	
+	private Integer id;
+	
+	private Drug drug;
+	
+	private Location location;
+	
+	private Integer quantity;
+	
+	private Date earliestExpiryDate;
+	
+	public DrugStock() {
+	
+	}
+	
+	/**
+	 * @return the drugStockId
+	 */
+	public Integer getId() {
+		return id;
+	}
+	
+	/**
+	 * @param id the drugStockId to set
+	 */
+	public void setId(Integer id) {
+		this.id = id;
+	}
+	
+	/**
+	 * @return the drug
+	 */
+	public Drug getDrug() {
+		return drug;
+	}
+	
+	/**
+	 * @param drug the drug to set
+	 */
+	public void setDrug(Drug drug) {
+		this.drug = drug;
+	}
+	
+	/**
+	 * @return the location
+	 */
+	public Location getLocation() {
+		return location;
+	}
+	
+	/**
+	 * @param location the location to set
+	 */
+	public void setLocation(Location location) {
+		this.location = location;
+	}
+	
+	/**
+	 * @return the total quantity in stock
+	 */
+	public Integer getQuantity() {
+		return quantity;
+	}
+	
+	/**
+	 * @param quantity the total quantity to set
+	 */
+	public void setQuantity(Integer quantity) {
+		this.quantity = quantity;
+	}
+	
+	/**
+	 * @return the expiryDate of the first inventory to expire, or null if none has one
+	 */
+	public Date getEarliestExpiryDate() {
+		return earliestExpiryDate;
+	}
+	
+	/**
+	 * @param earliestExpiryDate the earliestExpiryDate to set
+	 */
+	public void setEarliestExpiryDate(Date earliestExpiryDate) {
+		this.earliestExpiryDate = earliestExpiryDate;
+	}
+}
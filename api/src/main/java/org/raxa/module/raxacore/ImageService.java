@@ -1,6 +1,8 @@
 package org.raxa.module.raxacore;
 
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 import org.openmrs.api.OpenmrsService;
 import org.raxa.module.raxacore.db.ImageDAO;
 import org.springframework.transaction.annotation.Transactional;
@@ -25,10 +27,24 @@ public interface ImageService extends OpenmrsService {
 	
 	Image saveImage(Image image);
 	
+	Image saveImage(Image image, InputStream imageData);
+	
 	Image getImageByUuid(String uuid);
 	
+	Image getImageByUuid(String uuid, String size);
+	
+	Image getImageMetadataByUuid(String uuid);
+	
 	List<Image> getAllImages();
 	
+	List<Image> getAllImages(Integer startIndex, Integer limit);
+	
+	Integer getCountOfAllImages();
+	
+	Integer migrateImagesToStore(Integer afterId, Integer limit);
+	
+	Integer getCountOfImagesNotInStore();
+	
 	Image updateImage(Image image);
 	
 	void deleteImage(Image image);
@@ -45,7 +61,13 @@ public interface ImageService extends OpenmrsService {
 	
 	Image getLatestImageByTagForPatient(String tag, String patientUuid);
 	
+	Image getLatestImageByTagForPatient(String tag, String patientUuid, String size);
+	
 	String getPath(Image image);
 	
+	String getPath(Image image, String size);
+	
 	String getImageDirectory();
+	
+	Map<String, Object> getImageCacheStatistics();
 }
@@ -0,0 +1,43 @@
+package org.raxa.module.raxacore;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Storage for the bytes of Images. Files are stored under a key, relative to the store directory, that Image keeps
+ * as its fileName.
+ */
+public interface ImageStore {
+	
+	/**
+	 * Stores the image data under the hash of its content; data already in the store is not written again
+	 *
+	 * @param data the image bytes, read to the end but not closed
+	 * @param fileType extension of the stored file, e.g. png
+	 * @return the key of the stored file
+	 * @throws IOException
+	 */
+	public String put(InputStream data, String fileType) throws IOException;
+	
+	/**
+	 * @param key a key returned by put
+	 * @return the file stored under the key, which may not exist
+	 */
+	public File getFile(String key);
+}
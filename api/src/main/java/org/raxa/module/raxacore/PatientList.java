@@ -27,6 +27,8 @@ public class PatientList extends BaseOpenmrsMetadata implements Serializable {
 	
 	private String searchQuery;
 	
+	private Boolean materialized = Boolean.FALSE;
+	
 	public PatientList() {
 		
 	}
@@ -97,4 +99,18 @@ public class PatientList extends BaseOpenmrsMetadata implements Serializable {
 		this.searchQuery = searchQuery;
 	}
 	
+	/**
+	 * @return whether the list membership is stored and kept up to date as encounters are saved
+	 */
+	public Boolean getMaterialized() {
+		return materialized;
+	}
+	
+	/**
+	 * @param materialized whether the list membership should be stored
+	 */
+	public void setMaterialized(Boolean materialized) {
+		this.materialized = materialized;
+	}
+	
 }
@@ -0,0 +1,87 @@
+package org.raxa.module.raxacore;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import java.util.Date;
+import org.openmrs.Encounter;
+
+/**
+ * Position in an evaluated PatientList. Patient lists are ordered by encounterDatetime and then
+ * encounterId, so the last encounter of a page identifies where the next page starts even if
+ * encounters are added or removed between requests. The String form is
+ * "<encounterDatetime in milliseconds>_<encounterId>".
+ */
+public final class PatientListCursor {
+	
+	private static final String SEPARATOR = "_";
+	
+	private final long encounterDatetime;
+	
+	private final Integer encounterId;
+	
+	public PatientListCursor(Date encounterDatetime, Integer encounterId) {
+		this.encounterDatetime = encounterDatetime.getTime();
+		this.encounterId = encounterId;
+	}
+	
+	/**
+	 * @param encounter the last encounter of a page
+	 * @return cursor pointing after the encounter
+	 */
+	public static PatientListCursor after(Encounter encounter) {
+		return new PatientListCursor(encounter.getEncounterDatetime(), encounter.getEncounterId());
+	}
+	
+	/**
+	 * Parses the String form of a cursor
+	 *
+	 * @param cursor
+	 * @return PatientListCursor
+	 * @throws IllegalArgumentException if the cursor is malformed
+	 */
+	public static PatientListCursor parse(String cursor) {
+		int separator = cursor.indexOf(SEPARATOR);
+		if (separator == -1) {
+			throw new IllegalArgumentException("Malformed cursor, must be <encounterDatetime>_<encounterId>");
+		}
+		try {
+			return new PatientListCursor(new Date(Long.parseLong(cursor.substring(0, separator))), Integer
+			        .valueOf(cursor.substring(separator + 1)));
+		}
+		catch (NumberFormatException ex) {
+			throw new IllegalArgumentException("Malformed cursor, must be <encounterDatetime>_<encounterId>");
+		}
+	}
+	
+	/**
+	 * @return the encounterDatetime of the last encounter returned
+	 */
+	public Date getEncounterDatetime() {
+		return new Date(encounterDatetime);
+	}
+	
+	/**
+	 * @return the encounterId of the last encounter returned
+	 */
+	public Integer getEncounterId() {
+		return encounterId;
+	}
+	
+	@Override
+	public String toString() {
+		return encounterDatetime + SEPARATOR + encounterId;
+	}
+}
@@ -0,0 +1,142 @@
+package org.raxa.module.raxacore;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Projection of one encounter of a PatientList with only the fields the ref and default
+ * representations render. Rows are read as columns, so no Patient, Encounter or Obs entities are
+ * loaded into the session.
+ */
+public class PatientListEncounterRow {
+	
+	private final Integer encounterId;
+	
+	private final String encounterUuid;
+	
+	private final Date encounterDatetime;
+	
+	private final String encounterTypeName;
+	
+	private final String encounterTypeUuid;
+	
+	private final Integer patientId;
+	
+	private final String patientUuid;
+	
+	private final String patientName;
+	
+	private final String gender;
+	
+	private final Integer age;
+	
+	private final List<PatientListObsRow> obs = new ArrayList<PatientListObsRow>();
+	
+	public PatientListEncounterRow(Integer encounterId, String encounterUuid, Date encounterDatetime,
+	    String encounterTypeName, String encounterTypeUuid, Integer patientId, String patientUuid, String patientName,
+	    String gender, Integer age) {
+		this.encounterId = encounterId;
+		this.encounterUuid = encounterUuid;
+		this.encounterDatetime = encounterDatetime;
+		this.encounterTypeName = encounterTypeName;
+		this.encounterTypeUuid = encounterTypeUuid;
+		this.patientId = patientId;
+		this.patientUuid = patientUuid;
+		this.patientName = patientName;
+		this.gender = gender;
+		this.age = age;
+	}
+	
+	/**
+	 * @return the encounterId
+	 */
+	public Integer getEncounterId() {
+		return encounterId;
+	}
+	
+	/**
+	 * @return the encounter uuid
+	 */
+	public String getEncounterUuid() {
+		return encounterUuid;
+	}
+	
+	/**
+	 * @return the encounterDatetime
+	 */
+	public Date getEncounterDatetime() {
+		return encounterDatetime;
+	}
+	
+	/**
+	 * @return the name of the encounter type
+	 */
+	public String getEncounterTypeName() {
+		return encounterTypeName;
+	}
+	
+	/**
+	 * @return the uuid of the encounter type
+	 */
+	public String getEncounterTypeUuid() {
+		return encounterTypeUuid;
+	}
+	
+	/**
+	 * @return the patientId
+	 */
+	public Integer getPatientId() {
+		return patientId;
+	}
+	
+	/**
+	 * @return the patient uuid
+	 */
+	public String getPatientUuid() {
+		return patientUuid;
+	}
+	
+	/**
+	 * @return the full preferred name of the patient
+	 */
+	public String getPatientName() {
+		return patientName;
+	}
+	
+	/**
+	 * @return the gender of the patient
+	 */
+	public String getGender() {
+		return gender;
+	}
+	
+	/**
+	 * @return the age of the patient, or null if the birthdate is unknown
+	 */
+	public Integer getAge() {
+		return age;
+	}
+	
+	/**
+	 * @return the non-voided leaf obs of the encounter
+	 */
+	public List<PatientListObsRow> getObs() {
+		return obs;
+	}
+}
@@ -0,0 +1,81 @@
+package org.raxa.module.raxacore;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import java.io.Serializable;
+
+/**
+ * PatientListMember stores one encounter in the snapshot of a materialized PatientList
+ */
+public class PatientListMember implements Serializable {
+	
+	private Integer id;
+	
+	private PatientList patientList;
+	
+	private Integer encounterId;
+	
+	public PatientListMember() {
+	
+	}
+	
+	public PatientListMember(PatientList patientList, Integer encounterId) {
+		this.patientList = patientList;
+		this.encounterId = encounterId;
+	}
+	
+	/**
+	 * @return the patientListMemberId
+	 */
+	public Integer getId() {
+		return id;
+	}
+	
+	/**
+	 * @param id the patientListMemberId to set
+	 */
+	public void setId(Integer id) {
+		this.id = id;
+	}
+	
+	/**
+	 * @return the patientList
+	 */
+	public PatientList getPatientList() {
+		return patientList;
+	}
+	
+	/**
+	 * @param patientList the patientList to set
+	 */
+	public void setPatientList(PatientList patientList) {
+		this.patientList = patientList;
+	}
+	
+	/**
+	 * @return the encounterId
+	 */
+	public Integer getEncounterId() {
+		return encounterId;
+	}
+	
+	/**
+	 * @param encounterId the encounterId to set
+	 */
+	public void setEncounterId(Integer encounterId) {
+		this.encounterId = encounterId;
+	}
+}
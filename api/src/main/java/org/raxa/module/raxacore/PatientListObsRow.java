@@ -0,0 +1,77 @@
+package org.raxa.module.raxacore;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import java.util.Date;
+import java.util.Locale;
+import org.openmrs.Concept;
+import org.openmrs.Obs;
+
+/**
+ * Projection of one obs of a {@link PatientListEncounterRow}. The value columns are kept on a
+ * transient Obs, which is never attached to the session, so values are formatted exactly as
+ * Obs.getValueAsString formats them.
+ */
+public class PatientListObsRow {
+	
+	private final String uuid;
+	
+	private final Date obsDatetime;
+	
+	private final Obs value;
+	
+	public PatientListObsRow(String uuid, Date obsDatetime, Concept concept, Concept valueCoded, Double valueNumeric,
+	    Date valueDatetime, String valueText, String valueModifier) {
+		this.uuid = uuid;
+		this.obsDatetime = obsDatetime;
+		this.value = new Obs();
+		value.setConcept(concept);
+		value.setValueCoded(valueCoded);
+		value.setValueNumeric(valueNumeric);
+		value.setValueDatetime(valueDatetime);
+		value.setValueText(valueText);
+		value.setValueModifier(valueModifier);
+	}
+	
+	/**
+	 * @return the obs uuid
+	 */
+	public String getUuid() {
+		return uuid;
+	}
+	
+	/**
+	 * @return the obsDatetime
+	 */
+	public Date getObsDatetime() {
+		return obsDatetime;
+	}
+	
+	/**
+	 * @return the name of the obs concept
+	 */
+	public String getConceptName() {
+		return value.getConcept().getName().getName();
+	}
+	
+	/**
+	 * @param locale
+	 * @return the value as Obs.getValueAsString would return it
+	 */
+	public String getValueAsString(Locale locale) {
+		return value.getValueAsString(locale);
+	}
+}
@@ -0,0 +1,311 @@
+package org.raxa.module.raxacore;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.api.context.Context;
+import org.raxa.module.raxacore.util.RaxaDateFormat;
+
+/**
+ * Parsed form of a PatientList searchQuery. {@link #parse(String)} splits the query string and
+ * parses its dates; {@link #bind()} looks up the ids of the encounter type, location, provider and
+ * patient named by uuid. A bound plan holds ids rather than entities, so it can be cached and used
+ * from any session without looking anything up again; the DAO restricts on proxies of those ids.
+ * The tradeoff is that a cached plan keeps the ids it was bound with, so callers only cache plans
+ * whose uuids all matched (see {@link #hasUnmatchedUuids()}). inList and notInList are kept as uuids
+ * of the saved sub-lists; {@link #resolve(List, List)} attaches the sub-lists' own plans before the
+ * plan is evaluated.
+ * Query must be in the form of:
+ * "?encounterType=<uuid>&startDate=2012-05-07&endDate=2012-05-08&inList=<uuidForList>&notInList=<uuidForList>"
+ */
+public final class PatientListQueryPlan {
+	
+	private static final Log log = LogFactory.getLog(PatientListQueryPlan.class);
+	
+	private final String encounterTypeUuid;
+	
+	private final String locationUuid;
+	
+	private final String providerUuid;
+	
+	private final String patientUuid;
+	
+	private final Integer encounterTypeId;
+	
+	private final Integer locationId;
+	
+	private final Integer providerId;
+	
+	private final Integer patientId;
+	
+	private final Date startDate;
+	
+	private final Date endDate;
+	
+	private final boolean personFiltered;
+	
+	private final List<String> inListUuids;
+	
+	private final List<String> notInListUuids;
+	
+	private final String containsOrderType;
+	
+	private final List<PatientListQueryPlan> inListPlans;
+	
+	private final List<PatientListQueryPlan> notInListPlans;
+	
+	private PatientListQueryPlan(String encounterTypeUuid, String locationUuid, String providerUuid, String patientUuid,
+	    Integer encounterTypeId, Integer locationId, Integer providerId, Integer patientId, Date startDate,
+	    Date endDate, boolean personFiltered, List<String> inListUuids, List<String> notInListUuids,
+	    String containsOrderType, List<PatientListQueryPlan> inListPlans, List<PatientListQueryPlan> notInListPlans) {
+		this.encounterTypeUuid = encounterTypeUuid;
+		this.locationUuid = locationUuid;
+		this.providerUuid = providerUuid;
+		this.patientUuid = patientUuid;
+		this.encounterTypeId = encounterTypeId;
+		this.locationId = locationId;
+		this.providerId = providerId;
+		this.patientId = patientId;
+		this.startDate = startDate;
+		this.endDate = endDate;
+		this.personFiltered = personFiltered;
+		this.inListUuids = inListUuids == null ? null : Collections.unmodifiableList(inListUuids);
+		this.notInListUuids = Collections.unmodifiableList(notInListUuids);
+		this.containsOrderType = containsOrderType;
+		this.inListPlans = inListPlans == null ? null : Collections.unmodifiableList(inListPlans);
+		this.notInListPlans = notInListPlans == null ? null : Collections.unmodifiableList(notInListPlans);
+	}
+	
+	/**
+	 * Parses a searchQuery and looks up the ids of the encounter type, location, provider and patient it
+	 * refers to
+	 *
+	 * @param searchQuery the PatientList searchQuery, with or without the leading '?'
+	 * @return the compiled plan
+	 */
+	public static PatientListQueryPlan compile(String searchQuery) {
+		return parse(searchQuery).bind();
+	}
+	
+	/**
+	 * Parses a searchQuery without looking up the ids of the entities it refers to
+	 *
+	 * @param searchQuery the PatientList searchQuery, with or without the leading '?'
+	 * @return the parsed plan, to be bound before it is evaluated
+	 */
+	public static PatientListQueryPlan parse(String searchQuery) {
+		String query = searchQuery;
+		if (query.indexOf("?") == 0) {
+			query = query.substring(1);
+		}
+		String encounterTypeUuid = null;
+		String locationUuid = null;
+		String providerUuid = null;
+		String patientUuid = null;
+		Date startDate = null;
+		Date endDate = null;
+		boolean personFiltered = false;
+		//the return value can only choose encounters from these lists (if not null)
+		List<String> inListUuids = null;
+		//the return value can not contain any patients from these lists
+		List<String> notInListUuids = new ArrayList<String>();
+		String containsOrderType = "";
+		String[] queryFields = query.split("&");
+		for (int i = 0; i < queryFields.length; i++) {
+			int separator = queryFields[i].indexOf("=");
+			if (separator == -1) {
+				continue;
+			}
+			String key = queryFields[i].substring(0, separator);
+			String value = queryFields[i].substring(separator + 1);
+			if (key.equals("encounterType")) {
+				encounterTypeUuid = value;
+			} else if (key.equals("location")) {
+				locationUuid = value;
+			} else if (key.equals("startDate")) {
+				startDate = getDateFromString(value);
+			} else if (key.equals("endDate")) {
+				endDate = getDateFromString(value);
+			} else if (key.equals("inList")) {
+				//could be multiple lists here, add all that are in
+				inListUuids = new ArrayList<String>();
+				Collections.addAll(inListUuids, value.split(","));
+			} else if (key.equals("notInList")) {
+				Collections.addAll(notInListUuids, value.split(","));
+			} else if (key.equals("provider")) {
+				providerUuid = value;
+				personFiltered = true;
+			} else if (key.equals("patient")) {
+				patientUuid = value;
+				personFiltered = true;
+			} else if (key.equals("containsOrderType")) {
+				containsOrderType = value;
+			}
+		}
+		return new PatientListQueryPlan(encounterTypeUuid, locationUuid, providerUuid, patientUuid, null, null, null,
+		        null, startDate, endDate, personFiltered, inListUuids, notInListUuids, containsOrderType, null, null);
+	}
+	
+	/**
+	 * Returns a copy of this plan with the ids of the encounter type, location, provider and patient
+	 * looked up by their uuids. A uuid that matches nothing is left out, like a query that did not name it.
+	 *
+	 * @return the bound plan
+	 */
+	public PatientListQueryPlan bind() {
+		Integer encTypeId = encounterTypeUuid == null ? null : getId(Context.getEncounterService().getEncounterTypeByUuid(
+		    encounterTypeUuid));
+		Integer locId = locationUuid == null ? null : getId(Context.getLocationService().getLocationByUuid(locationUuid));
+		Integer provId = providerUuid == null ? null : getId(Context.getProviderService().getProviderByUuid(providerUuid));
+		Integer patId = patientUuid == null ? null : getId(Context.getPatientService().getPatientByUuid(patientUuid));
+		return new PatientListQueryPlan(encounterTypeUuid, locationUuid, providerUuid, patientUuid, encTypeId, locId,
+		        provId, patId, startDate, endDate, personFiltered, inListUuids, notInListUuids, containsOrderType,
+		        inListPlans, notInListPlans);
+	}
+	
+	private static Integer getId(OpenmrsObject object) {
+		return object == null ? null : object.getId();
+	}
+	
+	/**
+	 * Tells whether a uuid of the query matched nothing when the plan was bound. Such a plan may match
+	 * differently once the entity is created, so it should not be cached.
+	 *
+	 * @return true if the plan is not bound, or one of its uuids was not found
+	 */
+	public boolean hasUnmatchedUuids() {
+		return (encounterTypeUuid != null && encounterTypeId == null) || (locationUuid != null && locationId == null)
+		        || (providerUuid != null && providerId == null) || (patientUuid != null && patientId == null);
+	}
+	
+	/**
+	 * Returns a copy of this plan with the plans of its inList and notInList sub-lists attached. This
+	 * is also how unsaved lists are composed, by attaching plans in place of saved sub-list uuids.
+	 *
+	 * @param inListPlans plans of the inList sub-lists, null if the plan has no inList
+	 * @param notInListPlans plans of the notInList sub-lists
+	 * @return the resolved plan
+	 */
+	public PatientListQueryPlan resolve(List<PatientListQueryPlan> inListPlans, List<PatientListQueryPlan> notInListPlans) {
+		return new PatientListQueryPlan(encounterTypeUuid, locationUuid, providerUuid, patientUuid, encounterTypeId,
+		        locationId, providerId, patientId, startDate, endDate, personFiltered, inListUuids, notInListUuids,
+		        containsOrderType, inListPlans, notInListPlans);
+	}
+	
+	/**
+	 * Parses a string into a date
+	 *
+	 * @param str String to be parsed (must be iso format)
+	 * @return Date
+	 */
+	private static Date getDateFromString(String str) {
+		Date date = RaxaDateFormat.parse(str);
+		if (date == null) {
+			log.error("Date string is malformed");
+		}
+		return date;
+	}
+	
+	/**
+	 * @return id of the encounter type to match, or null
+	 */
+	public Integer getEncounterTypeId() {
+		return encounterTypeId;
+	}
+	
+	/**
+	 * @return id of the location to match, or null
+	 */
+	public Integer getLocationId() {
+		return locationId;
+	}
+	
+	/**
+	 * @return id of the provider to match, or null
+	 */
+	public Integer getProviderId() {
+		return providerId;
+	}
+	
+	/**
+	 * @return id of the patient to match, or null
+	 */
+	public Integer getPatientId() {
+		return patientId;
+	}
+	
+	/**
+	 * @return the start of the date window, or null
+	 */
+	public Date getStartDate() {
+		return startDate == null ? null : new Date(startDate.getTime());
+	}
+	
+	/**
+	 * @return the end of the date window, or null
+	 */
+	public Date getEndDate() {
+		return endDate == null ? null : new Date(endDate.getTime());
+	}
+	
+	/**
+	 * @return true if the query named a provider or a patient
+	 */
+	public boolean isPersonFiltered() {
+		return personFiltered;
+	}
+	
+	/**
+	 * @return uuids of the lists the encounters must come from, or null if there is no inList
+	 */
+	public List<String> getInListUuids() {
+		return inListUuids;
+	}
+	
+	/**
+	 * @return uuids of the lists whose later encounters exclude a patient
+	 */
+	public List<String> getNotInListUuids() {
+		return notInListUuids;
+	}
+	
+	/**
+	 * @return the order type encounters must contain, or an empty string
+	 */
+	public String getContainsOrderType() {
+		return containsOrderType;
+	}
+	
+	/**
+	 * @return plans of the inList sub-lists, or null if none are attached
+	 */
+	public List<PatientListQueryPlan> getInListPlans() {
+		return inListPlans;
+	}
+	
+	/**
+	 * @return plans of the notInList sub-lists, or null if none are attached
+	 */
+	public List<PatientListQueryPlan> getNotInListPlans() {
+		return notInListPlans;
+	}
+}
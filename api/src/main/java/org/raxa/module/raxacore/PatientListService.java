@@ -98,7 +98,7 @@ public interface PatientListService extends OpenmrsService {
 	public List<Patient> getPatientsInPatientList(PatientList patientList);
 	
 	/**
-	 * Gets all the encounters in PatientList
+	 * Gets all the encounters in PatientList. Materialized lists are read from their stored members.
 	 *
 	 * @param patientList
 	 * @return list of Encounters
@@ -106,6 +106,86 @@ public interface PatientListService extends OpenmrsService {
 	@Authorized(value = { "View Patient Lists", PrivilegeConstants.VIEW_ENCOUNTERS }, requireAll = true)
 	public List<Encounter> getEncountersInPatientList(PatientList patientList);
 	
+	/**
+	 * Gets all the encounters matching a list definition without saving it. Sub-lists can be given
+	 * inline with {@link PatientListQueryPlan#resolve(List, List)}; inList and notInList uuids that
+	 * are not attached are looked up from the saved PatientLists.
+	 *
+	 * @param plan the list definition
+	 * @return list of Encounters
+	 */
+	@Authorized(value = { "View Patient Lists", PrivilegeConstants.VIEW_ENCOUNTERS }, requireAll = true)
+	public List<Encounter> getEncountersInPatientList(PatientListQueryPlan plan);
+	
+	/**
+	 * Gets one page of the encounters in PatientList. Pages follow the list order (encounterDatetime,
+	 * then encounterId), so the cursor of a page's last encounter stays valid as the list changes.
+	 *
+	 * @param patientList
+	 * @param cursor position after the last encounter of the previous page, or null for the first page
+	 * @param limit maximum number of encounters to return, or null for all
+	 * @return list of Encounters
+	 */
+	@Authorized(value = { "View Patient Lists", PrivilegeConstants.VIEW_ENCOUNTERS }, requireAll = true)
+	public List<Encounter> getEncountersInPatientList(PatientList patientList, PatientListCursor cursor, Integer limit);
+	
+	/**
+	 * Gets one page of the encounters matching a list definition without saving it
+	 *
+	 * @param plan the list definition
+	 * @param cursor position after the last encounter of the previous page, or null for the first page
+	 * @param limit maximum number of encounters to return, or null for all
+	 * @return list of Encounters
+	 * @see #getEncountersInPatientList(PatientList, PatientListCursor, Integer)
+	 */
+	@Authorized(value = { "View Patient Lists", PrivilegeConstants.VIEW_ENCOUNTERS }, requireAll = true)
+	public List<Encounter> getEncountersInPatientList(PatientListQueryPlan plan, PatientListCursor cursor, Integer limit);
+	
+	/**
+	 * Gets one page of the encounters in PatientList as lightweight projected rows, for
+	 * representations that only need a few patient, encounter and obs fields. No entities are
+	 * loaded into the session.
+	 *
+	 * @param patientList
+	 * @param cursor position after the last encounter of the previous page, or null for the first page
+	 * @param limit maximum number of encounters to return, or null for all
+	 * @return list of rows
+	 * @see #getEncountersInPatientList(PatientList, PatientListCursor, Integer)
+	 */
+	@Authorized(value = { "View Patient Lists", PrivilegeConstants.VIEW_ENCOUNTERS }, requireAll = true)
+	public List<PatientListEncounterRow> getEncounterRowsInPatientList(PatientList patientList, PatientListCursor cursor,
+	        Integer limit);
+	
+	/**
+	 * Loads everything needed to render the encounters of a PatientList (obs, orders, providers,
+	 * concept names, patient names and identifiers) in a few batched queries instead of one lazy
+	 * select per row
+	 *
+	 * @param encounters encounters returned by getEncountersInPatientList
+	 */
+	@Authorized(value = { "View Patient Lists", PrivilegeConstants.VIEW_ENCOUNTERS }, requireAll = true)
+	public void prefetchEncounterDetails(List<Encounter> encounters);
+	
+	/**
+	 * Re-evaluates the membership of an encounter's patient in the materialized PatientLists the
+	 * encounter can affect: the lists already storing encounters of the patient, and the lists whose
+	 * encounter type and location the encounter matches. Called when an encounter changes, so the
+	 * stored lists stay current without re-running their queries.
+	 *
+	 * @param encounter the changed encounter
+	 */
+	@Authorized(value = { "View Patient Lists", PrivilegeConstants.VIEW_ENCOUNTERS }, requireAll = true)
+	public void refreshMaterializedPatientLists(Encounter encounter);
+	
+	/**
+	 * Removes an encounter from every materialized PatientList. Called before the encounter is
+	 * purged, so the stored members don't keep the encounter from being deleted.
+	 *
+	 * @param encounter
+	 */
+	@Authorized(value = { "View Patient Lists", PrivilegeConstants.VIEW_ENCOUNTERS }, requireAll = true)
+	public void removeFromMaterializedPatientLists(Encounter encounter);
+	
 	/**
 	 * Updates PatientList
 	 *
@@ -0,0 +1,99 @@
+package org.raxa.module.raxacore;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+/**
+ * Change to a RaxaAlert published by RaxaAlertService once it is committed. It only carries ids,
+ * so it can be handed to other threads; subscribers load the alert if they need more.
+ */
+public final class RaxaAlertEvent {
+	
+	public static final String TYPE_SAVED = "saved";
+	
+	public static final String TYPE_SEEN = "seen";
+	
+	public static final String TYPE_VOIDED = "voided";
+	
+	private final String type;
+	
+	private final Integer alertId;
+	
+	private final String alertUuid;
+	
+	private final Integer providerRecipientId;
+	
+	private final Integer toLocationId;
+	
+	private final Integer patientId;
+	
+	/**
+	 * @param type one of TYPE_SAVED, TYPE_SEEN or TYPE_VOIDED
+	 * @param raxaAlert the changed alert
+	 */
+	public RaxaAlertEvent(String type, RaxaAlert raxaAlert) {
+		this.type = type;
+		this.alertId = raxaAlert.getId();
+		this.alertUuid = raxaAlert.getUuid();
+		this.providerRecipientId = raxaAlert.getProviderRecipient() != null ? raxaAlert.getProviderRecipient().getId()
+		        : raxaAlert.getProviderRecipientId();
+		this.toLocationId = raxaAlert.getToLocation() != null ? raxaAlert.getToLocation().getId() : raxaAlert
+		        .getToLocationId();
+		this.patientId = raxaAlert.getPatient() != null ? raxaAlert.getPatient().getId() : raxaAlert.getPatientId();
+	}
+	
+	/**
+	 * @return TYPE_SAVED, TYPE_SEEN or TYPE_VOIDED
+	 */
+	public String getType() {
+		return type;
+	}
+	
+	/**
+	 * @return the id of the alert
+	 */
+	public Integer getAlertId() {
+		return alertId;
+	}
+	
+	/**
+	 * @return the uuid of the alert
+	 */
+	public String getAlertUuid() {
+		return alertUuid;
+	}
+	
+	/**
+	 * @return the id of the provider recipient, or null
+	 */
+	public Integer getProviderRecipientId() {
+		return providerRecipientId;
+	}
+	
+	/**
+	 * @return the id of the to-location, or null
+	 */
+	public Integer getToLocationId() {
+		return toLocationId;
+	}
+	
+	/**
+	 * @return the id of the patient, or null
+	 */
+	public Integer getPatientId() {
+		return patientId;
+	}
+}
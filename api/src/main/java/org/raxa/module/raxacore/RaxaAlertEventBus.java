@@ -0,0 +1,123 @@
+package org.raxa.module.raxacore;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-process fan-out of RaxaAlertEvents to the subscriptions of the alert's provider recipient,
+ * to-location and patient. Only alerts changed through RaxaAlertService on this server are
+ * published.
+ */
+public class RaxaAlertEventBus {
+	
+	public static final int DEFAULT_CAPACITY = 100;
+	
+	private final Map<Integer, Set<RaxaAlertSubscription>> byProviderRecipient = new HashMap<Integer, Set<RaxaAlertSubscription>>();
+	
+	private final Map<Integer, Set<RaxaAlertSubscription>> byToLocation = new HashMap<Integer, Set<RaxaAlertSubscription>>();
+	
+	private final Map<Integer, Set<RaxaAlertSubscription>> byPatient = new HashMap<Integer, Set<RaxaAlertSubscription>>();
+	
+	/**
+	 * Subscribes to the events of a provider recipient, a to-location and a patient; null ids are
+	 * not subscribed to
+	 *
+	 * @param capacity maximum number of queued events
+	 * @return the subscription, to be closed when it is no longer used
+	 * @throws IllegalArgumentException if all ids are null or capacity is less than 1
+	 */
+	public RaxaAlertSubscription subscribe(Integer providerRecipientId, Integer toLocationId, Integer patientId,
+	        int capacity) {
+		if (providerRecipientId == null && toLocationId == null && patientId == null) {
+			throw new IllegalArgumentException("providerRecipientId, toLocationId or patientId is required");
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be at least 1");
+		}
+		RaxaAlertSubscription subscription = new RaxaAlertSubscription(this, providerRecipientId, toLocationId,
+		        patientId, capacity);
+		synchronized (this) {
+			add(byProviderRecipient, providerRecipientId, subscription);
+			add(byToLocation, toLocationId, subscription);
+			add(byPatient, patientId, subscription);
+		}
+		return subscription;
+	}
+	
+	/**
+	 * Removes a subscription; called by RaxaAlertSubscription#close()
+	 */
+	synchronized void unsubscribe(RaxaAlertSubscription subscription) {
+		remove(byProviderRecipient, subscription.getProviderRecipientId(), subscription);
+		remove(byToLocation, subscription.getToLocationId(), subscription);
+		remove(byPatient, subscription.getPatientId(), subscription);
+	}
+	
+	/**
+	 * Queues the event on every subscription of its provider recipient, to-location or patient,
+	 * once per subscription
+	 */
+	public void publish(RaxaAlertEvent event) {
+		Set<RaxaAlertSubscription> subscriptions = new LinkedHashSet<RaxaAlertSubscription>();
+		synchronized (this) {
+			addAll(subscriptions, byProviderRecipient, event.getProviderRecipientId());
+			addAll(subscriptions, byToLocation, event.getToLocationId());
+			addAll(subscriptions, byPatient, event.getPatientId());
+		}
+		for (RaxaAlertSubscription subscription : subscriptions) {
+			subscription.offer(event);
+		}
+	}
+	
+	private static void add(Map<Integer, Set<RaxaAlertSubscription>> subscriptions, Integer key,
+	        RaxaAlertSubscription subscription) {
+		if (key == null) {
+			return;
+		}
+		Set<RaxaAlertSubscription> keySubscriptions = subscriptions.get(key);
+		if (keySubscriptions == null) {
+			keySubscriptions = new LinkedHashSet<RaxaAlertSubscription>();
+			subscriptions.put(key, keySubscriptions);
+		}
+		keySubscriptions.add(subscription);
+	}
+	
+	private static void remove(Map<Integer, Set<RaxaAlertSubscription>> subscriptions, Integer key,
+	        RaxaAlertSubscription subscription) {
+		if (key == null) {
+			return;
+		}
+		Set<RaxaAlertSubscription> keySubscriptions = subscriptions.get(key);
+		if (keySubscriptions != null && keySubscriptions.remove(subscription) && keySubscriptions.isEmpty()) {
+			subscriptions.remove(key);
+		}
+	}
+	
+	private static void addAll(Set<RaxaAlertSubscription> target, Map<Integer, Set<RaxaAlertSubscription>> subscriptions,
+	        Integer key) {
+		if (key == null) {
+			return;
+		}
+		Set<RaxaAlertSubscription> keySubscriptions = subscriptions.get(key);
+		if (keySubscriptions != null) {
+			target.addAll(keySubscriptions);
+		}
+	}
+}
@@ -16,6 +16,7 @@ import java.util.List;
 import org.openmrs.annotation.Authorized;
 import org.openmrs.api.OpenmrsService;
 import org.raxa.module.raxacore.db.RaxaAlertDAO;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 /*
@@ -129,6 +130,67 @@ public interface RaxaAlertService extends OpenmrsService {
 	@Authorized( { "View Raxa Alerts" })
 	public List<RaxaAlert> getAllRaxaAlerts(boolean includeSeen);
 	
+	/**
+	 * Gets one page of all RaxaAlerts, in the order they were created
+	 *
+	 * @param includeSeen
+	 * @param startIndex index of the first alert of the page, 0 if null
+	 * @param limit maximum number of alerts in the page
+	 * @return list of RaxaAlerts
+	 * @throws IllegalArgumentException if limit is less than 1
+	 */
+	@Authorized( { "View Raxa Alerts" })
+	public List<RaxaAlert> getAllRaxaAlerts(boolean includeSeen, Integer startIndex, Integer limit);
+	
+	/**
+	 * Counts all RaxaAlerts
+	 *
+	 * @return the number of RaxaAlerts
+	 */
+	@Authorized( { "View Raxa Alerts" })
+	public Integer getCountOfAllRaxaAlerts(boolean includeSeen);
+	
+	/**
+	 * Gets the unseen RaxaAlerts of a provider recipient or a to-location, in the order they were
+	 * saved. An alert stays in the inbox until it is seen or voided.
+	 *
+	 * @param providerRecipientId null to match on toLocationId only
+	 * @param toLocationId null to match on providerRecipientId only
+	 * @param limit maximum number of alerts
+	 * @return list of RaxaAlerts
+	 * @throws IllegalArgumentException if both ids are null or limit is less than 1
+	 */
+	@Authorized( { "View Raxa Alerts" })
+	public List<RaxaAlert> getRaxaAlertInbox(Integer providerRecipientId, Integer toLocationId, Integer limit);
+	
+	/**
+	 * Counts the unseen RaxaAlerts of a provider recipient or a to-location
+	 *
+	 * @param providerRecipientId null to match on toLocationId only
+	 * @param toLocationId null to match on providerRecipientId only
+	 * @return the number of unseen RaxaAlerts
+	 * @throws IllegalArgumentException if both ids are null
+	 */
+	@Authorized( { "View Raxa Alerts" })
+	public Integer getCountOfUnseenRaxaAlerts(Integer providerRecipientId, Integer toLocationId);
+	
+	/**
+	 * Subscribes to the RaxaAlertEvents published when alerts of a provider recipient, a to-location
+	 * or a patient are saved, updated, marked as seen or voided through this service. Events are
+	 * published once the change is committed. The subscription must be closed when it is no longer
+	 * used.
+	 *
+	 * @param providerRecipientId null to not subscribe to a provider recipient
+	 * @param toLocationId null to not subscribe to a to-location
+	 * @param patientId null to not subscribe to a patient
+	 * @return the subscription
+	 * @throws IllegalArgumentException if all ids are null
+	 */
+	@Authorized( { "View Raxa Alerts" })
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public RaxaAlertSubscription subscribeToRaxaAlerts(Integer providerRecipientId, Integer toLocationId,
+	        Integer patientId);
+	
 	/**
 	 * Mark RaxaAlert as seen
 	 *
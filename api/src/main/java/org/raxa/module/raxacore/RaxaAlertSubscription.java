@@ -0,0 +1,140 @@
+package org.raxa.module.raxacore;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Bounded queue of the RaxaAlertEvents for a provider recipient, a to-location or a patient. A
+ * newer event for an alert replaces the queued one; when the queue is full the oldest event is
+ * dropped and the subscription is marked as overflowed, so the subscriber knows to query again.
+ * Subscriptions must be closed when they are no longer used.
+ */
+public final class RaxaAlertSubscription {
+	
+	private final RaxaAlertEventBus bus;
+	
+	private final Integer providerRecipientId;
+	
+	private final Integer toLocationId;
+	
+	private final Integer patientId;
+	
+	private final int capacity;
+	
+	private final LinkedList<RaxaAlertEvent> queue = new LinkedList<RaxaAlertEvent>();
+	
+	private boolean overflowed = false;
+	
+	private boolean closed = false;
+	
+	RaxaAlertSubscription(RaxaAlertEventBus bus, Integer providerRecipientId, Integer toLocationId, Integer patientId,
+	    int capacity) {
+		this.bus = bus;
+		this.providerRecipientId = providerRecipientId;
+		this.toLocationId = toLocationId;
+		this.patientId = patientId;
+		this.capacity = capacity;
+	}
+	
+	/**
+	 * Queues an event, merging it with a queued event of the same alert
+	 */
+	synchronized void offer(RaxaAlertEvent event) {
+		if (closed) {
+			return;
+		}
+		for (Iterator<RaxaAlertEvent> it = queue.iterator(); it.hasNext();) {
+			if (it.next().getAlertId().equals(event.getAlertId())) {
+				it.remove();
+				break;
+			}
+		}
+		if (queue.size() >= capacity) {
+			queue.removeFirst();
+			overflowed = true;
+		}
+		queue.addLast(event);
+		notifyAll();
+	}
+	
+	/**
+	 * Takes the queued events, waiting until there is one, the subscription is closed or the timeout
+	 * passes
+	 *
+	 * @param timeout maximum time to wait, in milliseconds
+	 * @return the events in the order they were published, empty on timeout
+	 * @throws InterruptedException
+	 */
+	public synchronized List<RaxaAlertEvent> poll(long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (queue.isEmpty() && !closed) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				break;
+			}
+			wait(remaining);
+		}
+		List<RaxaAlertEvent> events = new ArrayList<RaxaAlertEvent>(queue);
+		queue.clear();
+		return events;
+	}
+	
+	/**
+	 * @return true if events were dropped since the last call
+	 */
+	public synchronized boolean clearOverflow() {
+		boolean dropped = overflowed;
+		overflowed = false;
+		return dropped;
+	}
+	
+	/**
+	 * Stops the subscription and wakes a thread waiting in poll
+	 */
+	public void close() {
+		bus.unsubscribe(this);
+		synchronized (this) {
+			closed = true;
+			queue.clear();
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * @return the id of the provider recipient subscribed to, or null
+	 */
+	public Integer getProviderRecipientId() {
+		return providerRecipientId;
+	}
+	
+	/**
+	 * @return the id of the to-location subscribed to, or null
+	 */
+	public Integer getToLocationId() {
+		return toLocationId;
+	}
+	
+	/**
+	 * @return the id of the patient subscribed to, or null
+	 */
+	public Integer getPatientId() {
+		return patientId;
+	}
+}
@@ -0,0 +1,39 @@
+package org.raxa.module.raxacore.advice;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import org.raxa.module.raxacore.DrugCatalogVersion;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Bumps the DrugCatalogVersion whenever a drug is saved, retired, unretired or purged through
+ * ConceptService
+ */
+public class DrugCatalogVersionAdvice implements AfterReturningAdvice {
+	
+	private static final List<String> DRUG_CHANGE_METHODS = Arrays.asList("saveDrug", "retireDrug", "unretireDrug",
+	    "purgeDrug");
+	
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		if (DRUG_CHANGE_METHODS.contains(method.getName())) {
+			DrugCatalogVersion.bumpAfterCommit();
+		}
+	}
+}
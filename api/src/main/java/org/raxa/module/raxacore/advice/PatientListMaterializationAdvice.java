@@ -0,0 +1,90 @@
+package org.raxa.module.raxacore.advice;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Encounter;
+import org.openmrs.api.context.Context;
+import org.openmrs.util.PrivilegeConstants;
+import org.raxa.module.raxacore.PatientListService;
+import org.springframework.aop.AfterReturningAdvice;
+import org.springframework.aop.MethodBeforeAdvice;
+
+/**
+ * Keeps materialized PatientLists current by refreshing the patient's membership whenever an
+ * encounter is saved, voided, unvoided or purged through EncounterService. An encounter about to be
+ * purged is removed from the lists first, since the stored members reference it.
+ */
+public class PatientListMaterializationAdvice implements MethodBeforeAdvice, AfterReturningAdvice {
+	
+	private Log log = LogFactory.getLog(this.getClass());
+	
+	private static final List<String> ENCOUNTER_CHANGE_METHODS = Arrays.asList("saveEncounter", "voidEncounter",
+	    "unvoidEncounter", "purgeEncounter");
+	
+	private static final String[] REQUIRED_PRIVILEGES = { "View Patient Lists", PrivilegeConstants.VIEW_ENCOUNTERS,
+	        PrivilegeConstants.VIEW_ENCOUNTER_TYPES, PrivilegeConstants.VIEW_LOCATIONS, PrivilegeConstants.VIEW_PATIENTS,
+	        "View Providers" };
+	
+	@Override
+	public void before(Method method, Object[] args, Object target) throws Throwable {
+		if (!method.getName().equals("purgeEncounter") || args == null || args.length == 0
+		        || !(args[0] instanceof Encounter) || ((Encounter) args[0]).getEncounterId() == null) {
+			return;
+		}
+		Encounter encounter = (Encounter) args[0];
+		log.debug("Removing encounter " + encounter.getEncounterId() + " from materialized patient lists");
+		for (String privilege : REQUIRED_PRIVILEGES) {
+			Context.addProxyPrivilege(privilege);
+		}
+		try {
+			Context.getService(PatientListService.class).removeFromMaterializedPatientLists(encounter);
+		}
+		finally {
+			for (String privilege : REQUIRED_PRIVILEGES) {
+				Context.removeProxyPrivilege(privilege);
+			}
+		}
+	}
+	
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		if (!ENCOUNTER_CHANGE_METHODS.contains(method.getName()) || args == null || args.length == 0
+		        || !(args[0] instanceof Encounter)) {
+			return;
+		}
+		Encounter encounter = (Encounter) args[0];
+		if (encounter.getPatient() == null) {
+			return;
+		}
+		log.debug("Refreshing materialized patient lists for patient " + encounter.getPatient().getPatientId());
+		for (String privilege : REQUIRED_PRIVILEGES) {
+			Context.addProxyPrivilege(privilege);
+		}
+		try {
+			Context.getService(PatientListService.class).refreshMaterializedPatientLists(encounter);
+		}
+		finally {
+			for (String privilege : REQUIRED_PRIVILEGES) {
+				Context.removeProxyPrivilege(privilege);
+			}
+		}
+	}
+}
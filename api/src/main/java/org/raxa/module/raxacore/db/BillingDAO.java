@@ -42,6 +42,10 @@ public interface BillingDAO {
 	
 	public List<Billing> getAllBillsByPatient(Integer patientId);
 	
+	public List<Billing> getAllBillsByPatient(Integer patientId, Integer startIndex, Integer limit);
+	
+	public Integer getCountOfBillsByPatient(Integer patientId);
+	
 	public List<Encounter> getEncountersByPatientId(Integer patientId);
 	
 }
@@ -16,9 +16,12 @@ package org.raxa.module.raxacore.db;
  * the License.
  */
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import org.openmrs.api.db.DAOException;
 import org.raxa.module.raxacore.DrugInventory;
+import org.raxa.module.raxacore.DrugStock;
 
 public interface DrugInventoryDAO {
 	
@@ -30,6 +33,22 @@ public interface DrugInventoryDAO {
 	
 	public List<DrugInventory> getAllDrugInventories() throws DAOException;
 	
+	/**
+	 * Gets one page of all DrugInventories, in the order they were created
+	 * 
+	 * @param startIndex index of the first inventory of the page
+	 * @param limit maximum number of inventories in the page
+	 * @return the DrugInventories
+	 * @should get the page starting at startIndex
+	 */
+	public List<DrugInventory> getAllDrugInventories(Integer startIndex, Integer limit) throws DAOException;
+	
+	/**
+	 * @return the number of DrugInventories
+	 * @should count all drug inventories
+	 */
+	public Integer getCountOfAllDrugInventories() throws DAOException;
+	
 	public List<DrugInventory> getAllDrugInventoriesByStatus(String status);
 	
 	public DrugInventory updateDrugInventory(DrugInventory drugInventory);
@@ -40,4 +59,101 @@ public interface DrugInventoryDAO {
 	
 	public List<DrugInventory> getDrugInventoriesByDrugPurchaseOrder(Integer drugPurchaseOrderId);
 	
+	/**
+	 * Gets the DrugInventories with the given uuids
+	 * 
+	 * @param uuids
+	 * @return the DrugInventories found, in no particular order
+	 * @should get all inventories with one of the uuids
+	 */
+	public List<DrugInventory> getDrugInventoriesByUuids(Collection<String> uuids);
+	
+	/**
+	 * Saves or updates the DrugInventories, flushing them to the database in batches
+	 * 
+	 * @param drugInventories
+	 * @return the saved DrugInventories
+	 * @should save new and update existing inventories
+	 */
+	public List<DrugInventory> saveDrugInventories(List<DrugInventory> drugInventories) throws DAOException;
+	
+	/**
+	 * Takes the quantity out of the DrugInventory with a single conditional update, so concurrent
+	 * decrements of the same batch can never take out more than it holds
+	 * 
+	 * @param drugInventory the batch to take the quantity out of
+	 * @param quantity
+	 * @return false if the batch holds less than the quantity, in which case nothing is changed
+	 * @should decrement the quantity and mark an emptied batch out
+	 * @should not decrement more than the batch holds
+	 */
+	public boolean decrementDrugInventoryQuantity(DrugInventory drugInventory, Integer quantity) throws DAOException;
+	
+	/**
+	 * Recomputes the DrugStocks of the drugs from their DrugInventories. Only inventories that are
+	 * not retired, hold a quantity and are not "out" are counted.
+	 * 
+	 * @param drugIds
+	 * @should update the stock of each location holding the drug
+	 * @should delete the stock of a location that no longer holds the drug
+	 */
+	public void refreshDrugStocks(Collection<Integer> drugIds) throws DAOException;
+	
+	/**
+	 * Gets the DrugStock of a drug in a location
+	 * 
+	 * @param drugId
+	 * @param locationId
+	 * @return the DrugStock, or null if the location holds none of the drug
+	 * @should get the stock of the drug in the location
+	 */
+	public DrugStock getDrugStock(Integer drugId, Integer locationId);
+	
+	/**
+	 * Gets the DrugStocks of all drugs held in a location
+	 * 
+	 * @param locationId
+	 * @return the DrugStocks
+	 * @should get the stock of every drug in the location
+	 */
+	public List<DrugStock> getDrugStocksByLocation(Integer locationId);
+	
+	/**
+	 * Gets and locks the batches of a drug that can be dispensed from a location, in the order they
+	 * expire. Batches without an expiryDate come last.
+	 * 
+	 * @param drugId
+	 * @param locationId
+	 * @return the batches, locked until the end of the transaction
+	 * @should get batches that expire first before later ones
+	 */
+	public List<DrugInventory> getDispensableDrugInventories(Integer drugId, Integer locationId) throws DAOException;
+	
+	/**
+	 * Locks the batches with the given uuids and the batches of the given drugs in the given
+	 * locations, in id order, until the end of the transaction
+	 * 
+	 * @param uuids uuids of the batches
+	 * @param drugIds
+	 * @param locationIds
+	 * @should lock the batches
+	 */
+	public void lockDrugInventories(Collection<String> uuids, Collection<Integer> drugIds, Collection<Integer> locationIds)
+	        throws DAOException;
+	
+	/**
+	 * Gets one page of the DrugInventories of a location that expire before a date, in the order they
+	 * expire. Retired inventories and inventories that are "out" are left out.
+	 * 
+	 * @param locationId
+	 * @param expiryDate inventories expiring before this date are returned
+	 * @param startIndex index of the first inventory of the page
+	 * @param limit maximum number of inventories in the page
+	 * @return the DrugInventories
+	 * @should get inventories expiring before the date
+	 * @should get the page starting at startIndex
+	 */
+	public List<DrugInventory> getDrugInventoriesExpiringBefore(Integer locationId, Date expiryDate, Integer startIndex,
+	        Integer limit);
+	
 }
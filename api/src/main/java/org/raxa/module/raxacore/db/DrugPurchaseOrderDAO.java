@@ -28,6 +28,10 @@ public interface DrugPurchaseOrderDAO {
 	
 	public List<DrugPurchaseOrder> getAllDrugPurchaseOrders();
 	
+	public List<DrugPurchaseOrder> getAllDrugPurchaseOrders(Integer startIndex, Integer limit);
+	
+	public Integer getCountOfAllDrugPurchaseOrders();
+	
 	public List<DrugPurchaseOrder> getAllDrugPurchaseOrdersNotReceived();
 	
 	public DrugPurchaseOrder updateDrugPurchaseOrder(DrugPurchaseOrder drugPurchaseOrder);
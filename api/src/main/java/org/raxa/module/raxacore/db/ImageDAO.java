@@ -108,6 +108,37 @@ public interface ImageDAO {
 	 */
 	public List<Image> getAllImages() throws DAOException;
 	
+	/**
+	 * Get one page of all Images, in the order they were created
+	 * @param startIndex index of the first image of the page
+	 * @param limit maximum number of images in the page
+	 * @return List of Images
+	 * @should get the page starting at startIndex
+	 */
+	public List<Image> getAllImages(Integer startIndex, Integer limit) throws DAOException;
+	
+	/**
+	 * @return the number of Images
+	 * @should count all images
+	 */
+	public Integer getCountOfAllImages() throws DAOException;
+	
+	/**
+	 * Get the Images whose files are still saved flat in the image directory rather than in the ImageStore, in the
+	 * order they were created
+	 * @param afterId id of the last image already looked at, or null to start from the first
+	 * @param limit maximum number of images
+	 * @return List of Images
+	 * @should get the images with a flat file name after afterId
+	 */
+	public List<Image> getImagesNotInStore(Integer afterId, Integer limit) throws DAOException;
+	
+	/**
+	 * @return the number of Images whose files are still saved flat in the image directory
+	 * @should count the images with a flat file name
+	 */
+	public Integer getCountOfImagesNotInStore() throws DAOException;
+	
 	/**
 	 * Void a Image in the database
 	 * @param Image object to be purged
@@ -16,9 +16,14 @@ package org.raxa.module.raxacore.db;
  * the License.
  */
 import java.util.List;
+import org.openmrs.Encounter;
 import org.openmrs.EncounterType;
+import org.openmrs.Patient;
 import org.openmrs.api.db.DAOException;
 import org.raxa.module.raxacore.PatientList;
+import org.raxa.module.raxacore.PatientListCursor;
+import org.raxa.module.raxacore.PatientListEncounterRow;
+import org.raxa.module.raxacore.PatientListQueryPlan;
 
 /**
  * Interface for accessing raxacore_patient_list
@@ -91,4 +96,145 @@ public interface PatientListDAO {
 	 */
 	PatientList updatePatientList(PatientList patientList) throws DAOException;
 	
+	/**
+	 * Get the encounters matching a resolved {@link PatientListQueryPlan}, with inList and notInList
+	 * evaluated as subqueries of a single query
+	 * 
+	 * @param plan plan whose sub-list plans have been attached
+	 * @return List of Encounters ordered by encounterDatetime
+	 * @should get encounters matching a query plan
+	 */
+	public List<Encounter> getEncountersInPatientList(PatientListQueryPlan plan) throws DAOException;
+	
+	/**
+	 * Get one page of the encounters matching a resolved {@link PatientListQueryPlan}
+	 * 
+	 * @param plan plan whose sub-list plans have been attached
+	 * @param cursor position of the last encounter of the previous page, or null for the first page
+	 * @param limit maximum number of encounters to return, or null for all
+	 * @return List of Encounters ordered by encounterDatetime and encounterId
+	 * @should get the encounters after the cursor
+	 * @should not return more than limit encounters
+	 */
+	public List<Encounter> getEncountersInPatientList(PatientListQueryPlan plan, PatientListCursor cursor, Integer limit)
+	        throws DAOException;
+	
+	/**
+	 * Get the ids of the encounters matching a resolved {@link PatientListQueryPlan}
+	 * 
+	 * @param plan plan whose sub-list plans have been attached
+	 * @return List of encounter ids ordered by encounterDatetime
+	 * @should get encounter ids matching a query plan
+	 */
+	public List<Integer> getEncounterIdsInPatientList(PatientListQueryPlan plan) throws DAOException;
+	
+	/**
+	 * Get the ids of one patient's encounters matching a resolved {@link PatientListQueryPlan}
+	 * 
+	 * @param plan plan whose sub-list plans have been attached
+	 * @param patient the patient whose encounters are evaluated
+	 * @return List of encounter ids ordered by encounterDatetime
+	 * @should get encounter ids of a patient matching a query plan
+	 */
+	public List<Integer> getEncounterIdsInPatientList(PatientListQueryPlan plan, Patient patient) throws DAOException;
+	
+	/**
+	 * Get all materialized {@link PatientList}
+	 * 
+	 * @return List of PatientLists
+	 * @should get materialized patient lists
+	 */
+	public List<PatientList> getMaterializedPatientLists() throws DAOException;
+	
+	/**
+	 * Get one page of the encounters matching a resolved {@link PatientListQueryPlan} as projected
+	 * rows, without loading the entities into the session
+	 * 
+	 * @param plan plan whose sub-list plans have been attached
+	 * @param cursor position of the last encounter of the previous page, or null for the first page
+	 * @param limit maximum number of encounters to return, or null for all
+	 * @return List of rows ordered by encounterDatetime and encounterId
+	 * @should get rows for the same encounters as getEncountersInPatientList
+	 */
+	public List<PatientListEncounterRow> getEncounterRowsInPatientList(PatientListQueryPlan plan,
+	        PatientListCursor cursor, Integer limit) throws DAOException;
+	
+	/**
+	 * Get one page of the stored encounters of a materialized {@link PatientList} as projected rows
+	 * 
+	 * @param patientList
+	 * @param cursor position of the last encounter of the previous page, or null for the first page
+	 * @param limit maximum number of encounters to return, or null for all
+	 * @return List of rows ordered by encounterDatetime and encounterId
+	 * @should get rows for the stored encounters
+	 */
+	public List<PatientListEncounterRow> getMaterializedEncounterRows(PatientList patientList, PatientListCursor cursor,
+	        Integer limit) throws DAOException;
+	
+	/**
+	 * Loads the obs, orders, providers, concept names, person names and identifiers of the
+	 * encounters into the session with a few IN queries, so rendering them does not lazily select
+	 * each one
+	 * 
+	 * @param encounters
+	 * @should initialize the obs of the encounters
+	 */
+	public void prefetchEncounterDetails(List<Encounter> encounters) throws DAOException;
+	
+	/**
+	 * Get the stored encounters of a materialized {@link PatientList}
+	 * 
+	 * @param patientList
+	 * @return List of Encounters ordered by encounterDatetime
+	 * @should get the stored encounters of a patient list
+	 */
+	public List<Encounter> getMaterializedEncounters(PatientList patientList) throws DAOException;
+	
+	/**
+	 * Get one page of the stored encounters of a materialized {@link PatientList}
+	 * 
+	 * @param patientList
+	 * @param cursor position of the last encounter of the previous page, or null for the first page
+	 * @param limit maximum number of encounters to return, or null for all
+	 * @return List of Encounters ordered by encounterDatetime and encounterId
+	 * @should get the stored encounters after the cursor
+	 */
+	public List<Encounter> getMaterializedEncounters(PatientList patientList, PatientListCursor cursor, Integer limit)
+	        throws DAOException;
+	
+	/**
+	 * Save encounters as members of a materialized {@link PatientList}
+	 * 
+	 * @param patientList
+	 * @param encounterIds
+	 * @should save members of a patient list
+	 */
+	public void saveMaterializedMembers(PatientList patientList, List<Integer> encounterIds) throws DAOException;
+	
+	/**
+	 * Delete the stored members of a {@link PatientList}
+	 * 
+	 * @param patientList
+	 * @param patient only delete this patient's encounters, or all members if null
+	 * @should delete members of a patient list
+	 */
+	public void deleteMaterializedMembers(PatientList patientList, Patient patient) throws DAOException;
+	
+	/**
+	 * Delete an encounter from the stored members of every materialized {@link PatientList}
+	 * 
+	 * @param encounter
+	 * @should delete the encounter from every patient list
+	 */
+	public void deleteMaterializedMembers(Encounter encounter) throws DAOException;
+	
+	/**
+	 * Get the ids of the materialized {@link PatientList}s that store encounters of a patient
+	 * 
+	 * @param patient
+	 * @return ids of the patient lists
+	 * @should get the lists storing the patient's encounters
+	 */
+	public List<Integer> getMaterializedPatientListIds(Patient patient) throws DAOException;
+
 }
@@ -118,6 +118,47 @@ public interface RaxaAlertDAO {
 	 */
 	public List<RaxaAlert> getAllRaxaAlerts(boolean includeSeen) throws DAOException;
 	
+	/**
+	 * Gets one page of all RaxaAlerts, in the order they were created
+	 * 
+	 * @param includeSeen
+	 * @param startIndex index of the first alert of the page
+	 * @param limit maximum number of alerts in the page
+	 * @return List of RaxaAlerts
+	 * @should get the page starting at startIndex
+	 */
+	public List<RaxaAlert> getAllRaxaAlerts(boolean includeSeen, Integer startIndex, Integer limit) throws DAOException;
+	
+	/**
+	 * @param includeSeen
+	 * @return the number of RaxaAlerts
+	 * @should count all raxa alerts
+	 */
+	public Integer getCountOfAllRaxaAlerts(boolean includeSeen) throws DAOException;
+	
+	/**
+	 * Find the unseen, unvoided {@link RaxaAlert}s of a provider recipient or a to-location, in the
+	 * order they were saved
+	 * 
+	 * @param providerRecipientId null to match on toLocationId only
+	 * @param toLocationId null to match on providerRecipientId only
+	 * @param limit maximum number of alerts
+	 * @return List of RaxaAlerts
+	 * @should get unseen alerts
+	 */
+	public List<RaxaAlert> getRaxaAlertInbox(Integer providerRecipientId, Integer toLocationId, Integer limit)
+	        throws DAOException;
+	
+	/**
+	 * Count the unseen, unvoided {@link RaxaAlert}s of a provider recipient or a to-location
+	 * 
+	 * @param providerRecipientId null to match on toLocationId only
+	 * @param toLocationId null to match on providerRecipientId only
+	 * @return the number of unseen RaxaAlerts
+	 * @should count unseen alerts
+	 */
+	public Integer getCountOfUnseenRaxaAlerts(Integer providerRecipientId, Integer toLocationId) throws DAOException;
+	
 	/**
 	 *Mark RaxaLert as seen
 	 *@param Seen
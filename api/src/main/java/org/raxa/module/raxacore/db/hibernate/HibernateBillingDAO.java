@@ -20,6 +20,8 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.openmrs.Encounter;
 import org.openmrs.api.db.DAOException;
@@ -115,6 +117,28 @@ public class HibernateBillingDAO implements BillingDAO {
 		return bills;
 	}
 	
+	@Transactional
+	public List<Billing> getAllBillsByPatient(Integer patientId, Integer startIndex, Integer limit) {
+		
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Billing.class);
+		criteria.add(Restrictions.eq("patientId", patientId));
+		criteria.addOrder(Order.asc("billId"));
+		criteria.setFirstResult(startIndex);
+		criteria.setMaxResults(limit);
+		List<Billing> bills = new ArrayList<Billing>();
+		bills.addAll(criteria.list());
+		return bills;
+	}
+	
+	@Transactional
+	public Integer getCountOfBillsByPatient(Integer patientId) {
+		
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Billing.class);
+		criteria.add(Restrictions.eq("patientId", patientId));
+		criteria.setProjection(Projections.rowCount());
+		return ((Number) criteria.uniqueResult()).intValue();
+	}
+	
 	@Transactional
 	public List<Encounter> getEncountersByPatientId(Integer patientId) {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Encounter.class);
@@ -13,15 +13,30 @@ package org.raxa.module.raxacore.db.hibernate;
  * specific language governing permissions and limitations under the License.
  */
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.LockMode;
+import org.hibernate.Query;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.openmrs.Drug;
 import org.openmrs.EncounterType;
+import org.openmrs.Location;
 import org.openmrs.api.db.DAOException;
 import org.raxa.module.raxacore.DrugInventory;
+import org.raxa.module.raxacore.DrugStock;
 import org.raxa.module.raxacore.PatientList;
 import org.raxa.module.raxacore.db.DrugInventoryDAO;
 import org.raxa.module.raxacore.db.PatientListDAO;
@@ -30,6 +45,19 @@ public class HibernateDrugInventoryDAO implements DrugInventoryDAO {
 	
 	protected final Log log = LogFactory.getLog(getClass());
 	
+	/**
+	 * Upper bound on the number of uuids bound to one IN clause
+	 */
+	private static final int MAX_IN_LIST_SIZE = 500;
+	
+	/**
+	 * Number of inventories flushed and evicted together by {@link #saveDrugInventories(List)}, which
+	 * bounds the number of inventories in the session. The statements of a flush are only sent as JDBC
+	 * batches if hibernate.jdbc.batch_size is set in the OpenMRS runtime properties, which this module
+	 * does not do.
+	 */
+	private static final int FLUSH_SIZE = 50;
+	
 	private SessionFactory sessionFactory;
 	
 	public void setSessionFactory(SessionFactory sessionFactory) {
@@ -61,6 +89,30 @@ public class HibernateDrugInventoryDAO implements DrugInventoryDAO {
 		
 	}
 	
+	/**
+	 * @see org.raxa.module.raxacore.db.DrugInventoryDAO#getAllDrugInventories(Integer, Integer)
+	 */
+	@Override
+	public List<DrugInventory> getAllDrugInventories(Integer startIndex, Integer limit) throws DAOException {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(DrugInventory.class);
+		criteria.addOrder(Order.asc("id"));
+		criteria.setFirstResult(startIndex);
+		criteria.setMaxResults(limit);
+		List<DrugInventory> drugInventories = new ArrayList<DrugInventory>();
+		drugInventories.addAll(criteria.list());
+		return drugInventories;
+	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.db.DrugInventoryDAO#getCountOfAllDrugInventories()
+	 */
+	@Override
+	public Integer getCountOfAllDrugInventories() throws DAOException {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(DrugInventory.class);
+		criteria.setProjection(Projections.rowCount());
+		return ((Number) criteria.uniqueResult()).intValue();
+	}
+	
 	public List<DrugInventory> getAllDrugInventoriesByStatus(String status) {
 		
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(DrugInventory.class);
@@ -103,4 +155,216 @@ public class HibernateDrugInventoryDAO implements DrugInventoryDAO {
 		drugInventories.addAll(criteria.list());
 		return drugInventories;
 	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.db.DrugInventoryDAO#getDrugInventoriesByUuids(Collection)
+	 */
+	@Override
+	public List<DrugInventory> getDrugInventoriesByUuids(Collection<String> uuids) {
+		List<String> uuidList = new ArrayList<String>(uuids);
+		List<DrugInventory> drugInventories = new ArrayList<DrugInventory>();
+		for (int i = 0; i < uuidList.size(); i += MAX_IN_LIST_SIZE) {
+			Criteria criteria = sessionFactory.getCurrentSession().createCriteria(DrugInventory.class);
+			criteria.add(Restrictions.in("uuid", uuidList.subList(i, Math.min(i + MAX_IN_LIST_SIZE, uuidList.size()))));
+			drugInventories.addAll(criteria.list());
+		}
+		return drugInventories;
+	}
+	
+	/**
+	 * Flushes every FLUSH_SIZE inventories and evicts them afterwards, so a purchase order with
+	 * hundreds of line items doesn't dirty check the whole session again on every flush
+	 * 
+	 * @see org.raxa.module.raxacore.db.DrugInventoryDAO#saveDrugInventories(List)
+	 */
+	@Override
+	public List<DrugInventory> saveDrugInventories(List<DrugInventory> drugInventories) throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		for (int i = 0; i < drugInventories.size(); i++) {
+			session.saveOrUpdate(drugInventories.get(i));
+			if ((i + 1) % FLUSH_SIZE == 0 || i + 1 == drugInventories.size()) {
+				session.flush();
+				for (int j = i - (i % FLUSH_SIZE); j <= i; j++) {
+					session.evict(drugInventories.get(j));
+				}
+			}
+		}
+		return drugInventories;
+	}
+	
+	/**
+	 * Runs UPDATE ... SET quantity = quantity - ? WHERE id = ? AND quantity >= ?, so the check and
+	 * the decrement happen under the row lock of the database instead of in Java. The version is
+	 * incremented as well, making any stale copy of the inventory fail its next update, and the
+	 * inventory is refreshed so the session holds the new quantity.
+	 * 
+	 * @see org.raxa.module.raxacore.db.DrugInventoryDAO#decrementDrugInventoryQuantity(DrugInventory, Integer)
+	 */
+	@Override
+	public boolean decrementDrugInventoryQuantity(DrugInventory drugInventory, Integer quantity) throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		int updated = session.createQuery(
+		    "update DrugInventory set quantity = quantity - :quantity, version = version + 1 "
+		            + "where id = :id and quantity >= :quantity").setInteger("quantity", quantity).setInteger("id",
+		    drugInventory.getId()).executeUpdate();
+		if (updated == 0) {
+			return false;
+		}
+		session.createQuery("update DrugInventory set status = :status where id = :id and quantity = 0").setString(
+		    "status", DrugInventory.STATUS_OUT).setInteger("id", drugInventory.getId()).executeUpdate();
+		if (session.contains(drugInventory)) {
+			session.refresh(drugInventory);
+		}
+		return true;
+	}
+	
+	/**
+	 * The drugs are locked before the totals are summed, so concurrent refreshes of the same drug run
+	 * one after the other instead of overwriting each other's totals. Locking the stored stocks would
+	 * not be enough: a stock that does not exist yet can't be locked, and two refreshes would both
+	 * insert it.
+	 * 
+	 * @see org.raxa.module.raxacore.db.DrugInventoryDAO#refreshDrugStocks(Collection)
+	 */
+	@Override
+	public void refreshDrugStocks(Collection<Integer> drugIds) throws DAOException {
+		if (drugIds.isEmpty()) {
+			return;
+		}
+		Session session = sessionFactory.getCurrentSession();
+		Criteria drugs = session.createCriteria(Drug.class);
+		drugs.add(Restrictions.in("drugId", drugIds));
+		drugs.addOrder(Order.asc("drugId"));
+		drugs.setLockMode(LockMode.UPGRADE);
+		drugs.list();
+		Criteria criteria = session.createCriteria(DrugStock.class);
+		criteria.add(Restrictions.in("drug.id", drugIds));
+		Map<String, DrugStock> stocks = new HashMap<String, DrugStock>();
+		for (DrugStock stock : (List<DrugStock>) criteria.list()) {
+			stocks.put(stock.getDrug().getDrugId() + "_" + stock.getLocation().getLocationId(), stock);
+		}
+		List<Object[]> totals = session.createQuery(
+		    "select di.drug.id, di.location.id, sum(di.quantity), min(di.expiryDate) from DrugInventory di "
+		            + "where di.drug.id in (:drugIds) and di.location is not null and di.retired = false "
+		            + "and di.quantity > 0 and (di.status is null or di.status <> :out) "
+		            + "group by di.drug.id, di.location.id").setParameterList("drugIds", drugIds).setString("out",
+		    DrugInventory.STATUS_OUT).list();
+		for (Object[] total : totals) {
+			DrugStock stock = stocks.remove(total[0] + "_" + total[1]);
+			if (stock == null) {
+				stock = new DrugStock();
+				stock.setDrug((Drug) session.load(Drug.class, (Integer) total[0]));
+				stock.setLocation((Location) session.load(Location.class, (Integer) total[1]));
+			}
+			stock.setQuantity(((Number) total[2]).intValue());
+			stock.setEarliestExpiryDate((Date) total[3]);
+			session.saveOrUpdate(stock);
+		}
+		//locations that no longer hold the drug
+		for (DrugStock stock : stocks.values()) {
+			session.delete(stock);
+		}
+	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.db.DrugInventoryDAO#getDrugStock(Integer, Integer)
+	 */
+	@Override
+	public DrugStock getDrugStock(Integer drugId, Integer locationId) {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(DrugStock.class);
+		criteria.add(Restrictions.eq("drug.id", drugId));
+		criteria.add(Restrictions.eq("location.id", locationId));
+		return (DrugStock) criteria.uniqueResult();
+	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.db.DrugInventoryDAO#getDrugStocksByLocation(Integer)
+	 */
+	@Override
+	public List<DrugStock> getDrugStocksByLocation(Integer locationId) {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(DrugStock.class);
+		criteria.add(Restrictions.eq("location.id", locationId));
+		List<DrugStock> drugStocks = new ArrayList<DrugStock>();
+		drugStocks.addAll(criteria.list());
+		return drugStocks;
+	}
+	
+	/**
+	 * Uses a single SELECT ... FOR UPDATE, so concurrent allocations from the same batches run one
+	 * after the other. The rows are locked in id order, like everywhere else batches are locked, and
+	 * sorted by expiry date afterwards.
+	 * 
+	 * @see org.raxa.module.raxacore.db.DrugInventoryDAO#getDispensableDrugInventories(Integer, Integer)
+	 */
+	@Override
+	public List<DrugInventory> getDispensableDrugInventories(Integer drugId, Integer locationId) throws DAOException {
+		Query query = sessionFactory.getCurrentSession().createQuery(
+		    "from DrugInventory di where di.drug.id = :drugId and di.location.id = :locationId "
+		            + "and di.retired = false and di.quantity > 0 and (di.status is null or di.status <> :out) "
+		            + "order by di.id");
+		query.setInteger("drugId", drugId).setInteger("locationId", locationId).setString("out",
+		    DrugInventory.STATUS_OUT);
+		query.setLockMode("di", LockMode.UPGRADE);
+		List<DrugInventory> drugInventories = new ArrayList<DrugInventory>();
+		drugInventories.addAll(query.list());
+		//the sort is stable, so batches expiring together stay in id order; batches that never expire go last
+		Collections.sort(drugInventories, new Comparator<DrugInventory>() {
+			
+			@Override
+			public int compare(DrugInventory a, DrugInventory b) {
+				if (a.getExpiryDate() == null || b.getExpiryDate() == null) {
+					return (a.getExpiryDate() == null ? 1 : 0) - (b.getExpiryDate() == null ? 1 : 0);
+				}
+				return a.getExpiryDate().compareTo(b.getExpiryDate());
+			}
+		});
+		return drugInventories;
+	}
+	
+	/**
+	 * Uses a single SELECT ... FOR UPDATE ordered by id
+	 * 
+	 * @see org.raxa.module.raxacore.db.DrugInventoryDAO#lockDrugInventories(Collection, Collection, Collection)
+	 */
+	@Override
+	public void lockDrugInventories(Collection<String> uuids, Collection<Integer> drugIds, Collection<Integer> locationIds)
+	        throws DAOException {
+		boolean byDrug = !drugIds.isEmpty() && !locationIds.isEmpty();
+		if (uuids.isEmpty() && !byDrug) {
+			return;
+		}
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(DrugInventory.class);
+		Disjunction batches = Restrictions.disjunction();
+		if (!uuids.isEmpty()) {
+			batches.add(Restrictions.in("uuid", uuids));
+		}
+		if (byDrug) {
+			batches.add(Restrictions.and(Restrictions.in("drug.id", drugIds), Restrictions.in("location.id",
+			    locationIds)));
+		}
+		criteria.add(batches);
+		criteria.addOrder(Order.asc("id"));
+		criteria.setLockMode(LockMode.UPGRADE);
+		criteria.list();
+	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.db.DrugInventoryDAO#getDrugInventoriesExpiringBefore(Integer, Date, Integer, Integer)
+	 */
+	@Override
+	public List<DrugInventory> getDrugInventoriesExpiringBefore(Integer locationId, Date expiryDate, Integer startIndex,
+	        Integer limit) {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(DrugInventory.class);
+		criteria.add(Restrictions.eq("locationId", locationId));
+		criteria.add(Restrictions.lt("expiryDate", expiryDate));
+		criteria.add(Restrictions.or(Restrictions.isNull("status"), Restrictions.ne("status", DrugInventory.STATUS_OUT)));
+		criteria.add(Restrictions.eq("retired", false));
+		criteria.addOrder(Order.asc("expiryDate"));
+		criteria.addOrder(Order.asc("id"));
+		criteria.setFirstResult(startIndex);
+		criteria.setMaxResults(limit);
+		List<DrugInventory> drugInventories = new ArrayList<DrugInventory>();
+		drugInventories.addAll(criteria.list());
+		return drugInventories;
+	}
 }
@@ -19,6 +19,8 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.openmrs.EncounterType;
 import org.openmrs.api.db.DAOException;
@@ -57,6 +59,24 @@ public class HibernateDrugPurchaseOrderDAO implements DrugPurchaseOrderDAO {
 		return criteria.list();
 	}
 	
+	public List<DrugPurchaseOrder> getAllDrugPurchaseOrders(Integer startIndex, Integer limit) {
+		
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(DrugPurchaseOrder.class);
+		criteria.addOrder(Order.asc("id"));
+		criteria.setFirstResult(startIndex);
+		criteria.setMaxResults(limit);
+		List<DrugPurchaseOrder> drugPurchaseOrders = new ArrayList<DrugPurchaseOrder>();
+		drugPurchaseOrders.addAll(criteria.list());
+		return drugPurchaseOrders;
+	}
+	
+	public Integer getCountOfAllDrugPurchaseOrders() {
+		
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(DrugPurchaseOrder.class);
+		criteria.setProjection(Projections.rowCount());
+		return ((Number) criteria.uniqueResult()).intValue();
+	}
+	
 	public List<DrugPurchaseOrder> getAllDrugPurchaseOrdersNotReceived() {
 		
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(DrugPurchaseOrder.class);
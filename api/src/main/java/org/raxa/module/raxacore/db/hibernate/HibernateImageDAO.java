@@ -7,6 +7,7 @@ import org.hibernate.Criteria;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.DAOException;
@@ -120,6 +121,60 @@ public class HibernateImageDAO implements ImageDAO {
 		return images;
 	}
 	
+	@Override
+	public List<Image> getAllImages(Integer startIndex, Integer limit) throws DAOException {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Image.class);
+		criteria.addOrder(Order.asc("id"));
+		criteria.setFirstResult(startIndex);
+		criteria.setMaxResults(limit);
+		List<Image> images = new ArrayList<Image>();
+		images.addAll(criteria.list());
+		return images;
+	}
+	
+	@Override
+	public Integer getCountOfAllImages() throws DAOException {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Image.class);
+		criteria.setProjection(Projections.rowCount());
+		return ((Number) criteria.uniqueResult()).intValue();
+	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.db.ImageDAO#getImagesNotInStore(Integer, Integer)
+	 */
+	@Override
+	public List<Image> getImagesNotInStore(Integer afterId, Integer limit) throws DAOException {
+		Criteria criteria = createNotInStoreCriteria();
+		if (afterId != null) {
+			criteria.add(Restrictions.gt("id", afterId));
+		}
+		criteria.addOrder(Order.asc("id"));
+		criteria.setMaxResults(limit);
+		List<Image> images = new ArrayList<Image>();
+		images.addAll(criteria.list());
+		return images;
+	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.db.ImageDAO#getCountOfImagesNotInStore()
+	 */
+	@Override
+	public Integer getCountOfImagesNotInStore() throws DAOException {
+		Criteria criteria = createNotInStoreCriteria();
+		criteria.setProjection(Projections.rowCount());
+		return ((Number) criteria.uniqueResult()).intValue();
+	}
+	
+	/**
+	 * ImageStore keys always contain a directory, flat file names never do
+	 */
+	private Criteria createNotInStoreCriteria() {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Image.class);
+		criteria.add(Restrictions.isNotNull("fileName"));
+		criteria.add(Restrictions.not(Restrictions.like("fileName", "%/%")));
+		return criteria;
+	}
+	
 	@Override
 	public Image voidImage(Image image, String reason) {
 		if (reason == null) {
@@ -14,15 +14,45 @@ package org.raxa.module.raxacore.db.hibernate;
  */
 
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.Query;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Conjunction;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
+import org.openmrs.Concept;
+import org.openmrs.DrugOrder;
+import org.openmrs.Encounter;
+import org.openmrs.EncounterProvider;
 import org.openmrs.EncounterType;
+import org.openmrs.Location;
+import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.Person;
+import org.openmrs.PersonName;
+import org.openmrs.Provider;
 import org.openmrs.api.db.DAOException;
 import org.raxa.module.raxacore.PatientList;
+import org.raxa.module.raxacore.PatientListCursor;
+import org.raxa.module.raxacore.PatientListEncounterRow;
+import org.raxa.module.raxacore.PatientListMember;
+import org.raxa.module.raxacore.PatientListObsRow;
+import org.raxa.module.raxacore.PatientListQueryPlan;
 import org.raxa.module.raxacore.db.PatientListDAO;
 
 /**
@@ -32,6 +62,18 @@ public class HibernatePatientListDAO implements PatientListDAO {
 	
 	protected final Log log = LogFactory.getLog(getClass());
 	
+	private static final String ROOT_ALIAS = "enc";
+	
+	private static final int MAX_IN_LIST_SIZE = 500;
+	
+	private static final int ROW_ENCOUNTER_ID = 0;
+	
+	private static final int ROW_ENCOUNTER_DATETIME = 2;
+	
+	private static final int ROW_PATIENT_ID = 5;
+	
+	private static final int ROW_BIRTHDATE = 8;
+	
 	/**
 	 * Hibernate session factory
 	 */
@@ -44,7 +86,7 @@ public class HibernatePatientListDAO implements PatientListDAO {
 	 */
 	public void setSessionFactory(SessionFactory sessionFactory) {
 		this.sessionFactory = sessionFactory;
-		
+	
 	}
 	
 	/**
@@ -107,7 +149,7 @@ public class HibernatePatientListDAO implements PatientListDAO {
 		List<PatientList> patients = new ArrayList<PatientList>();
 		patients.addAll(criteria.list());
 		return patients;
-		
+	
 	}
 	
 	/**
@@ -130,4 +172,520 @@ public class HibernatePatientListDAO implements PatientListDAO {
 		sessionFactory.getCurrentSession().update(patientList);
 		return patientList;
 	}
+	
+	/**
+	 * @see org.raxa.module.db.PatientListDAO#getEncountersInPatientList(PatientListQueryPlan)
+	 */
+	@Override
+	public List<Encounter> getEncountersInPatientList(PatientListQueryPlan plan) throws DAOException {
+		return getEncountersInPatientList(plan, null, null);
+	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.db.PatientListDAO#getEncountersInPatientList(PatientListQueryPlan,
+	 *      PatientListCursor, Integer)
+	 */
+	@Override
+	public List<Encounter> getEncountersInPatientList(PatientListQueryPlan plan, PatientListCursor cursor, Integer limit)
+	        throws DAOException {
+		Map<Integer, Long> latestExcluding = getLatestNotInListEncounterTimes(plan, null);
+		List<Encounter> encounters = new ArrayList<Encounter>();
+		PatientListCursor after = cursor;
+		//notInList encounters are dropped after the query, so keep reading batches until the page is full
+		while (true) {
+			Criteria criteria = createEncounterCriteria(plan, null);
+			if (after != null) {
+				criteria.add(isAfter(after));
+			}
+			if (limit != null) {
+				criteria.setMaxResults(limit);
+			}
+			List<Encounter> batch = criteria.list();
+			for (Encounter e : batch) {
+				if (!isExcluded(latestExcluding, e.getPatient().getPatientId(), e.getEncounterDatetime())) {
+					encounters.add(e);
+					if (limit != null && encounters.size() == limit) {
+						return encounters;
+					}
+				}
+			}
+			if (limit == null || batch.size() < limit) {
+				return encounters;
+			}
+			after = PatientListCursor.after(batch.get(batch.size() - 1));
+		}
+	}
+	
+	/**
+	 * @see org.raxa.module.db.PatientListDAO#getEncounterIdsInPatientList(PatientListQueryPlan)
+	 */
+	@Override
+	public List<Integer> getEncounterIdsInPatientList(PatientListQueryPlan plan) throws DAOException {
+		return getEncounterIdsInPatientList(plan, null);
+	}
+	
+	/**
+	 * @see org.raxa.module.db.PatientListDAO#getEncounterIdsInPatientList(PatientListQueryPlan, Patient)
+	 */
+	@Override
+	public List<Integer> getEncounterIdsInPatientList(PatientListQueryPlan plan, Patient patient) throws DAOException {
+		Criteria criteria = createEncounterCriteria(plan, patient);
+		criteria.setProjection(Projections.projectionList().add(Projections.property(ROOT_ALIAS + ".encounterId")).add(
+		    Projections.property(ROOT_ALIAS + ".patient.id")).add(Projections.property(ROOT_ALIAS + ".encounterDatetime")));
+		List<Object[]> rows = criteria.list();
+		Map<Integer, Long> latestExcluding = getLatestNotInListEncounterTimes(plan, patient);
+		List<Integer> encounterIds = new ArrayList<Integer>(rows.size());
+		for (Object[] row : rows) {
+			if (!isExcluded(latestExcluding, (Integer) row[1], (Date) row[2])) {
+				encounterIds.add((Integer) row[0]);
+			}
+		}
+		return encounterIds;
+	}
+	
+	/**
+	 * @see org.raxa.module.db.PatientListDAO#getEncounterRowsInPatientList(PatientListQueryPlan,
+	 *      PatientListCursor, Integer)
+	 */
+	@Override
+	public List<PatientListEncounterRow> getEncounterRowsInPatientList(PatientListQueryPlan plan,
+	        PatientListCursor cursor, Integer limit) throws DAOException {
+		Map<Integer, Long> latestExcluding = getLatestNotInListEncounterTimes(plan, null);
+		List<Object[]> rows = new ArrayList<Object[]>();
+		PatientListCursor after = cursor;
+		//notInList encounters are dropped after the query, so keep reading batches until the page is full
+		while (true) {
+			Criteria criteria = createEncounterCriteria(plan, null);
+			if (after != null) {
+				criteria.add(isAfter(after));
+			}
+			if (limit != null) {
+				criteria.setMaxResults(limit);
+			}
+			List<Object[]> batch = projectEncounterRows(criteria).list();
+			for (Object[] row : batch) {
+				if (!isExcluded(latestExcluding, (Integer) row[ROW_PATIENT_ID], (Date) row[ROW_ENCOUNTER_DATETIME])) {
+					rows.add(row);
+					if (limit != null && rows.size() == limit) {
+						return createEncounterRows(rows);
+					}
+				}
+			}
+			if (limit == null || batch.size() < limit) {
+				return createEncounterRows(rows);
+			}
+			Object[] last = batch.get(batch.size() - 1);
+			after = new PatientListCursor((Date) last[ROW_ENCOUNTER_DATETIME], (Integer) last[ROW_ENCOUNTER_ID]);
+		}
+	}
+	
+	/**
+	 * @see org.raxa.module.db.PatientListDAO#getMaterializedEncounterRows(PatientList, PatientListCursor,
+	 *      Integer)
+	 */
+	@Override
+	public List<PatientListEncounterRow> getMaterializedEncounterRows(PatientList patientList, PatientListCursor cursor,
+	        Integer limit) throws DAOException {
+		return createEncounterRows(projectEncounterRows(createMaterializedEncounterCriteria(patientList, cursor, limit))
+		        .list());
+	}
+	
+	/**
+	 * Projects encounter criteria onto the columns of a {@link PatientListEncounterRow}, indexed by
+	 * the ROW_ constants
+	 */
+	private Criteria projectEncounterRows(Criteria criteria) {
+		criteria.createAlias(ROOT_ALIAS + ".encounterType", "encType");
+		criteria.createAlias(ROOT_ALIAS + ".patient", "pat");
+		criteria.setProjection(Projections.projectionList().add(Projections.property(ROOT_ALIAS + ".encounterId")).add(
+		    Projections.property(ROOT_ALIAS + ".uuid")).add(Projections.property(ROOT_ALIAS + ".encounterDatetime")).add(
+		    Projections.property("encType.name")).add(Projections.property("encType.uuid")).add(
+		    Projections.property(ROOT_ALIAS + ".patient.id")).add(Projections.property("pat.uuid")).add(
+		    Projections.property("pat.gender")).add(Projections.property("pat.birthdate")));
+		return criteria;
+	}
+	
+	/**
+	 * Builds the rows from the projected encounter columns, reading the patients' names and the obs
+	 * with one projection query each per batch of ids
+	 */
+	private List<PatientListEncounterRow> createEncounterRows(List<Object[]> rows) {
+		Set<Integer> encounterIds = new LinkedHashSet<Integer>();
+		Set<Integer> patientIds = new LinkedHashSet<Integer>();
+		for (Object[] row : rows) {
+			encounterIds.add((Integer) row[ROW_ENCOUNTER_ID]);
+			patientIds.add((Integer) row[ROW_PATIENT_ID]);
+		}
+		Map<Integer, String> names = new HashMap<Integer, String>();
+		//preferred names first, so the first name read for a person is the one Person.getPersonName returns
+		List<Object[]> nameRows = listByIds("select pn.person.id, pn.prefix, pn.givenName, pn.middleName, "
+		        + "pn.familyNamePrefix, pn.familyName, pn.familyName2, pn.familyNameSuffix, pn.degree from PersonName pn "
+		        + "where pn.voided = false and pn.person.id in (:ids) order by pn.preferred desc, pn.personNameId",
+		    patientIds);
+		for (Object[] name : nameRows) {
+			if (!names.containsKey(name[0])) {
+				PersonName personName = new PersonName();
+				personName.setPrefix((String) name[1]);
+				personName.setGivenName((String) name[2]);
+				personName.setMiddleName((String) name[3]);
+				personName.setFamilyNamePrefix((String) name[4]);
+				personName.setFamilyName((String) name[5]);
+				personName.setFamilyName2((String) name[6]);
+				personName.setFamilyNameSuffix((String) name[7]);
+				personName.setDegree((String) name[8]);
+				names.put((Integer) name[0], personName.getFullName());
+			}
+		}
+		Map<Integer, PatientListEncounterRow> encounterRows = new LinkedHashMap<Integer, PatientListEncounterRow>();
+		for (Object[] row : rows) {
+			Person person = new Person();
+			person.setBirthdate((Date) row[ROW_BIRTHDATE]);
+			encounterRows.put((Integer) row[ROW_ENCOUNTER_ID], new PatientListEncounterRow((Integer) row[ROW_ENCOUNTER_ID],
+			        (String) row[1], (Date) row[ROW_ENCOUNTER_DATETIME], (String) row[3], (String) row[4],
+			        (Integer) row[ROW_PATIENT_ID], (String) row[6], names.get(row[ROW_PATIENT_ID]), (String) row[7], person
+			                .getAge()));
+		}
+		//leaf obs only, as Encounter.getObs returns them
+		List<Object[]> obsRows = listByIds("select o.encounter.id, o.uuid, o.obsDatetime, o.concept.id, o.valueCoded.id, "
+		        + "o.valueNumeric, o.valueDatetime, o.valueText, o.valueModifier from Obs o where o.voided = false "
+		        + "and o.encounter.id in (:ids) and not exists (select m.obsId from Obs m where m.obsGroup = o) "
+		        + "order by o.obsId", encounterIds);
+		Set<Integer> conceptIds = new LinkedHashSet<Integer>();
+		for (Object[] obs : obsRows) {
+			conceptIds.add((Integer) obs[3]);
+			if (obs[4] != null) {
+				conceptIds.add((Integer) obs[4]);
+			}
+		}
+		//concepts are shared by many obs, so they are loaded once with their names
+		Map<Integer, Concept> concepts = new HashMap<Integer, Concept>();
+		List<Concept> conceptList = listByIds(
+		    "select distinct c from Concept c left join fetch c.names where c.conceptId in (:ids)", conceptIds);
+		for (Concept concept : conceptList) {
+			concepts.put(concept.getConceptId(), concept);
+		}
+		for (Object[] obs : obsRows) {
+			encounterRows.get(obs[0]).getObs().add(
+			    new PatientListObsRow((String) obs[1], (Date) obs[2], concepts.get(obs[3]), concepts.get(obs[4]),
+			            (Double) obs[5], (Date) obs[6], (String) obs[7], (String) obs[8]));
+		}
+		return new ArrayList<PatientListEncounterRow>(encounterRows.values());
+	}
+	
+	/**
+	 * @see org.raxa.module.db.PatientListDAO#prefetchEncounterDetails(List)
+	 */
+	@Override
+	public void prefetchEncounterDetails(List<Encounter> encounters) throws DAOException {
+		Set<Integer> encounterIds = new LinkedHashSet<Integer>();
+		Set<Integer> patientIds = new LinkedHashSet<Integer>();
+		for (Encounter e : encounters) {
+			encounterIds.add(e.getEncounterId());
+			patientIds.add(e.getPatient().getPatientId());
+		}
+		//each collection is fetched on its own so the queries do not multiply into a cartesian product
+		listByIds("select distinct e from Encounter e left join fetch e.obs where e.encounterId in (:ids)", encounterIds);
+		listByIds("select distinct e from Encounter e left join fetch e.orders where e.encounterId in (:ids)",
+		    encounterIds);
+		listByIds("select distinct e from Encounter e left join fetch e.encounterProviders where e.encounterId in (:ids)",
+		    encounterIds);
+		Set<Integer> obsIds = new LinkedHashSet<Integer>();
+		Set<Integer> conceptIds = new LinkedHashSet<Integer>();
+		for (Encounter e : encounters) {
+			for (Obs o : e.getAllObs(true)) {
+				obsIds.add(o.getObsId());
+				conceptIds.add(o.getConcept().getConceptId());
+			}
+		}
+		listByIds("select distinct o from Obs o left join fetch o.groupMembers where o.obsId in (:ids)", obsIds);
+		listByIds("select distinct c from Concept c left join fetch c.names where c.conceptId in (:ids)", conceptIds);
+		listByIds("select distinct p from Patient p left join fetch p.names where p.patientId in (:ids)", patientIds);
+		listByIds("select distinct p from Patient p left join fetch p.identifiers where p.patientId in (:ids)",
+		    patientIds);
+	}
+	
+	/**
+	 * Runs a query over the ids in batches, keeping each IN list to a reasonable size
+	 */
+	private <T> List<T> listByIds(String hql, Set<Integer> ids) {
+		List<Integer> idList = new ArrayList<Integer>(ids);
+		List<T> results = new ArrayList<T>();
+		for (int i = 0; i < idList.size(); i += MAX_IN_LIST_SIZE) {
+			Query query = sessionFactory.getCurrentSession().createQuery(hql);
+			query.setParameterList("ids", idList.subList(i, Math.min(i + MAX_IN_LIST_SIZE, idList.size())));
+			results.addAll(query.list());
+		}
+		return results;
+	}
+	
+	/**
+	 * @see org.raxa.module.db.PatientListDAO#getMaterializedPatientLists()
+	 */
+	@Override
+	public List<PatientList> getMaterializedPatientLists() throws DAOException {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(PatientList.class);
+		criteria.add(Restrictions.eq("materialized", true));
+		return criteria.list();
+	}
+	
+	/**
+	 * @see org.raxa.module.db.PatientListDAO#getMaterializedEncounters(PatientList)
+	 */
+	@Override
+	public List<Encounter> getMaterializedEncounters(PatientList patientList) throws DAOException {
+		return getMaterializedEncounters(patientList, null, null);
+	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.db.PatientListDAO#getMaterializedEncounters(PatientList,
+	 *      PatientListCursor, Integer)
+	 */
+	@Override
+	public List<Encounter> getMaterializedEncounters(PatientList patientList, PatientListCursor cursor, Integer limit)
+	        throws DAOException {
+		return createMaterializedEncounterCriteria(patientList, cursor, limit).list();
+	}
+	
+	/**
+	 * @see org.raxa.module.db.PatientListDAO#saveMaterializedMembers(PatientList, List)
+	 */
+	@Override
+	public void saveMaterializedMembers(PatientList patientList, List<Integer> encounterIds) throws DAOException {
+		for (Integer encounterId : encounterIds) {
+			sessionFactory.getCurrentSession().save(new PatientListMember(patientList, encounterId));
+		}
+	}
+	
+	/**
+	 * @see org.raxa.module.db.PatientListDAO#deleteMaterializedMembers(PatientList, Patient)
+	 */
+	@Override
+	public void deleteMaterializedMembers(PatientList patientList, Patient patient) throws DAOException {
+		String hql = "delete from PatientListMember m where m.patientList = :patientList";
+		if (patient != null) {
+			hql += " and m.encounterId in (select e.encounterId from Encounter e where e.patient = :patient)";
+		}
+		Query query = sessionFactory.getCurrentSession().createQuery(hql);
+		query.setParameter("patientList", patientList);
+		if (patient != null) {
+			query.setParameter("patient", patient);
+		}
+		query.executeUpdate();
+	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.db.PatientListDAO#deleteMaterializedMembers(Encounter)
+	 */
+	@Override
+	public void deleteMaterializedMembers(Encounter encounter) throws DAOException {
+		sessionFactory.getCurrentSession().createQuery("delete from PatientListMember m where m.encounterId = :encounterId")
+		        .setInteger("encounterId", encounter.getEncounterId()).executeUpdate();
+	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.db.PatientListDAO#getMaterializedPatientListIds(Patient)
+	 */
+	@Override
+	public List<Integer> getMaterializedPatientListIds(Patient patient) throws DAOException {
+		return sessionFactory.getCurrentSession().createQuery(
+		    "select distinct m.patientList.id from PatientListMember m where m.encounterId in "
+		            + "(select e.encounterId from Encounter e where e.patient = :patient)").setParameter("patient", patient)
+		        .list();
+	}
+	
+	/**
+	 * Creates the criteria selecting one page of the stored encounters of a materialized list
+	 */
+	private Criteria createMaterializedEncounterCriteria(PatientList patientList, PatientListCursor cursor, Integer limit) {
+		DetachedCriteria members = DetachedCriteria.forClass(PatientListMember.class, "member");
+		members.add(Restrictions.eq("member.patientList", patientList));
+		members.setProjection(Projections.property("member.encounterId"));
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Encounter.class, ROOT_ALIAS);
+		criteria.add(Subqueries.propertyIn(ROOT_ALIAS + ".encounterId", members));
+		if (cursor != null) {
+			criteria.add(isAfter(cursor));
+		}
+		if (limit != null) {
+			criteria.setMaxResults(limit);
+		}
+		criteria.addOrder(Order.asc(ROOT_ALIAS + ".encounterDatetime"));
+		criteria.addOrder(Order.asc(ROOT_ALIAS + ".encounterId"));
+		return criteria;
+	}
+	
+	/**
+	 * Creates the criteria selecting the encounters of a plan before its own notInLists are applied,
+	 * ordered as EncounterService orders them
+	 */
+	private Criteria createEncounterCriteria(PatientListQueryPlan plan, Patient patient) {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Encounter.class, ROOT_ALIAS);
+		criteria.add(new EncounterQueryBuilder(sessionFactory.getCurrentSession()).build(plan, ROOT_ALIAS, false));
+		if (patient != null) {
+			criteria.add(Restrictions.eq(ROOT_ALIAS + ".patient", patient));
+		}
+		criteria.addOrder(Order.asc(ROOT_ALIAS + ".encounterDatetime"));
+		criteria.addOrder(Order.asc(ROOT_ALIAS + ".encounterId"));
+		return criteria;
+	}
+	
+	/**
+	 * Gets, for every patient in the plan's notInLists, the time of their latest encounter in any of
+	 * those lists. Each notInList is one grouped query, so the anti-join against the main list is a
+	 * hash lookup per encounter rather than a correlated subquery per encounter.
+	 *
+	 * @param plan
+	 * @param patient only look at this patient's encounters, or all patients if null
+	 * @return map of patient id to latest notInList encounterDatetime in milliseconds
+	 */
+	private Map<Integer, Long> getLatestNotInListEncounterTimes(PatientListQueryPlan plan, Patient patient) {
+		Map<Integer, Long> latestExcluding = new HashMap<Integer, Long>();
+		for (PatientListQueryPlan notInListPlan : plan.getNotInListPlans()) {
+			Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Encounter.class, ROOT_ALIAS);
+			criteria.add(new EncounterQueryBuilder(sessionFactory.getCurrentSession()).build(notInListPlan, ROOT_ALIAS,
+			    true));
+			if (patient != null) {
+				criteria.add(Restrictions.eq(ROOT_ALIAS + ".patient", patient));
+			}
+			criteria.setProjection(Projections.projectionList().add(Projections.groupProperty(ROOT_ALIAS + ".patient.id"))
+			        .add(Projections.max(ROOT_ALIAS + ".encounterDatetime")));
+			List<Object[]> rows = criteria.list();
+			for (Object[] row : rows) {
+				Integer patientId = (Integer) row[0];
+				long latest = ((Date) row[1]).getTime();
+				Long previous = latestExcluding.get(patientId);
+				if (previous == null || previous < latest) {
+					latestExcluding.put(patientId, latest);
+				}
+			}
+		}
+		return latestExcluding;
+	}
+	
+	/**
+	 * Keyset restriction matching the encounters ordered after the cursor
+	 */
+	private Criterion isAfter(PatientListCursor cursor) {
+		return Restrictions.or(Restrictions.gt(ROOT_ALIAS + ".encounterDatetime", cursor.getEncounterDatetime()),
+		    Restrictions.and(Restrictions.eq(ROOT_ALIAS + ".encounterDatetime", cursor.getEncounterDatetime()),
+		        Restrictions.gt(ROOT_ALIAS + ".encounterId", cursor.getEncounterId())));
+	}
+	
+	/**
+	 * An encounter is excluded if its patient has a later encounter in a notInList
+	 */
+	private boolean isExcluded(Map<Integer, Long> latestExcluding, Integer patientId, Date encounterDatetime) {
+		Long latest = latestExcluding.get(patientId);
+		return latest != null && latest > encounterDatetime.getTime();
+	}
+	
+	/**
+	 * Translates a resolved PatientListQueryPlan into restrictions on an Encounter alias. inList
+	 * sub-lists become IN subqueries and, inside subqueries, notInList sub-lists become correlated NOT
+	 * EXISTS subqueries, each with its own alias so nested lists can refer to the encounter they are
+	 * filtering. The top level notInLists are left to getLatestNotInListEncounterTimes. The plan's
+	 * entities are restricted on as proxies of its ids, so building the query looks nothing up.
+	 */
+	private static class EncounterQueryBuilder {
+		
+		private final Session session;
+		
+		private int aliasCount = 0;
+		
+		EncounterQueryBuilder(Session session) {
+			this.session = session;
+		}
+		
+		private Object load(Class<?> entityClass, Integer id) {
+			return session.load(entityClass, id);
+		}
+		
+		private String nextAlias(String prefix) {
+			aliasCount++;
+			return prefix + aliasCount;
+		}
+		
+		Criterion build(PatientListQueryPlan plan, String alias, boolean notInListsAsSubqueries) {
+			Conjunction conjunction = Restrictions.conjunction();
+			if (plan.getStartDate() != null) {
+				conjunction.add(Restrictions.ge(alias + ".encounterDatetime", plan.getStartDate()));
+			}
+			if (plan.getEndDate() != null) {
+				conjunction.add(Restrictions.le(alias + ".encounterDatetime", plan.getEndDate()));
+			}
+			if (plan.getPatientId() != null) {
+				conjunction.add(Restrictions.eq(alias + ".patient", load(Patient.class, plan.getPatientId())));
+			}
+			if (plan.getInListPlans() != null) {
+				//if we give inList, only choose encounters from those lists, location is not applied
+				Disjunction inLists = Restrictions.disjunction();
+				for (PatientListQueryPlan inListPlan : plan.getInListPlans()) {
+					String subAlias = nextAlias("inEnc");
+					DetachedCriteria inList = DetachedCriteria.forClass(Encounter.class, subAlias);
+					inList.add(build(inListPlan, subAlias, true));
+					inList.setProjection(Projections.property(subAlias + ".encounterId"));
+					inLists.add(Subqueries.propertyIn(alias + ".encounterId", inList));
+				}
+				conjunction.add(plan.getInListPlans().isEmpty() ? matchNothing() : inLists);
+				if (plan.getEncounterTypeId() != null) {
+					conjunction.add(Restrictions.eq(alias + ".encounterType", load(EncounterType.class, plan
+					        .getEncounterTypeId())));
+				}
+				if (plan.getProviderId() != null) {
+					conjunction.add(hasProvider(plan, alias));
+				}
+			} else {
+				//otherwise match the same encounters EncounterService.getEncounters would
+				conjunction.add(Restrictions.eq(alias + ".voided", false));
+				if (plan.getLocationId() != null) {
+					conjunction.add(Restrictions.eq(alias + ".location", load(Location.class, plan.getLocationId())));
+				}
+				if (plan.getEncounterTypeId() != null) {
+					conjunction.add(Restrictions.eq(alias + ".encounterType", load(EncounterType.class, plan
+					        .getEncounterTypeId())));
+				} else {
+					conjunction.add(matchNothing());
+				}
+				if (plan.isPersonFiltered()) {
+					conjunction.add(plan.getProviderId() != null ? hasProvider(plan, alias) : matchNothing());
+				}
+			}
+			//patient must not have a later encounter in any notInList
+			if (notInListsAsSubqueries) {
+				for (PatientListQueryPlan notInListPlan : plan.getNotInListPlans()) {
+					String subAlias = nextAlias("notInEnc");
+					DetachedCriteria notInList = DetachedCriteria.forClass(Encounter.class, subAlias);
+					notInList.add(build(notInListPlan, subAlias, true));
+					notInList.add(Restrictions.eqProperty(subAlias + ".patient", alias + ".patient"));
+					notInList.add(Restrictions.gtProperty(subAlias + ".encounterDatetime", alias + ".encounterDatetime"));
+					notInList.setProjection(Projections.property(subAlias + ".encounterId"));
+					conjunction.add(Subqueries.notExists(notInList));
+				}
+			}
+			if (plan.getContainsOrderType().equals("drugOrder")) {
+				String subAlias = nextAlias("drugOrder");
+				DetachedCriteria drugOrders = DetachedCriteria.forClass(DrugOrder.class, subAlias);
+				drugOrders.add(Restrictions.eqProperty(subAlias + ".encounter.encounterId", alias + ".encounterId"));
+				drugOrders.setProjection(Projections.property(subAlias + ".orderId"));
+				conjunction.add(Subqueries.exists(drugOrders));
+			}
+			return conjunction;
+		}
+		
+		private Criterion hasProvider(PatientListQueryPlan plan, String alias) {
+			String subAlias = nextAlias("encProvider");
+			DetachedCriteria encounterProviders = DetachedCriteria.forClass(EncounterProvider.class, subAlias);
+			encounterProviders.add(Restrictions.eqProperty(subAlias + ".encounter.encounterId", alias + ".encounterId"));
+			encounterProviders.add(Restrictions.eq(subAlias + ".provider", load(Provider.class, plan.getProviderId())));
+			encounterProviders.add(Restrictions.eq(subAlias + ".voided", false));
+			encounterProviders.setProjection(Projections.property(subAlias + ".encounterProviderId"));
+			return Subqueries.exists(encounterProviders);
+		}
+		
+		/**
+		 * EncounterService returns nothing when the encounter type or provider could not be found
+		 */
+		private Criterion matchNothing() {
+			return Restrictions.sqlRestriction("1 = 0");
+		}
+	}
 }
@@ -19,6 +19,8 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.openmrs.Obs;
 import org.openmrs.api.ObsService;
@@ -165,6 +167,76 @@ public class HibernateRaxaAlertDAO implements RaxaAlertDAO {
 		return criteria.list();
 	}
 	
+	/**
+	 * @see org.raxa.module.db.RaxaAlertDAO#getAllRaxaAlerts(boolean, Integer, Integer)
+	 */
+	@Override
+	public List<RaxaAlert> getAllRaxaAlerts(boolean includeSeen, Integer startIndex, Integer limit) throws DAOException {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(RaxaAlert.class);
+		if (includeSeen == false)
+			criteria.add(Restrictions.eq("seen", false));
+		criteria.addOrder(Order.asc("id"));
+		criteria.setFirstResult(startIndex);
+		criteria.setMaxResults(limit);
+		List<RaxaAlert> raxaAlerts = new ArrayList<RaxaAlert>();
+		raxaAlerts.addAll(criteria.list());
+		return raxaAlerts;
+	}
+	
+	/**
+	 * @see org.raxa.module.db.RaxaAlertDAO#getCountOfAllRaxaAlerts(boolean)
+	 */
+	@Override
+	public Integer getCountOfAllRaxaAlerts(boolean includeSeen) throws DAOException {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(RaxaAlert.class);
+		if (includeSeen == false)
+			criteria.add(Restrictions.eq("seen", false));
+		criteria.setProjection(Projections.rowCount());
+		return ((Number) criteria.uniqueResult()).intValue();
+	}
+	
+	/**
+	 * @see org.raxa.module.db.RaxaAlertDAO#getRaxaAlertInbox(Integer, Integer, Integer)
+	 */
+	@Override
+	public List<RaxaAlert> getRaxaAlertInbox(Integer providerRecipientId, Integer toLocationId, Integer limit)
+	        throws DAOException {
+		Criteria criteria = createUnseenCriteria(providerRecipientId, toLocationId);
+		criteria.addOrder(Order.asc("id"));
+		criteria.setMaxResults(limit);
+		List<RaxaAlert> alerts = new ArrayList<RaxaAlert>();
+		alerts.addAll(criteria.list());
+		return alerts;
+	}
+	
+	/**
+	 * @see org.raxa.module.db.RaxaAlertDAO#getCountOfUnseenRaxaAlerts(Integer, Integer)
+	 */
+	@Override
+	public Integer getCountOfUnseenRaxaAlerts(Integer providerRecipientId, Integer toLocationId) throws DAOException {
+		Criteria criteria = createUnseenCriteria(providerRecipientId, toLocationId);
+		criteria.setProjection(Projections.rowCount());
+		return ((Number) criteria.uniqueResult()).intValue();
+	}
+	
+	/**
+	 * Criteria for the unseen, unvoided alerts of a provider recipient, a to-location, or either of both
+	 */
+	private Criteria createUnseenCriteria(Integer providerRecipientId, Integer toLocationId) {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(RaxaAlert.class);
+		if (providerRecipientId != null && toLocationId != null) {
+			criteria.add(Restrictions.or(Restrictions.eq("providerRecipientId", providerRecipientId), Restrictions.eq(
+			    "toLocationId", toLocationId)));
+		} else if (providerRecipientId != null) {
+			criteria.add(Restrictions.eq("providerRecipientId", providerRecipientId));
+		} else {
+			criteria.add(Restrictions.eq("toLocationId", toLocationId));
+		}
+		criteria.add(Restrictions.eq("seen", false));
+		criteria.add(Restrictions.eq("voided", false));
+		return criteria;
+	}
+	
 	/**
 	 * @see org.raxa.module.db.RaxaAlertDAO#updateRaxaAlert(Integer)
 	 */
@@ -29,6 +29,7 @@ import org.openmrs.api.context.Context;
 import org.raxa.module.raxacore.Billing;
 import org.raxa.module.raxacore.BillingService;
 import org.raxa.module.raxacore.db.BillingDAO;
+import org.raxa.module.raxacore.util.Paging;
 
 public class BillingServiceImpl implements BillingService {
 	
@@ -87,6 +88,14 @@ public class BillingServiceImpl implements BillingService {
 		return dao.getAllBillsByPatient(patientId);
 	}
 	
+	public List<Billing> getAllBillsByPatient(Integer patientId, Integer startIndex, Integer limit) {
+		return dao.getAllBillsByPatient(patientId, Paging.getFirstResult(startIndex, limit), limit);
+	}
+	
+	public Integer getCountOfBillsByPatient(Integer patientId) {
+		return dao.getCountOfBillsByPatient(patientId);
+	}
+	
 	@Override
 	public List<Encounter> getEncountersByPatientId(Integer patientId) {
 		// TODO Auto-generated method stub
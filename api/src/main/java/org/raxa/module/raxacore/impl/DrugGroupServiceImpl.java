@@ -15,9 +15,7 @@ package org.raxa.module.raxacore.impl;
  * License for the specific language governing permissions and limitations under
  * the License.
  */
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import org.apache.commons.logging.Log;
@@ -29,6 +27,7 @@ import org.openmrs.Provider;
 import org.openmrs.Person;
 import org.openmrs.Patient;
 import org.openmrs.api.context.Context;
+import org.raxa.module.raxacore.DrugCatalogVersion;
 import org.raxa.module.raxacore.DrugGroup;
 import org.raxa.module.raxacore.DrugGroupService;
 import org.raxa.module.raxacore.db.DrugGroupDAO;
@@ -52,6 +51,7 @@ public class DrugGroupServiceImpl implements DrugGroupService {
 	 */
 	@Override
 	public DrugGroup saveDrugGroup(DrugGroup drugGroup) {
+		DrugCatalogVersion.bumpAfterCommit();
 		return dao.saveDrugGroup(drugGroup);
 	}
 	
@@ -89,34 +89,12 @@ public class DrugGroupServiceImpl implements DrugGroupService {
 		return dao.getAllDrugGroup(includeRetired);
 	}
 	
-	/**
-	 * Parses a string into a date
-	 *
-	 * @param str String to be parsed (must be iso format)
-	 * @return Date
-	 */
-	private Date getDateFromString(String str) {
-		
-		String[] supportedFormats = { "yyyy-MM-dd'T'HH:mm:ss.SSSZ", "yyyy-MM-dd'T'HH:mm:ss.SSS", "yyyy-MM-dd'T'HH:mm:ssZ",
-		        "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd" };
-		for (int i = 0; i < supportedFormats.length; i++) {
-			try {
-				Date date = new SimpleDateFormat(supportedFormats[i]).parse(str);
-				return date;
-			}
-			catch (Exception ex) {
-				//log.error(ex.getMessage() + " Error parsing string " + str + " into Date");
-			}
-		}
-		log.error("Date string is malformed");
-		return null;
-	}
-	
 	/**
 	 * @see org.raxa.module.raxacore.PatientListService#updatePatientList
 	 */
 	@Override
 	public DrugGroup updateDrugGroup(DrugGroup drugGroup) {
+		DrugCatalogVersion.bumpAfterCommit();
 		return dao.updateDrugGroup(drugGroup);
 	}
 	
@@ -125,6 +103,7 @@ public class DrugGroupServiceImpl implements DrugGroupService {
 	 */
 	@Override
 	public void deleteDrugGroup(DrugGroup drugGroup) {
+		DrugCatalogVersion.bumpAfterCommit();
 		dao.deleteDrugGroup(drugGroup);
 	}
 	
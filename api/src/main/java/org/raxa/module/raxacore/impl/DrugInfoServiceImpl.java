@@ -15,9 +15,7 @@ package org.raxa.module.raxacore.impl;
  * License for the specific language governing permissions and limitations under
  * the License.
  */
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import org.apache.commons.logging.Log;
@@ -31,6 +29,7 @@ import org.openmrs.Person;
 import org.openmrs.Patient;
 import org.openmrs.Drug;
 import org.openmrs.api.context.Context;
+import org.raxa.module.raxacore.DrugCatalogVersion;
 import org.raxa.module.raxacore.DrugInfo;
 import org.raxa.module.raxacore.DrugInfoService;
 import org.raxa.module.raxacore.db.DrugInfoDAO;
@@ -54,6 +53,7 @@ public class DrugInfoServiceImpl implements DrugInfoService {
 	 */
 	@Override
 	public DrugInfo saveDrugInfo(DrugInfo drugInfo) {
+		DrugCatalogVersion.bumpAfterCommit();
 		return dao.saveDrugInfo(drugInfo);
 	}
 	
@@ -98,34 +98,12 @@ public class DrugInfoServiceImpl implements DrugInfoService {
 		return dao.getAllDrugInfo(includeVoided);
 	}
 	
-	/**
-	 * Parses a string into a date
-	 *
-	 * @param str String to be parsed (must be iso format)
-	 * @return Date
-	 */
-	private Date getDateFromString(String str) {
-		
-		String[] supportedFormats = { "yyyy-MM-dd'T'HH:mm:ss.SSSZ", "yyyy-MM-dd'T'HH:mm:ss.SSS", "yyyy-MM-dd'T'HH:mm:ssZ",
-		        "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd" };
-		for (int i = 0; i < supportedFormats.length; i++) {
-			try {
-				Date date = new SimpleDateFormat(supportedFormats[i]).parse(str);
-				return date;
-			}
-			catch (Exception ex) {
-				//log.error(ex.getMessage() + " Error parsing string " + str + " into Date");
-			}
-		}
-		log.error("Date string is malformed");
-		return null;
-	}
-	
 	/**
 	 * @see org.raxa.module.raxacore.DrugInfoService#updateDrugInfo
 	 */
 	@Override
 	public DrugInfo updateDrugInfo(DrugInfo drugInfo) {
+		DrugCatalogVersion.bumpAfterCommit();
 		return dao.updateDrugInfo(drugInfo);
 	}
 	
@@ -134,6 +112,7 @@ public class DrugInfoServiceImpl implements DrugInfoService {
 	 */
 	@Override
 	public void deleteDrugInfo(DrugInfo drugInfo) {
+		DrugCatalogVersion.bumpAfterCommit();
 		dao.deleteDrugInfo(drugInfo);
 	}
 	
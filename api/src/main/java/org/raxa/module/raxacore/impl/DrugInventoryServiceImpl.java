@@ -18,19 +18,31 @@ package org.raxa.module.raxacore.impl;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Encounter;
 import org.openmrs.EncounterType;
 import org.openmrs.Patient;
+import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.raxa.module.raxacore.DrugInventory;
+import org.raxa.module.raxacore.DrugInventoryMovement;
 import org.raxa.module.raxacore.DrugInventoryService;
+import org.raxa.module.raxacore.DrugStock;
 import org.raxa.module.raxacore.db.DrugInventoryDAO;
 import org.raxa.module.raxacore.db.DrugPurchaseOrderDAO;
+import org.raxa.module.raxacore.util.Paging;
 
 public class DrugInventoryServiceImpl implements DrugInventoryService {
 	
@@ -59,7 +71,9 @@ public class DrugInventoryServiceImpl implements DrugInventoryService {
 	public DrugInventory saveDrugInventory(DrugInventory drugInventory) {
 		if (drugInventory.getOriginalQuantity() == null)
 			drugInventory.setOriginalQuantity(drugInventory.getQuantity());
-		return dao.saveDrugInventory(drugInventory);
+		DrugInventory saved = dao.saveDrugInventory(drugInventory);
+		dao.refreshDrugStocks(getDrugIds(Collections.singletonList(saved)));
+		return saved;
 	}
 	
 	@Override
@@ -74,6 +88,16 @@ public class DrugInventoryServiceImpl implements DrugInventoryService {
 		return dao.getAllDrugInventories();
 	}
 	
+	@Override
+	public List<DrugInventory> getAllDrugInventories(Integer startIndex, Integer limit) {
+		return dao.getAllDrugInventories(Paging.getFirstResult(startIndex, limit), limit);
+	}
+	
+	@Override
+	public Integer getCountOfAllDrugInventories() {
+		return dao.getCountOfAllDrugInventories();
+	}
+	
 	@Override
 	public List<DrugInventory> getAllDrugInventoriesByStatus(String status) {
 		
@@ -83,13 +107,16 @@ public class DrugInventoryServiceImpl implements DrugInventoryService {
 	@Override
 	public DrugInventory updateDrugInventory(DrugInventory drugInventory) {
 		
-		return dao.updateDrugInventory(drugInventory);
+		DrugInventory updated = dao.updateDrugInventory(drugInventory);
+		dao.refreshDrugStocks(getDrugIds(Collections.singletonList(updated)));
+		return updated;
 	}
 	
 	@Override
 	public void deleteDrugInventory(DrugInventory drugInventory) {
 		
 		dao.deleteDrugInventory(drugInventory);
+		dao.refreshDrugStocks(getDrugIds(Collections.singletonList(drugInventory)));
 	}
 	
 	@Override
@@ -108,4 +135,194 @@ public class DrugInventoryServiceImpl implements DrugInventoryService {
 		return dao.getDrugInventoriesByDrugPurchaseOrder(drugPurchaseOrderId);
 	}
 	
+	@Override
+	public Map<String, DrugInventory> getDrugInventoriesByUuids(Collection<String> uuids) {
+		Map<String, DrugInventory> drugInventories = new HashMap<String, DrugInventory>();
+		if (uuids.isEmpty()) {
+			return drugInventories;
+		}
+		for (DrugInventory drugInventory : dao.getDrugInventoriesByUuids(uuids)) {
+			drugInventories.put(drugInventory.getUuid(), drugInventory);
+		}
+		return drugInventories;
+	}
+	
+	@Override
+	public List<DrugInventory> saveDrugInventoryMovements(List<DrugInventoryMovement> movements, boolean saveInventories)
+	        throws APIException {
+		//a negative quantity would pass the stock check and put stock back, so it is refused before any lock
+		for (DrugInventoryMovement movement : movements) {
+			if (movement.getBatchUuid() != null || movement.getAllocationLocationId() != null) {
+				Integer quantity = movement.getDrugInventory().getQuantity();
+				if (quantity == null || quantity < 1) {
+					throw new APIException("Requested quantity must be at least 1");
+				}
+			}
+		}
+		//total quantity taken out of each batch, line items naming their batch are counted first so
+		//allocated line items only take what is left
+		Map<String, Integer> batchQuantities = new LinkedHashMap<String, Integer>();
+		for (DrugInventoryMovement movement : movements) {
+			if (movement.getBatchUuid() != null) {
+				addBatchQuantity(batchQuantities, movement.getBatchUuid(), movement.getDrugInventory().getQuantity());
+			}
+		}
+		//lock every batch the movements can take from up front in id order, so concurrent movements lock
+		//them in the same order whether they name their batches or have them allocated
+		List<DrugInventory> allocated = new ArrayList<DrugInventory>();
+		Set<Integer> allocationLocationIds = new TreeSet<Integer>();
+		for (DrugInventoryMovement movement : movements) {
+			if (movement.getAllocationLocationId() != null) {
+				allocated.add(movement.getDrugInventory());
+				allocationLocationIds.add(movement.getAllocationLocationId());
+			}
+		}
+		dao.lockDrugInventories(batchQuantities.keySet(), getDrugIds(allocated), allocationLocationIds);
+		List<DrugInventoryMovement> allocatedMovements = new ArrayList<DrugInventoryMovement>();
+		for (DrugInventoryMovement movement : movements) {
+			if (movement.getAllocationLocationId() != null) {
+				allocatedMovements.addAll(allocate(movement.getDrugInventory(), movement.getAllocationLocationId(),
+				    batchQuantities));
+			} else {
+				allocatedMovements.add(movement);
+			}
+		}
+		List<DrugInventory> drugInventories = new ArrayList<DrugInventory>();
+		if (saveInventories) {
+			for (DrugInventoryMovement movement : allocatedMovements) {
+				DrugInventory drugInventory = movement.getDrugInventory();
+				if (drugInventory.getOriginalQuantity() == null)
+					drugInventory.setOriginalQuantity(drugInventory.getQuantity());
+				drugInventories.add(drugInventory);
+			}
+		}
+		Map<String, DrugInventory> batches = getDrugInventoriesByUuids(batchQuantities.keySet());
+		if (batches.size() < batchQuantities.size()) {
+			throw new APIException("Batch uuid not found");
+		}
+		//decrement in id order, the order the batches were locked in
+		List<DrugInventory> sortedBatches = new ArrayList<DrugInventory>(batches.values());
+		Collections.sort(sortedBatches, new Comparator<DrugInventory>() {
+			
+			@Override
+			public int compare(DrugInventory a, DrugInventory b) {
+				return a.getId().compareTo(b.getId());
+			}
+		});
+		for (DrugInventory batch : sortedBatches) {
+			//the check is part of the update, so two dispensing counters can't both take the last stock
+			if (!dao.decrementDrugInventoryQuantity(batch, batchQuantities.get(batch.getUuid()))) {
+				throw new APIException("Requested quantity cannot exceed batch quantity");
+			}
+		}
+		dao.saveDrugInventories(drugInventories);
+		Set<Integer> drugIds = getDrugIds(drugInventories);
+		drugIds.addAll(getDrugIds(sortedBatches));
+		dao.refreshDrugStocks(drugIds);
+		return drugInventories;
+	}
+	
+	@Override
+	public DrugStock getDrugStock(Integer drugId, Integer locationId) {
+		return dao.getDrugStock(drugId, locationId);
+	}
+	
+	@Override
+	public List<DrugStock> getDrugStocksByLocation(Integer locationId) {
+		return dao.getDrugStocksByLocation(locationId);
+	}
+	
+	@Override
+	public List<DrugInventoryMovement> allocateDrugInventoryMovements(DrugInventory drugInventory, Integer locationId)
+	        throws APIException {
+		return allocate(drugInventory, locationId, new HashMap<String, Integer>());
+	}
+	
+	@Override
+	public List<DrugInventory> getDrugInventoriesExpiringBefore(Integer locationId, Date expiryDate, Integer startIndex,
+	        Integer limit) {
+		return dao.getDrugInventoriesExpiringBefore(locationId, expiryDate, Paging.getFirstResult(startIndex, limit), limit);
+	}
+	
+	/**
+	 * Helper function to allocate a quantity first expiry first out. allocatedQuantities holds what
+	 * earlier line items of the same order took out of each batch, and is updated with this one.
+	 */
+	private List<DrugInventoryMovement> allocate(DrugInventory drugInventory, Integer locationId,
+	        Map<String, Integer> allocatedQuantities) throws APIException {
+		Integer drugId = drugInventory.getDrug() != null ? drugInventory.getDrug().getDrugId() : drugInventory
+		        .getDrugId();
+		if (drugId == null || drugInventory.getQuantity() == null) {
+			throw new APIException("Drug and quantity are required to allocate batches");
+		}
+		List<DrugInventoryMovement> movements = new ArrayList<DrugInventoryMovement>();
+		int remaining = drugInventory.getQuantity();
+		for (DrugInventory batch : dao.getDispensableDrugInventories(drugId, locationId)) {
+			if (remaining == 0) {
+				break;
+			}
+			Integer allocated = allocatedQuantities.get(batch.getUuid());
+			int available = batch.getQuantity() - (allocated == null ? 0 : allocated);
+			if (available <= 0) {
+				continue;
+			}
+			int taken = Math.min(available, remaining);
+			addBatchQuantity(allocatedQuantities, batch.getUuid(), taken);
+			movements.add(new DrugInventoryMovement(copyForBatch(drugInventory, batch, taken), batch.getUuid()));
+			remaining -= taken;
+		}
+		if (remaining > 0) {
+			throw new APIException("Requested quantity exceeds the stock of the drug in the location");
+		}
+		return movements;
+	}
+	
+	/**
+	 * Helper function to add to the quantity taken out of a batch
+	 */
+	private void addBatchQuantity(Map<String, Integer> batchQuantities, String batchUuid, Integer quantity) {
+		Integer total = batchQuantities.get(batchUuid);
+		batchQuantities.put(batchUuid, (total == null ? 0 : total) + quantity);
+	}
+	
+	/**
+	 * Helper function to copy a DrugInventory for the part of its quantity taken out of a batch
+	 */
+	private DrugInventory copyForBatch(DrugInventory drugInventory, DrugInventory batch, int quantity) {
+		DrugInventory copy = new DrugInventory();
+		copy.setName(drugInventory.getName());
+		copy.setDescription(drugInventory.getDescription());
+		copy.setDrug(drugInventory.getDrug());
+		copy.setDrugId(drugInventory.getDrugId());
+		copy.setQuantity(quantity);
+		copy.setOriginalQuantity(quantity);
+		copy.setExpiryDate(batch.getExpiryDate());
+		copy.setBatch(batch.getBatch());
+		copy.setSupplier(drugInventory.getSupplier() != null ? drugInventory.getSupplier() : batch.getSupplier());
+		copy.setRoomLocation(drugInventory.getRoomLocation());
+		copy.setValue(drugInventory.getValue());
+		copy.setStatus(drugInventory.getStatus());
+		copy.setProvider(drugInventory.getProvider());
+		copy.setProviderId(drugInventory.getProviderId());
+		copy.setLocation(drugInventory.getLocation());
+		copy.setLocationId(drugInventory.getLocationId());
+		copy.setDrugPurchaseOrder(drugInventory.getDrugPurchaseOrder());
+		copy.setDrugPurchaseOrderId(drugInventory.getDrugPurchaseOrderId());
+		return copy;
+	}
+	
+	/**
+	 * Helper function to get the drugs whose DrugStocks change with the inventories
+	 */
+	private Set<Integer> getDrugIds(List<DrugInventory> drugInventories) {
+		Set<Integer> drugIds = new TreeSet<Integer>();
+		for (DrugInventory drugInventory : drugInventories) {
+			if (drugInventory.getDrug() != null) {
+				drugIds.add(drugInventory.getDrug().getDrugId());
+			} else if (drugInventory.getDrugId() != null) {
+				drugIds.add(drugInventory.getDrugId());
+			}
+		}
+		return drugIds;
+	}
 }
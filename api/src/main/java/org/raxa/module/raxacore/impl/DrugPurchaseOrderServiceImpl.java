@@ -31,6 +31,7 @@ import org.raxa.module.raxacore.DrugPurchaseOrder;
 import org.raxa.module.raxacore.DrugPurchaseOrderService;
 import org.raxa.module.raxacore.db.DrugPurchaseOrderDAO;
 import org.raxa.module.raxacore.db.PatientListDAO;
+import org.raxa.module.raxacore.util.Paging;
 
 public class DrugPurchaseOrderServiceImpl implements DrugPurchaseOrderService {
 	
@@ -68,6 +69,16 @@ public class DrugPurchaseOrderServiceImpl implements DrugPurchaseOrderService {
 		return dao.getAllDrugPurchaseOrders();
 	}
 	
+	public List<DrugPurchaseOrder> getAllDrugPurchaseOrders(Integer startIndex, Integer limit) {
+		
+		return dao.getAllDrugPurchaseOrders(Paging.getFirstResult(startIndex, limit), limit);
+	}
+	
+	public Integer getCountOfAllDrugPurchaseOrders() {
+		
+		return dao.getCountOfAllDrugPurchaseOrders();
+	}
+	
 	public List<DrugPurchaseOrder> getAllDrugPurchaseOrdersNotReceived() {
 		
 		return dao.getAllDrugPurchaseOrdersNotReceived();
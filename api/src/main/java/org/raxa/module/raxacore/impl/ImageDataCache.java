@@ -0,0 +1,186 @@
+package org.raxa.module.raxacore.impl;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.raxa.module.raxacore.Image;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * Least recently used cache of image bytes and the image metadata they are served with, bounded by the number of
+ * bytes it holds rather than the number of images. The bytes can be kept off the heap in direct buffers, so a large
+ * cache does not lengthen garbage collections; direct buffers are only released once they are garbage collected
+ * themselves.
+ */
+public class ImageDataCache {
+	
+	/**
+	 * Largest share of the cache a single image may take, so one scan cannot flush every profile photo
+	 */
+	private static final int MAX_ENTRY_FRACTION = 4;
+	
+	/**
+	 * patientUuid of entries looked up across all patients, which any changed image may affect
+	 */
+	public static final String ALL_PATIENTS = "*";
+	
+	private final long maxBytes;
+	
+	private final boolean offHeap;
+	
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	
+	private long bytes = 0;
+	
+	private long hits = 0;
+	
+	private long misses = 0;
+	
+	private long evictions = 0;
+	
+	/**
+	 * @param maxBytes maximum number of image bytes held
+	 * @param offHeap true to hold the bytes in direct buffers
+	 */
+	public ImageDataCache(long maxBytes, boolean offHeap) {
+		this.maxBytes = maxBytes;
+		this.offHeap = offHeap;
+	}
+	
+	/**
+	 * @return the cached entry, or null
+	 */
+	public synchronized Entry get(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return entry;
+	}
+	
+	/**
+	 * Caches the bytes of an image, evicting the least recently used entries to stay within maxBytes. Images larger
+	 * than a quarter of the cache are not cached.
+	 *
+	 * @param image detached copy of the image the bytes belong to, holding no Hibernate state
+	 * @param patientUuid uuid of the patient the key was looked up for, ALL_PATIENTS, or null
+	 */
+	public void put(String key, Image image, String patientUuid, byte[] data) {
+		if (data.length > maxBytes / MAX_ENTRY_FRACTION) {
+			return;
+		}
+		ByteBuffer buffer = offHeap ? ByteBuffer.allocateDirect(data.length) : ByteBuffer.allocate(data.length);
+		buffer.put(data);
+		Entry entry = new Entry(image, patientUuid, buffer);
+		synchronized (this) {
+			Entry replaced = entries.put(key, entry);
+			if (replaced != null) {
+				bytes -= replaced.getSize();
+			}
+			bytes += entry.getSize();
+			for (Iterator<Entry> it = entries.values().iterator(); bytes > maxBytes && it.hasNext();) {
+				bytes -= it.next().getSize();
+				it.remove();
+				evictions++;
+			}
+		}
+	}
+	
+	/**
+	 * Removes the entries of an image, and the entries looked up for its patient or for all patients that it may now
+	 * belong to
+	 *
+	 * @param imageId id of the changed image
+	 * @param patientUuid uuid of the patient of the changed image, or null
+	 */
+	public synchronized void invalidate(Integer imageId, String patientUuid) {
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+			Entry entry = it.next();
+			if ((imageId != null && imageId.equals(entry.getImageId()))
+			        || (patientUuid != null && patientUuid.equals(entry.getPatientUuid()))
+			        || ALL_PATIENTS.equals(entry.getPatientUuid())) {
+				bytes -= entry.getSize();
+				it.remove();
+			}
+		}
+	}
+	
+	/**
+	 * @return hits, misses, hitRate, evictions, entries, bytes, maxBytes and offHeap
+	 */
+	public synchronized Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+		statistics.put("hits", hits);
+		statistics.put("misses", misses);
+		statistics.put("hitRate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+		statistics.put("evictions", evictions);
+		statistics.put("entries", entries.size());
+		statistics.put("bytes", bytes);
+		statistics.put("maxBytes", maxBytes);
+		statistics.put("offHeap", offHeap);
+		return statistics;
+	}
+	
+	/**
+	 * Cached bytes of an image, with the image they are served with
+	 */
+	public static final class Entry {
+		
+		private final Image image;
+		
+		private final String patientUuid;
+		
+		private final ByteBuffer data;
+		
+		private Entry(Image image, String patientUuid, ByteBuffer data) {
+			this.image = image;
+			this.patientUuid = patientUuid;
+			this.data = data;
+		}
+		
+		public Integer getImageId() {
+			return image.getId();
+		}
+		
+		/**
+		 * @return the cached copy of the image, without its bytes; callers copy it before handing it out
+		 */
+		public Image getImage() {
+			return image;
+		}
+		
+		public String getPatientUuid() {
+			return patientUuid;
+		}
+		
+		/**
+		 * @return a copy of the bytes, so callers cannot change the cached image
+		 */
+		public byte[] getData() {
+			ByteBuffer view = data.duplicate();
+			view.clear();
+			byte[] copy = new byte[view.remaining()];
+			view.get(copy);
+			return copy;
+		}
+		
+		private int getSize() {
+			return data.capacity();
+		}
+	}
+}
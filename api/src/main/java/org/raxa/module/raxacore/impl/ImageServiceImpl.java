@@ -1,20 +1,36 @@
 package org.raxa.module.raxacore.impl;
 
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import javax.imageio.ImageIO;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.Location;
+import org.openmrs.Patient;
+import org.openmrs.PersonName;
+import org.openmrs.Provider;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.util.OpenmrsUtil;
 import org.raxa.module.raxacore.Image;
 import org.raxa.module.raxacore.ImageService;
+import org.raxa.module.raxacore.ImageStore;
 import org.raxa.module.raxacore.db.ImageDAO;
+import org.raxa.module.raxacore.util.Paging;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * Copyright 2012, Raxa
@@ -39,6 +55,22 @@ public class ImageServiceImpl implements ImageService {
 	
 	private static final String DEFAULT_FILE_TYPE = "png";
 	
+	private static final String ORIGINAL_SIZE = "original";
+	
+	private static final String RENDITIONS_PROPERTY = "raxacore.imageRenditions";
+	
+	private static final String DEFAULT_RENDITIONS = "thumbnail:64,medium:320";
+	
+	private static final String CACHE_MAX_BYTES_PROPERTY = "raxacore.imageCacheMaxBytes";
+	
+	private static final long DEFAULT_CACHE_MAX_BYTES = 32 * 1024 * 1024;
+	
+	private static final String CACHE_OFF_HEAP_PROPERTY = "raxacore.imageCacheOffHeap";
+	
+	private ImageStore store;
+	
+	private ImageDataCache cache;
+	
 	/**
 	 * @see org.raxa.module.raxacore.RaxaAlertService#setRaxaAlertDAO
 	 */
@@ -51,77 +83,331 @@ public class ImageServiceImpl implements ImageService {
 	public Image saveImage(Image image) {
 		Image i = dao.saveImage(image);
 		saveImageOnFileSystem(image);
+		invalidateCache(i);
 		return i;
 	}
 	
 	private void saveImageOnFileSystem(Image image) {
-		File imgDir = new File(OpenmrsUtil.getApplicationDataDirectory() + IMGDIR);
-		File img = new File(getPath(image));
+		String fileType = getFileType(image);
+		if (image.getImageData() == null) {
+			image.setFileName(image.getUuid() + "." + fileType);
+			return;
+		}
 		try {
-			if (!imgDir.exists()) {
-				FileUtils.forceMkdir(imgDir);
-			}
+			image.setFileName(getImageStore().put(new ByteArrayInputStream(image.getImageData()), fileType));
+			createRenditions(image);
 		}
 		catch (IOException e) {
-			System.out.println(e);
 			log.error(e);
 		}
-		FileOutputStream fos = null;
+	}
+	
+	@Override
+	public Image saveImage(Image image, InputStream imageData) throws APIException {
 		try {
-			if (image.getFileName() == null || image.getFileName().equals("")) {
-				image.setFileName(DEFAULT_FILE_TYPE);
+			image.setFileName(getImageStore().put(imageData, getFileType(image)));
+		}
+		catch (IOException e) {
+			throw new APIException("Writing image failed with: " + e.getMessage(), e);
+		}
+		createRenditions(image);
+		Image i = dao.saveImage(image);
+		invalidateCache(i);
+		return i;
+	}
+	
+	/**
+	 * Returns the extension of the image file name, png by default
+	 */
+	private String getFileType(Image image) {
+		if (image.getFileName() == null || image.getFileName().equals("")) {
+			return DEFAULT_FILE_TYPE;
+		}
+		String[] fileNameSplitter = image.getFileName().split("\\.");
+		return fileNameSplitter[fileNameSplitter.length - 1];
+	}
+	
+	/**
+	 * The cache is sized by the raxacore.imageCacheMaxBytes and raxacore.imageCacheOffHeap global properties when it
+	 * is first used
+	 */
+	private synchronized ImageDataCache getImageCache() {
+		if (cache == null) {
+			long maxBytes = DEFAULT_CACHE_MAX_BYTES;
+			String maxBytesProperty = Context.getAdministrationService().getGlobalProperty(CACHE_MAX_BYTES_PROPERTY);
+			if (maxBytesProperty != null) {
+				try {
+					maxBytes = Long.parseLong(maxBytesProperty.trim());
+				}
+				catch (NumberFormatException e) {
+					log.warn("Ignoring malformed " + CACHE_MAX_BYTES_PROPERTY + " '" + maxBytesProperty + "'");
+				}
 			}
-			String[] fileNameSplitter = image.getFileName().split("\\.");
-			image.setFileName(image.getUuid() + "." + fileNameSplitter[fileNameSplitter.length - 1]);
-			fos = new FileOutputStream(imgDir + System.getProperty("file.separator") + image.getFileName());
-			fos.write(image.getImageData());
-			fos.close();
-		}
-		catch (Exception e) {
-			System.out.println(e);
-			log.error(e);
+			boolean offHeap = Boolean.parseBoolean(Context.getAdministrationService().getGlobalProperty(
+			    CACHE_OFF_HEAP_PROPERTY, "false"));
+			cache = new ImageDataCache(maxBytes, offHeap);
+		}
+		return cache;
+	}
+	
+	/**
+	 * Drops the cached bytes of the image and of its patient's lookups, and again once the transaction commits, so a
+	 * read racing the commit cannot leave the old bytes cached
+	 */
+	private void invalidateCache(Image image) {
+		final Integer imageId = image.getId();
+		final String patientUuid = image.getPatient() != null ? image.getPatient().getUuid() : null;
+		getImageCache().invalidate(imageId, patientUuid);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCommit() {
+					getImageCache().invalidate(imageId, patientUuid);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * The store lives in the image directory, which is only known once OpenMRS has started
+	 */
+	private synchronized ImageStore getImageStore() {
+		if (store == null) {
+			store = new ShardedImageStore(new File(getImageDirectory()));
+		}
+		return store;
+	}
+	
+	/**
+	 * Creates the configured renditions that are not stored yet; identical images share their renditions
+	 */
+	private void createRenditions(Image image) {
+		File original = new File(getPath(image));
+		for (Map.Entry<String, Integer> rendition : getRenditions().entrySet()) {
+			File file = new File(getRenditionPath(image, rendition.getKey()));
+			if (!file.isFile()) {
+				createRendition(original, file, getFileType(image), rendition.getValue());
+			}
+		}
+	}
+	
+	/**
+	 * Scales the original down to fit in maxSize by maxSize pixels, keeping its aspect ratio. Images that are already
+	 * small enough are copied as they are, so they are only decoded once. Nothing is written for images that ImageIO
+	 * cannot read or write; the original is served instead. Renditions are also created on GET, so each writer
+	 * gets its own temp file next to the rendition and the complete file is renamed into place.
+	 *
+	 * @return true if the rendition was written
+	 */
+	private boolean createRendition(File original, File rendition, String fileType, int maxSize) {
+		try {
+			BufferedImage source = ImageIO.read(original);
+			if (source == null) {
+				return false;
+			}
+			FileUtils.forceMkdir(rendition.getParentFile());
+			File tmp = File.createTempFile("rendition", ".part", rendition.getParentFile());
+			try {
+				if (source.getWidth() <= maxSize && source.getHeight() <= maxSize) {
+					FileUtils.copyFile(original, tmp);
+				} else if (!ImageIO.write(scale(source, maxSize, fileType), fileType, tmp)) {
+					return false;
+				}
+				return tmp.renameTo(rendition) || rendition.isFile();
+			}
+			finally {
+				FileUtils.deleteQuietly(tmp);
+			}
+		}
+		catch (IOException e) {
+			log.error("Creating image rendition " + rendition + " failed with: " + e.getMessage());
+			return false;
+		}
+	}
+	
+	/**
+	 * Scales the source down to fit in maxSize by maxSize pixels, keeping its aspect ratio
+	 */
+	private static BufferedImage scale(BufferedImage source, int maxSize, String fileType) {
+		double scale = Math.min((double) maxSize / source.getWidth(), (double) maxSize / source.getHeight());
+		int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+		int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+		boolean alpha = source.getColorModel().hasAlpha() && !fileType.startsWith("jp");
+		BufferedImage scaled = source;
+		int scaledWidth = source.getWidth();
+		int scaledHeight = source.getHeight();
+		//halving in steps keeps bilinear scaling from skipping pixels on large images
+		do {
+			scaledWidth = Math.max(scaledWidth / 2, width);
+			scaledHeight = Math.max(scaledHeight / 2, height);
+			scaled = scale(scaled, scaledWidth, scaledHeight, alpha);
+		} while (scaledWidth != width || scaledHeight != height);
+		return scaled;
+	}
+	
+	private static BufferedImage scale(BufferedImage source, int width, int height, boolean alpha) {
+		BufferedImage scaled = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB
+		        : BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = scaled.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(source, 0, 0, width, height, null);
 		}
 		finally {
-			IOUtils.closeQuietly(fos);
+			g.dispose();
 		}
+		return scaled;
+	}
+	
+	/**
+	 * Returns the renditions in the raxacore.imageRenditions global property, by name, with their maximum width and
+	 * height in pixels
+	 */
+	private Map<String, Integer> getRenditions() {
+		String property = Context.getAdministrationService().getGlobalProperty(RENDITIONS_PROPERTY, DEFAULT_RENDITIONS);
+		Map<String, Integer> renditions = new LinkedHashMap<String, Integer>();
+		for (String rendition : property.split(",")) {
+			String[] nameAndSize = rendition.split(":");
+			try {
+				if (nameAndSize.length != 2) {
+					throw new NumberFormatException();
+				}
+				renditions.put(nameAndSize[0].trim(), Integer.valueOf(nameAndSize[1].trim()));
+			}
+			catch (NumberFormatException e) {
+				log.warn("Ignoring malformed image rendition '" + rendition + "' in " + RENDITIONS_PROPERTY);
+			}
+		}
+		return renditions;
+	}
+	
+	/**
+	 * Renditions are stored next to the original, with the rendition name before the extension
+	 */
+	private String getRenditionPath(Image image, String size) {
+		String path = getPath(image);
+		int extension = path.lastIndexOf('.');
+		if (extension < 0) {
+			return path + "." + size;
+		}
+		return path.substring(0, extension) + "." + size + path.substring(extension);
 	}
 	
 	@Override
 	public Image getImageByUuid(String uuid) {
-		Image image = dao.getImageByUuid(uuid);
-		File f = new File(getPath(image));
-		FileInputStream fis = null;
-		try {
-			fis = new FileInputStream(f);
-			byte[] imageData = IOUtils.toByteArray(fis);
-			fis.read(imageData);
-			image.setImageData(imageData);
-			fis.close();
+		return getImageByUuid(uuid, null);
+	}
+	
+	@Override
+	public Image getImageByUuid(String uuid, String size) {
+		String key = "uuid:" + uuid + ":" + size;
+		Image image = getCachedImage(key);
+		if (image != null) {
 			return image;
 		}
-		catch (IOException ex) {
-			log.error("Reading image directory failed with: " + ex.getMessage());
-		}
-		finally {
-			IOUtils.closeQuietly(fis);
+		image = dao.getImageByUuid(uuid);
+		if (readImageData(image, size, key, null)) {
+			return image;
 		}
 		return new Image();
 	}
 	
+	/**
+	 * Loads the image without reading its file, so callers can stream the file from getPath instead of holding it in
+	 * memory
+	 */
+	@Override
+	public Image getImageMetadataByUuid(String uuid) {
+		return dao.getImageByUuid(uuid);
+	}
+	
 	@Override
 	public List<Image> getAllImages() {
 		return dao.getAllImages();
 	}
 	
+	@Override
+	public List<Image> getAllImages(Integer startIndex, Integer limit) {
+		return dao.getAllImages(Paging.getFirstResult(startIndex, limit), limit);
+	}
+	
+	@Override
+	public Integer getCountOfAllImages() {
+		return dao.getCountOfAllImages();
+	}
+	
+	/**
+	 * Copies the files of a batch of images saved flat in the image directory into the ImageStore. The flat files are
+	 * deleted once the new file names are committed; images whose files are missing are left as they are.
+	 */
+	@Override
+	public Integer migrateImagesToStore(Integer afterId, Integer limit) {
+		Paging.checkLimit(limit);
+		List<Image> images = dao.getImagesNotInStore(afterId, limit);
+		List<File> migrated = new ArrayList<File>();
+		for (Image image : images) {
+			File file = new File(getPath(image));
+			if (!file.isFile()) {
+				log.warn("Not migrating image " + image.getUuid() + ", " + file + " does not exist");
+				continue;
+			}
+			FileInputStream fis = null;
+			try {
+				fis = new FileInputStream(file);
+				image.setFileName(getImageStore().put(fis, getFileType(image)));
+				dao.updateImage(image);
+				migrated.add(file);
+			}
+			catch (IOException e) {
+				log.error("Migrating image " + image.getUuid() + " failed with: " + e.getMessage());
+			}
+			finally {
+				IOUtils.closeQuietly(fis);
+			}
+		}
+		deleteAfterCommit(migrated);
+		return images.isEmpty() ? null : images.get(images.size() - 1).getId();
+	}
+	
+	/**
+	 * Deletes the files once the transaction commits, so a rollback still finds them
+	 */
+	private void deleteAfterCommit(final List<File> files) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			for (File file : files) {
+				FileUtils.deleteQuietly(file);
+			}
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			
+			@Override
+			public void afterCommit() {
+				for (File file : files) {
+					FileUtils.deleteQuietly(file);
+				}
+			}
+		});
+	}
+	
+	@Override
+	public Integer getCountOfImagesNotInStore() {
+		return dao.getCountOfImagesNotInStore();
+	}
+	
 	@Override
 	public Image updateImage(Image image) {
 		saveImageOnFileSystem(image);
-		return dao.updateImage(image);
+		Image i = dao.updateImage(image);
+		invalidateCache(i);
+		return i;
 	}
 	
 	@Override
 	public void deleteImage(Image image) {
 		dao.deleteImage(image);
+		invalidateCache(image);
 	}
 	
 	@Override
@@ -155,31 +441,31 @@ public class ImageServiceImpl implements ImageService {
 	
 	@Override
 	public Image getLatestImageByTag(String tag) throws APIException {
+		String key = "latest:" + ImageDataCache.ALL_PATIENTS + ":" + tag;
+		Image cached = getCachedImage(key);
+		if (cached != null) {
+			return cached;
+		}
 		Image image = dao.getLatestImageByTag(tag);
 		if (image == null) {
 			throw new IllegalArgumentException("No images found with given tag");
 		}
-		File f = new File(getPath(image));
-		FileInputStream fis = null;
-		try {
-			fis = new FileInputStream(f);
-			byte[] imageData = IOUtils.toByteArray(fis);
-			fis.read(imageData);
-			image.setImageData(imageData);
-			fis.close();
-			return image;
-		}
-		catch (IOException ex) {
-			log.error("Reading image directory failed with: " + ex.getMessage());
-		}
-		finally {
-			IOUtils.closeQuietly(fis);
-		}
+		readImageData(image, null, key, ImageDataCache.ALL_PATIENTS);
 		return image;
 	}
 	
 	@Override
 	public Image getLatestImageByTagForPatient(String tag, String patientUuid) {
+		return getLatestImageByTagForPatient(tag, patientUuid, null);
+	}
+	
+	@Override
+	public Image getLatestImageByTagForPatient(String tag, String patientUuid, String size) {
+		String key = "latest:" + patientUuid + ":" + size + ":" + tag;
+		Image cached = getCachedImage(key);
+		if (cached != null) {
+			return cached;
+		}
 		if (Context.getPatientService().getPatientByUuid(patientUuid) == null) {
 			throw new IllegalArgumentException("Patient uuid is invalid");
 		}
@@ -188,24 +474,101 @@ public class ImageServiceImpl implements ImageService {
 		if (image == null) {
 			throw new IllegalArgumentException("No images found with given tag");
 		}
-		File f = new File(getPath(image));
+		readImageData(image, size, key, patientUuid);
+		return image;
+	}
+	
+	/**
+	 * Reads the file of the image, or of the given rendition, into the image and caches the bytes with a copy of the
+	 * image under key
+	 *
+	 * @return true if the file was read
+	 */
+	private boolean readImageData(Image image, String size, String key, String patientUuid) {
 		FileInputStream fis = null;
 		try {
-			fis = new FileInputStream(f);
+			fis = new FileInputStream(new File(getPath(image, size)));
 			byte[] imageData = IOUtils.toByteArray(fis);
-			fis.read(imageData);
 			image.setImageData(imageData);
-			return image;
+			getImageCache().put(key, copyImage(image), patientUuid, imageData);
+			return true;
 		}
 		catch (IOException ex) {
 			log.error("Reading image directory failed with: " + ex.getMessage());
+			return false;
 		}
 		finally {
 			IOUtils.closeQuietly(fis);
 		}
+	}
+	
+	/**
+	 * Serves a cached read without the database: the image is a copy of the one cached with its bytes
+	 *
+	 * @return the image with its cached bytes, or null on a miss
+	 */
+	private Image getCachedImage(String key) {
+		ImageDataCache.Entry entry = getImageCache().get(key);
+		if (entry == null) {
+			return null;
+		}
+		Image image = copyImage(entry.getImage());
+		image.setImageData(entry.getData());
 		return image;
 	}
 	
+	/**
+	 * Copies an image without its bytes or any Hibernate state, so it can be cached and handed out from any session.
+	 * The patient, provider and location only keep their ids, uuids and names, which is what image responses show.
+	 */
+	private static Image copyImage(Image image) {
+		Image copy = new Image();
+		copy.setId(image.getId());
+		copy.setUuid(image.getUuid());
+		copy.setTags(image.getTags());
+		copy.setFileName(image.getFileName());
+		copy.setCreator(image.getCreator());
+		copy.setDateCreated(image.getDateCreated());
+		copy.setChangedBy(image.getChangedBy());
+		copy.setDateChanged(image.getDateChanged());
+		copy.setVoided(image.getVoided());
+		copy.setVoidedBy(image.getVoidedBy());
+		copy.setDateVoided(image.getDateVoided());
+		copy.setVoidReason(image.getVoidReason());
+		copy.setPatientId(image.getPatientId());
+		copy.setProviderId(image.getProviderId());
+		copy.setLocationId(image.getLocationId());
+		if (image.getPatient() != null) {
+			Patient patient = new Patient();
+			patient.setPatientId(image.getPatient().getPatientId());
+			patient.setUuid(image.getPatient().getUuid());
+			if (image.getPatient().getPersonName() != null) {
+				patient.addName(PersonName.newInstance(image.getPatient().getPersonName()));
+			}
+			copy.setPatient(patient);
+		}
+		if (image.getProvider() != null) {
+			Provider provider = new Provider();
+			provider.setProviderId(image.getProvider().getProviderId());
+			provider.setUuid(image.getProvider().getUuid());
+			provider.setName(image.getProvider().getName());
+			copy.setProvider(provider);
+		}
+		if (image.getLocation() != null) {
+			Location location = new Location();
+			location.setLocationId(image.getLocation().getLocationId());
+			location.setUuid(image.getLocation().getUuid());
+			location.setName(image.getLocation().getName());
+			copy.setLocation(location);
+		}
+		return copy;
+	}
+	
+	@Override
+	public Map<String, Object> getImageCacheStatistics() {
+		return getImageCache().getStatistics();
+	}
+	
 	@Override
 	public void onStartup() {
 	}
@@ -219,6 +582,26 @@ public class ImageServiceImpl implements ImageService {
 		return OpenmrsUtil.getApplicationDataDirectory() + IMGDIR + System.getProperty("file.separator") + p.getFileName();
 	}
 	
+	/**
+	 * Returns the path of a rendition, creating it if it is missing, e.g. for images saved before the rendition was
+	 * configured. Falls back to the original when there is no rendition for the image.
+	 */
+	@Override
+	public String getPath(Image image, String size) {
+		if (size == null || size.equals(ORIGINAL_SIZE)) {
+			return getPath(image);
+		}
+		Integer maxSize = getRenditions().get(size);
+		if (maxSize == null) {
+			throw new IllegalArgumentException("size must be " + ORIGINAL_SIZE + " or one of " + getRenditions().keySet());
+		}
+		File rendition = new File(getRenditionPath(image, size));
+		if (rendition.isFile() || createRendition(new File(getPath(image)), rendition, getFileType(image), maxSize)) {
+			return rendition.getPath();
+		}
+		return getPath(image);
+	}
+	
 	@Override
 	public String getImageDirectory() {
 		return OpenmrsUtil.getApplicationDataDirectory() + IMGDIR;
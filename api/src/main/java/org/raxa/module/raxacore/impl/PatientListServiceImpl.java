@@ -15,24 +15,24 @@ package org.raxa.module.raxacore.impl;
  * License for the specific language governing permissions and limitations under
  * the License.
  */
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Encounter;
 import org.openmrs.EncounterType;
-import org.openmrs.Location;
-import org.openmrs.Order;
 import org.openmrs.User;
-import org.openmrs.Provider;
 import org.openmrs.Person;
 import org.openmrs.Patient;
 import org.openmrs.api.context.Context;
 import org.raxa.module.raxacore.PatientList;
+import org.raxa.module.raxacore.PatientListCursor;
+import org.raxa.module.raxacore.PatientListEncounterRow;
+import org.raxa.module.raxacore.PatientListQueryPlan;
 import org.raxa.module.raxacore.PatientListService;
 import org.raxa.module.raxacore.db.PatientListDAO;
 
@@ -47,6 +47,22 @@ public class PatientListServiceImpl implements PatientListService {
 	
 	private Log log = LogFactory.getLog(this.getClass());
 	
+	private static final int MAX_CACHED_QUERY_PLANS = 256;
+	
+	/**
+	 * Bound query plans keyed by searchQuery text, least recently used evicted first. The plans hold
+	 * the ids of the entities they name, so a cached plan is evaluated without looking anything up.
+	 * Plans naming a uuid that matched nothing are not cached, as the entity may be created later.
+	 */
+	private final Map<String, PatientListQueryPlan> queryPlans = new LinkedHashMap<String, PatientListQueryPlan>(16,
+	        0.75f, true) {
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, PatientListQueryPlan> eldest) {
+			return size() > MAX_CACHED_QUERY_PLANS;
+		}
+	};
+	
 	/**
 	 * @see org.raxa.module.raxacore.PatientListService#setPatientListDAO
 	 */
@@ -60,7 +76,11 @@ public class PatientListServiceImpl implements PatientListService {
 	 */
 	@Override
 	public PatientList savePatientList(PatientList patientList) {
-		return dao.savePatientList(patientList);
+		PatientList saved = dao.savePatientList(patientList);
+		if (isMaterialized(saved)) {
+			rebuildMaterializedPatientList(saved);
+		}
+		return saved;
 	}
 	
 	/**
@@ -107,26 +127,66 @@ public class PatientListServiceImpl implements PatientListService {
 	}
 	
 	/**
-	 * Parses a string into a date
+	 * Gets the plan for a searchQuery, parsing and binding it to the ids of the encounter type,
+	 * location, provider and patient it names on first use
 	 *
-	 * @param str String to be parsed (must be iso format)
-	 * @return Date
+	 * @param searchQuery
+	 * @return PatientListQueryPlan
 	 */
-	private Date getDateFromString(String str) {
-		
-		String[] supportedFormats = { "yyyy-MM-dd'T'HH:mm:ss.SSSZ", "yyyy-MM-dd'T'HH:mm:ss.SSS", "yyyy-MM-dd'T'HH:mm:ssZ",
-		        "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd" };
-		for (int i = 0; i < supportedFormats.length; i++) {
-			try {
-				Date date = new SimpleDateFormat(supportedFormats[i]).parse(str);
-				return date;
+	private PatientListQueryPlan getQueryPlan(String searchQuery) {
+		PatientListQueryPlan plan;
+		synchronized (queryPlans) {
+			plan = queryPlans.get(searchQuery);
+		}
+		if (plan == null) {
+			plan = PatientListQueryPlan.compile(searchQuery);
+			if (!plan.hasUnmatchedUuids()) {
+				synchronized (queryPlans) {
+					queryPlans.put(searchQuery, plan);
+				}
 			}
-			catch (Exception ex) {
-				//log.error(ex.getMessage() + " Error parsing string " + str + " into Date");
+		}
+		return plan;
+	}
+	
+	/**
+	 * Attaches the plans of all inList and notInList sub-lists that are not already attached.
+	 * Sub-lists that do not exist or have no searchQuery contain no encounters.
+	 *
+	 * @param plan
+	 * @return resolved PatientListQueryPlan
+	 */
+	private PatientListQueryPlan resolveQueryPlan(PatientListQueryPlan plan) {
+		List<PatientListQueryPlan> inListPlans = null;
+		if (plan.getInListPlans() != null) {
+			inListPlans = new ArrayList<PatientListQueryPlan>();
+			for (PatientListQueryPlan inListPlan : plan.getInListPlans()) {
+				inListPlans.add(resolveQueryPlan(inListPlan));
+			}
+		} else if (plan.getInListUuids() != null) {
+			inListPlans = getSubListPlans(plan.getInListUuids());
+		}
+		List<PatientListQueryPlan> notInListPlans;
+		if (plan.getNotInListPlans() != null) {
+			notInListPlans = new ArrayList<PatientListQueryPlan>();
+			for (PatientListQueryPlan notInListPlan : plan.getNotInListPlans()) {
+				notInListPlans.add(resolveQueryPlan(notInListPlan));
 			}
+		} else {
+			notInListPlans = getSubListPlans(plan.getNotInListUuids());
 		}
-		log.error("Date string is malformed");
-		return null;
+		return plan.resolve(inListPlans, notInListPlans);
+	}
+	
+	private List<PatientListQueryPlan> getSubListPlans(List<String> uuids) {
+		List<PatientListQueryPlan> plans = new ArrayList<PatientListQueryPlan>();
+		for (String uuid : uuids) {
+			PatientList subList = getPatientListByUuid(uuid);
+			if (subList != null && subList.getSearchQuery() != null) {
+				plans.add(resolveQueryPlan(getQueryPlan(subList.getSearchQuery())));
+			}
+		}
+		return plans;
 	}
 	
 	/**
@@ -135,144 +195,66 @@ public class PatientListServiceImpl implements PatientListService {
 	 */
 	@Override
 	public List<Encounter> getEncountersInPatientList(PatientList patientList) {
+		return getEncountersInPatientList(patientList, null, null);
+	}
+	
+	/**
+	 * @see
+	 * org.raxa.module.raxacore.PatientListService#getEncountersInPatientList(PatientListQueryPlan)
+	 */
+	@Override
+	public List<Encounter> getEncountersInPatientList(PatientListQueryPlan plan) {
+		return getEncountersInPatientList(plan, null, null);
+	}
+	
+	/**
+	 * @see
+	 * org.raxa.module.raxacore.PatientListService#getEncountersInPatientList(PatientList, PatientListCursor, Integer)
+	 */
+	@Override
+	public List<Encounter> getEncountersInPatientList(PatientList patientList, PatientListCursor cursor, Integer limit) {
 		if (patientList.getSearchQuery() == null) {
 			return new ArrayList<Encounter>();
 		}
-		String query = patientList.getSearchQuery();
-		if (query.indexOf("?") == 0) {
-			query = query.substring(1);
-		}
-		//"?encounterType=<uuid>&startDate=2012-05-07&endDate=2012-05-08&inlist=<uuidForList>&notinlist=<uuidForList>"
-		EncounterType encType = null;
-		Date startDate = null;
-		Date endDate = null;
-		Provider provid = null;
-		Patient patient = null;
-		String uuid = null;
-		//the return value can only choose encounters from this list (if not null)
-		List<Encounter> inListEncounters = null;
-		//the return value can not contain any patients from this list
-		List<Patient> notInListPatients = new ArrayList<Patient>();
-		List<Encounter> notInListEncounters = new ArrayList<Encounter>();
-		Location location = null;
-		String containsOrderType = "";
-		String[] queryFields = query.split("&");
-		//if we have an encountertype in our search query, set it
-		for (int i = 0; i < queryFields.length; i++) {
-			if (queryFields[i].indexOf("encounterType=") != -1) {
-				encType = Context.getEncounterService().getEncounterTypeByUuid(queryFields[i].substring(14));
-			} else if (queryFields[i].indexOf("location=") != -1) {
-				location = Context.getLocationService().getLocationByUuid(queryFields[i].substring(9));
-			} else if (queryFields[i].indexOf("startDate=") != -1) {
-				startDate = getDateFromString(queryFields[i].substring(10));
-			} else if (queryFields[i].indexOf("endDate=") != -1) {
-				endDate = getDateFromString(queryFields[i].substring(8));
-			} else if (queryFields[i].indexOf("inList=") != -1) {
-				inListEncounters = new ArrayList<Encounter>();
-				//could be multiple lists here, add all that are in
-				String[] inListUuids = queryFields[i].substring(7).split(",");
-				for (int j = 0; j < inListUuids.length; j++) {
-					inListEncounters.addAll(getEncountersInPatientList(getPatientListByUuid(inListUuids[j])));
-				}
-			} else if (queryFields[i].indexOf("notInList=") != -1) {
-				String[] notInListUuids = queryFields[i].substring(10).split(",");
-				for (int k = 0; k < notInListUuids.length; k++) {
-					notInListPatients.addAll(getPatientsInPatientList(getPatientListByUuid(notInListUuids[k])));
-					notInListEncounters.addAll(getEncountersInPatientList(getPatientListByUuid(notInListUuids[k])));
-				}
-			} else if (queryFields[i].indexOf("provider=") != -1) {
-				uuid = queryFields[i].substring(9);
-				provid = Context.getProviderService().getProviderByUuid(uuid);
-			} else if (queryFields[i].indexOf("patient=") != -1) {
-				uuid = queryFields[i].substring(8);
-				patient = Context.getPatientService().getPatientByUuid(uuid);
-			} else if (queryFields[i].indexOf("containsOrderType=") != -1) {
-				containsOrderType = queryFields[i].substring(18);
-			}
-		}
-		List<EncounterType> encTypes = new ArrayList<EncounterType>();
-		List<Provider> provids = new ArrayList<Provider>();
-		List<Encounter> encs = new ArrayList<Encounter>();
-		encTypes.add(encType);
-		provids.add(provid);
-		//if we give inList, start with that list and remove encounters
-		if (inListEncounters != null) {
-			encs = inListEncounters;
-			Iterator<Encounter> iter = encs.iterator();
-			while (iter.hasNext()) {
-				Encounter currEnc = iter.next();
-				if ((startDate != null && currEnc.getEncounterDatetime().before(startDate))
-				        || (endDate != null && currEnc.getEncounterDatetime().after(endDate))
-				        || (encType != null && !currEnc.getEncounterType().equals(encType))
-				        || (patient != null && !currEnc.getPatient().equals(patient))) {
-					iter.remove();
-				} else if (provid != null) {
-					Iterator<Set<Provider>> providerIter = currEnc.getProvidersByRoles().values().iterator();
-					boolean hasProvider = false;
-					while (providerIter.hasNext() && !hasProvider) {
-						Set<Provider> providerEncounters = providerIter.next();
-						if (providerEncounters.contains(provid)) {
-							hasProvider = true;
-						}
-					}
-					if (!hasProvider) {
-						iter.remove();
-					}
-				}
-			}
+		if (isMaterialized(patientList) && patientList.getId() != null) {
+			checkLimit(limit);
+			return dao.getMaterializedEncounters(patientList, cursor, limit);
 		}
-		//otherwise, make an entirely new list
-		else {
-			if (uuid != null) {
-				encs = Context.getEncounterService().getEncounters(patient, location, startDate, endDate, null, encTypes,
-				    provids, null, null, Boolean.FALSE);
-			} else {
-				encs = Context.getEncounterService().getEncounters(patient, location, startDate, endDate, null, encTypes,
-				    null, null, null, Boolean.FALSE);
-			}
+		return getEncountersInPatientList(getQueryPlan(patientList.getSearchQuery()), cursor, limit);
+	}
+	
+	/**
+	 * @see
+	 * org.raxa.module.raxacore.PatientListService#getEncountersInPatientList(PatientListQueryPlan, PatientListCursor, Integer)
+	 */
+	@Override
+	public List<Encounter> getEncountersInPatientList(PatientListQueryPlan plan, PatientListCursor cursor, Integer limit) {
+		checkLimit(limit);
+		return dao.getEncountersInPatientList(resolveQueryPlan(plan), cursor, limit);
+	}
+	
+	/**
+	 * @see
+	 * org.raxa.module.raxacore.PatientListService#getEncounterRowsInPatientList(PatientList, PatientListCursor, Integer)
+	 */
+	@Override
+	public List<PatientListEncounterRow> getEncounterRowsInPatientList(PatientList patientList, PatientListCursor cursor,
+	        Integer limit) {
+		if (patientList.getSearchQuery() == null) {
+			return new ArrayList<PatientListEncounterRow>();
 		}
-		//refactor this to hash map so double loop is not required
-		if (notInListPatients != null) {
-			Iterator<Encounter> iter = encs.iterator();
-			Iterator<Encounter> iter2;
-			//if patient is in notInListPatients, remove the encounter
-			while (iter.hasNext()) {
-				Encounter currEnc = iter.next();
-				//if patient already has encounter, check the dates to see if he should be removed
-				if (notInListPatients.contains(currEnc.getPatient())) {
-					iter2 = notInListEncounters.iterator();
-					boolean removed = false;
-					while (iter2.hasNext() && !removed) {
-						Encounter currEnc2 = iter2.next();
-						if (currEnc2.getPatient().equals(currEnc.getPatient())
-						        && currEnc2.getEncounterDatetime().after(currEnc.getEncounterDatetime())) {
-							iter.remove();
-							removed = true;
-						}
-					}
-				}
-			}
+		checkLimit(limit);
+		if (isMaterialized(patientList) && patientList.getId() != null) {
+			return dao.getMaterializedEncounterRows(patientList, cursor, limit);
 		}
-		if (containsOrderType.equals("drugOrder")) {
-			boolean shouldRemove;
-			Iterator<Encounter> iter = encs.iterator();
-			while (iter.hasNext()) {
-				shouldRemove = true;
-				Encounter currEnc = iter.next();
-				Iterator<Order> orderIter = currEnc.getOrders().iterator();
-				while (orderIter.hasNext()) {
-					Order o = orderIter.next();
-					if (o.isDrugOrder()) {
-						shouldRemove = false;
-						break;
-					}
-				}
-				if (shouldRemove) {
-					iter.remove();
-				}
-			}
+		return dao.getEncounterRowsInPatientList(resolveQueryPlan(getQueryPlan(patientList.getSearchQuery())), cursor,
+		    limit);
+	}
+	
+	private void checkLimit(Integer limit) {
+		if (limit != null && limit < 1) {
+			throw new IllegalArgumentException("limit must be at least 1");
 		}
-		return encs;
 	}
 	
 	/**
@@ -296,7 +278,17 @@ public class PatientListServiceImpl implements PatientListService {
 	 */
 	@Override
 	public PatientList updatePatientList(PatientList patientList) {
-		return dao.updatePatientList(patientList);
+		synchronized (queryPlans) {
+			queryPlans.clear();
+		}
+		PatientList updated = dao.updatePatientList(patientList);
+		if (isMaterialized(updated)) {
+			rebuildMaterializedPatientList(updated);
+		} else {
+			dao.deleteMaterializedMembers(updated, null);
+		}
+		rebuildDependentPatientLists(updated, new HashSet<PatientList>());
+		return updated;
 	}
 	
 	/**
@@ -304,9 +296,111 @@ public class PatientListServiceImpl implements PatientListService {
 	 */
 	@Override
 	public void deletePatientList(PatientList patientList) {
+		synchronized (queryPlans) {
+			queryPlans.clear();
+		}
+		dao.deleteMaterializedMembers(patientList, null);
 		dao.deletePatientList(patientList);
 	}
 	
+	/**
+	 * @see org.raxa.module.raxacore.PatientListService#prefetchEncounterDetails(List)
+	 */
+	@Override
+	public void prefetchEncounterDetails(List<Encounter> encounters) {
+		if (!encounters.isEmpty()) {
+			dao.prefetchEncounterDetails(encounters);
+		}
+	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.PatientListService#refreshMaterializedPatientLists(Encounter)
+	 */
+	@Override
+	public void refreshMaterializedPatientLists(Encounter encounter) {
+		Patient patient = encounter.getPatient();
+		//a list storing the patient can lose them whatever the encounter is, e.g. when its type changed
+		Set<Integer> storingPatient = new HashSet<Integer>(dao.getMaterializedPatientListIds(patient));
+		for (PatientList patientList : dao.getMaterializedPatientLists()) {
+			if (patientList.getSearchQuery() == null) {
+				continue;
+			}
+			PatientListQueryPlan plan = resolveQueryPlan(getQueryPlan(patientList.getSearchQuery()));
+			if (storingPatient.contains(patientList.getId()) || canMatch(plan, encounter)) {
+				dao.deleteMaterializedMembers(patientList, patient);
+				dao.saveMaterializedMembers(patientList, dao.getEncounterIdsInPatientList(plan, patient));
+			}
+		}
+	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.PatientListService#removeFromMaterializedPatientLists(Encounter)
+	 */
+	@Override
+	public void removeFromMaterializedPatientLists(Encounter encounter) {
+		dao.deleteMaterializedMembers(encounter);
+	}
+	
+	/**
+	 * Tells whether an encounter can add its patient to a list: it has the encounter type and location
+	 * of the list or of one of its inList sub-lists. Any encounter can take the patient out of a
+	 * notInList sub-list, so lists with one always match.
+	 */
+	private boolean canMatch(PatientListQueryPlan plan, Encounter encounter) {
+		if (plan.getNotInListPlans() != null && !plan.getNotInListPlans().isEmpty()) {
+			return true;
+		}
+		Integer encounterTypeId = plan.getEncounterTypeId();
+		Integer locationId = plan.getLocationId();
+		if ((encounterTypeId == null || encounter.getEncounterType() != null
+		        && encounterTypeId.equals(encounter.getEncounterType().getEncounterTypeId()))
+		        && (locationId == null || encounter.getLocation() != null
+		                && locationId.equals(encounter.getLocation().getLocationId()))) {
+			return true;
+		}
+		if (plan.getInListPlans() != null) {
+			for (PatientListQueryPlan inListPlan : plan.getInListPlans()) {
+				if (canMatch(inListPlan, encounter)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	private boolean isMaterialized(PatientList patientList) {
+		return Boolean.TRUE.equals(patientList.getMaterialized());
+	}
+	
+	/**
+	 * Replaces the stored members of a materialized list with a full evaluation of its query
+	 *
+	 * @param patientList
+	 */
+	private void rebuildMaterializedPatientList(PatientList patientList) {
+		dao.deleteMaterializedMembers(patientList, null);
+		if (patientList.getSearchQuery() != null) {
+			PatientListQueryPlan plan = resolveQueryPlan(getQueryPlan(patientList.getSearchQuery()));
+			dao.saveMaterializedMembers(patientList, dao.getEncounterIdsInPatientList(plan));
+		}
+	}
+	
+	/**
+	 * Rebuilds the materialized lists that use a changed list as an inList or notInList
+	 *
+	 * @param patientList the changed list
+	 * @param rebuilt lists already rebuilt, so cyclic references terminate
+	 */
+	private void rebuildDependentPatientLists(PatientList patientList, Set<PatientList> rebuilt) {
+		for (PatientList materialized : dao.getMaterializedPatientLists()) {
+			if (materialized.getSearchQuery() != null && materialized.getSearchQuery().contains(patientList.getUuid())
+			        && rebuilt.add(materialized)) {
+				rebuildMaterializedPatientList(materialized);
+				rebuildDependentPatientLists(materialized, rebuilt);
+			}
+		}
+	}
+	
 	@Override
 	public void onStartup() {
 		log.info("Starting patient list service");
@@ -22,8 +22,14 @@ import org.apache.commons.logging.LogFactory;
 import org.openmrs.Provider;
 import org.openmrs.api.context.Context;
 import org.raxa.module.raxacore.RaxaAlert;
+import org.raxa.module.raxacore.RaxaAlertEvent;
+import org.raxa.module.raxacore.RaxaAlertEventBus;
 import org.raxa.module.raxacore.RaxaAlertService;
+import org.raxa.module.raxacore.RaxaAlertSubscription;
 import org.raxa.module.raxacore.db.RaxaAlertDAO;
+import org.raxa.module.raxacore.util.Paging;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /*
  * Implements RaxaAlertService.java
@@ -34,6 +40,8 @@ public class RaxaAlertServiceImpl implements RaxaAlertService {
 	
 	private Log log = LogFactory.getLog(this.getClass());
 	
+	private final RaxaAlertEventBus eventBus = new RaxaAlertEventBus();
+	
 	/**
 	 * @see org.raxa.module.raxacore.RaxaAlertService#setRaxaAlertDAO
 	 */
@@ -47,7 +55,37 @@ public class RaxaAlertServiceImpl implements RaxaAlertService {
 	 */
 	@Override
 	public RaxaAlert saveRaxaAlert(RaxaAlert raxaAlert) {
-		return dao.saveRaxaAlert(raxaAlert);
+		RaxaAlert saved = dao.saveRaxaAlert(raxaAlert);
+		publishAfterCommit(new RaxaAlertEvent(getSavedEventType(saved), saved));
+		return saved;
+	}
+	
+	/**
+	 * Publishes the event once the transaction commits, so that subscribers find the change when
+	 * they query
+	 */
+	private void publishAfterCommit(final RaxaAlertEvent event) {
+		if (event.getAlertId() == null) {
+			return;
+		}
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			eventBus.publish(event);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			
+			@Override
+			public void afterCommit() {
+				eventBus.publish(event);
+			}
+		});
+	}
+	
+	/**
+	 * Saving or updating an alert that is already seen is published as seen
+	 */
+	private String getSavedEventType(RaxaAlert raxaAlert) {
+		return Boolean.TRUE.equals(raxaAlert.getSeen()) ? RaxaAlertEvent.TYPE_SEEN : RaxaAlertEvent.TYPE_SAVED;
 	}
 	
 	/**
@@ -114,12 +152,62 @@ public class RaxaAlertServiceImpl implements RaxaAlertService {
 		return dao.getAllRaxaAlerts(includeSeen);
 	}
 	
+	/**
+	 * @see org.raxa.module.raxacore.RaxaAlertService#getAllRaxaAlerts(boolean, Integer, Integer)
+	 */
+	@Override
+	public List<RaxaAlert> getAllRaxaAlerts(boolean includeSeen, Integer startIndex, Integer limit) {
+		return dao.getAllRaxaAlerts(includeSeen, Paging.getFirstResult(startIndex, limit), limit);
+	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.RaxaAlertService#getCountOfAllRaxaAlerts(boolean)
+	 */
+	@Override
+	public Integer getCountOfAllRaxaAlerts(boolean includeSeen) {
+		return dao.getCountOfAllRaxaAlerts(includeSeen);
+	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.RaxaAlertService#getRaxaAlertInbox(Integer, Integer, Integer)
+	 */
+	@Override
+	public List<RaxaAlert> getRaxaAlertInbox(Integer providerRecipientId, Integer toLocationId, Integer limit) {
+		if (providerRecipientId == null && toLocationId == null) {
+			throw new IllegalArgumentException("providerRecipientId or toLocationId is required");
+		}
+		Paging.checkLimit(limit);
+		return dao.getRaxaAlertInbox(providerRecipientId, toLocationId, limit);
+	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.RaxaAlertService#getCountOfUnseenRaxaAlerts(Integer, Integer)
+	 */
+	@Override
+	public Integer getCountOfUnseenRaxaAlerts(Integer providerRecipientId, Integer toLocationId) {
+		if (providerRecipientId == null && toLocationId == null) {
+			throw new IllegalArgumentException("providerRecipientId or toLocationId is required");
+		}
+		return dao.getCountOfUnseenRaxaAlerts(providerRecipientId, toLocationId);
+	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.RaxaAlertService#subscribeToRaxaAlerts(Integer, Integer, Integer)
+	 */
+	@Override
+	public RaxaAlertSubscription subscribeToRaxaAlerts(Integer providerRecipientId, Integer toLocationId,
+	        Integer patientId) {
+		return eventBus.subscribe(providerRecipientId, toLocationId, patientId, RaxaAlertEventBus.DEFAULT_CAPACITY);
+	}
+	
 	/**
 	 * @see org.raxa.module.raxacore.RaxaAlertService#markRaxaAlertAsSeen
 	 */
 	@Override
 	public RaxaAlert markRaxaAlertAsSeen(RaxaAlert raxaAlert) {
-		return dao.markRaxaAlertAsSeen(raxaAlert);
+		RaxaAlert seen = dao.markRaxaAlertAsSeen(raxaAlert);
+		publishAfterCommit(new RaxaAlertEvent(RaxaAlertEvent.TYPE_SEEN, seen));
+		return seen;
 	}
 	
 	/**
@@ -127,7 +215,9 @@ public class RaxaAlertServiceImpl implements RaxaAlertService {
 	 */
 	@Override
 	public RaxaAlert updateRaxaAlert(RaxaAlert raxaAlert) {
-		return dao.updateRaxaAlert(raxaAlert);
+		RaxaAlert updated = dao.updateRaxaAlert(raxaAlert);
+		publishAfterCommit(new RaxaAlertEvent(getSavedEventType(updated), updated));
+		return updated;
 	}
 	
 	/**
@@ -157,6 +247,7 @@ public class RaxaAlertServiceImpl implements RaxaAlertService {
 	@Override
 	public void voidRaxaAlert(RaxaAlert raxaAlert, String reason) {
 		dao.voidRaxaAlert(raxaAlert, reason);
+		publishAfterCommit(new RaxaAlertEvent(RaxaAlertEvent.TYPE_VOIDED, raxaAlert));
 	}
 	
 	@Override
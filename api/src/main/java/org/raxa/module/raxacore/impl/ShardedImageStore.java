@@ -0,0 +1,100 @@
+package org.raxa.module.raxacore.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.raxa.module.raxacore.ImageStore;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * ImageStore that names each file after the SHA-256 of its content and shards the files by the first two bytes of
+ * the hash, e.g. ab/cd/abcd...ef.png, so no directory grows past 256 entries and identical uploads share a file
+ */
+public class ShardedImageStore implements ImageStore {
+	
+	private static final String HASH_ALGORITHM = "SHA-256";
+	
+	private final File directory;
+	
+	/**
+	 * @param directory the store directory, created on the first put
+	 */
+	public ShardedImageStore(File directory) {
+		this.directory = directory;
+	}
+	
+	/**
+	 * Streams the data into a temporary file while hashing it, then moves the file under its hash unless the store
+	 * already has it, so a failed upload never leaves a partial image behind
+	 *
+	 * @see org.raxa.module.raxacore.ImageStore#put(java.io.InputStream, java.lang.String)
+	 */
+	@Override
+	public String put(InputStream data, String fileType) throws IOException {
+		FileUtils.forceMkdir(directory);
+		File tmp = File.createTempFile("image", ".part", directory);
+		try {
+			MessageDigest digest = getDigest();
+			OutputStream out = new FileOutputStream(tmp);
+			try {
+				IOUtils.copyLarge(new DigestInputStream(data, digest), out);
+			}
+			finally {
+				IOUtils.closeQuietly(out);
+			}
+			String key = getKey(new String(Hex.encodeHex(digest.digest())), fileType);
+			File file = getFile(key);
+			if (!file.exists()) {
+				FileUtils.forceMkdir(file.getParentFile());
+				if (!tmp.renameTo(file) && !file.exists()) {
+					throw new IOException("Unable to move " + tmp + " to " + file);
+				}
+			}
+			return key;
+		}
+		finally {
+			FileUtils.deleteQuietly(tmp);
+		}
+	}
+	
+	/**
+	 * @see org.raxa.module.raxacore.ImageStore#getFile(java.lang.String)
+	 */
+	@Override
+	public File getFile(String key) {
+		return new File(directory, key);
+	}
+	
+	private static String getKey(String hash, String fileType) {
+		return hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + "." + fileType;
+	}
+	
+	private static MessageDigest getDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IOException(HASH_ALGORITHM + " is not available: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package org.raxa.module.raxacore.util;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+/**
+ * Checks the startIndex and limit of the paged raxacore service methods, so every page is
+ * validated the same way
+ */
+public final class Paging {
+	
+	private Paging() {
+	}
+	
+	/**
+	 * Checks a page and returns its first result
+	 *
+	 * @param startIndex index of the first result, 0 when null
+	 * @param limit maximum number of results
+	 * @return the index of the first result
+	 * @throws IllegalArgumentException if startIndex is negative or limit is missing or less than 1
+	 */
+	public static int getFirstResult(Integer startIndex, Integer limit) {
+		if (startIndex != null && startIndex < 0) {
+			throw new IllegalArgumentException("startIndex must be at least 0");
+		}
+		checkLimit(limit);
+		return startIndex == null ? 0 : startIndex;
+	}
+	
+	/**
+	 * @param limit maximum number of results
+	 * @throws IllegalArgumentException if limit is missing or less than 1
+	 */
+	public static void checkLimit(Integer limit) {
+		if (limit == null || limit < 1) {
+			throw new IllegalArgumentException("limit must be at least 1");
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package org.raxa.module.raxacore.util;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the date formats accepted by the raxacore web services and formats dates as ISO 8601.
+ * Each supported format is paired with a precompiled regular expression, so the format of a string
+ * is recognized before it is parsed rather than by trying formats until one does not throw. Formats
+ * are tried from the most to the least specific. SimpleDateFormat is not thread-safe, so each
+ * thread keeps its own instance of every format; this class itself is stateless and can be used
+ * from any thread.
+ */
+public final class RaxaDateFormat {
+	
+	/**
+	 * Format used for every date written by the web services
+	 */
+	public static final String ISO_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+	
+	private static final String DATE = "\\d{4}-\\d{1,2}-\\d{1,2}";
+	
+	private static final String TIME = "\\d{1,2}:\\d{1,2}:\\d{1,2}";
+	
+	private static final String ZONE = "(?:[+-]\\d{4}|GMT[+-]\\d{1,2}:?\\d{2})";
+	
+	private static final String DAY_MONTH_YEAR = "[A-Za-z]{3} [A-Za-z]{3} \\d{1,2} \\d{4} " + TIME;
+	
+	private static final SupportedFormat[] SUPPORTED_FORMATS = {
+	        new SupportedFormat(ISO_FORMAT, DATE + "T" + TIME + "\\.\\d+" + ZONE),
+	        new SupportedFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", DATE + "T" + TIME + "\\.\\d+"),
+	        new SupportedFormat("yyyy-MM-dd'T'HH:mm:ssZ", DATE + "T" + TIME + ZONE),
+	        new SupportedFormat("yyyy-MM-dd'T'HH:mm:ss", DATE + "T" + TIME),
+	        new SupportedFormat("yyyy-MM-dd HH:mm:ss", DATE + " " + TIME), new SupportedFormat("yyyy-MM-dd", DATE),
+	        new SupportedFormat("EEE MMM dd yyyy HH:mm:ss z (zzzz)", DAY_MONTH_YEAR + " \\S+ \\("),
+	        new SupportedFormat("EEE MMM d yyyy HH:mm:ss zZzzzz", DAY_MONTH_YEAR + " [A-Za-z]+[+-]\\d{4}"),
+	        new SupportedFormat("EEE MMM dd yyyy HH:mm:ss", DAY_MONTH_YEAR),
+	        new SupportedFormat("MMM dd, yyyy HH:mm:ss a", "[A-Za-z]{3} \\d{1,2}, \\d{4} " + TIME + " [AaPp][Mm]") };
+	
+	private static final ThreadLocal<SimpleDateFormat> ISO = new ThreadLocal<SimpleDateFormat>() {
+		
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat(ISO_FORMAT);
+		}
+	};
+	
+	private RaxaDateFormat() {
+	}
+	
+	/**
+	 * Parses a date in any of the supported formats
+	 *
+	 * @param str the date string
+	 * @return the date, or null if the string is not in a supported format
+	 */
+	public static Date parse(String str) {
+		if (str == null) {
+			return null;
+		}
+		for (SupportedFormat supportedFormat : SUPPORTED_FORMATS) {
+			Date date = supportedFormat.parse(str);
+			if (date != null) {
+				return date;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Formats a date as ISO 8601 ({@link #ISO_FORMAT})
+	 *
+	 * @param date
+	 * @return the formatted date
+	 */
+	public static String format(Date date) {
+		return ISO.get().format(date);
+	}
+	
+	/**
+	 * A SimpleDateFormat pattern with the expression recognizing strings in that format
+	 */
+	private static final class SupportedFormat {
+		
+		private final Pattern recognizer;
+		
+		private final ThreadLocal<SimpleDateFormat> format;
+		
+		SupportedFormat(final String pattern, String regex) {
+			this.recognizer = Pattern.compile(regex);
+			this.format = new ThreadLocal<SimpleDateFormat>() {
+				
+				@Override
+				protected SimpleDateFormat initialValue() {
+					return new SimpleDateFormat(pattern);
+				}
+			};
+		}
+		
+		/**
+		 * Like SimpleDateFormat.parse(String), only the beginning of the string has to match
+		 */
+		Date parse(String str) {
+			if (!recognizer.matcher(str).lookingAt()) {
+				return null;
+			}
+			ParsePosition position = new ParsePosition(0);
+			Date date = format.get().parse(str, position);
+			return position.getErrorIndex() == -1 ? date : null;
+		}
+	}
+}
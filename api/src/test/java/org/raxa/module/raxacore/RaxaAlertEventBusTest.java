@@ -0,0 +1,87 @@
+package org.raxa.module.raxacore;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class RaxaAlertEventBusTest {
+	
+	private RaxaAlertEvent event(String type, Integer alertId, Integer providerRecipientId, Integer toLocationId) {
+		RaxaAlert raxaAlert = new RaxaAlert();
+		raxaAlert.setId(alertId);
+		raxaAlert.setProviderRecipientId(providerRecipientId);
+		raxaAlert.setToLocationId(toLocationId);
+		return new RaxaAlertEvent(type, raxaAlert);
+	}
+	
+	/**
+	 * Test of publish method, of class RaxaAlertEventBus.
+	 */
+	@Test
+	public void testPublishShouldQueueTheEventOnceOnEachMatchingSubscription() throws Exception {
+		RaxaAlertEventBus bus = new RaxaAlertEventBus();
+		RaxaAlertSubscription both = bus.subscribe(1, 2, null, 10);
+		RaxaAlertSubscription other = bus.subscribe(3, null, null, 10);
+		bus.publish(event(RaxaAlertEvent.TYPE_SAVED, 5, 1, 2));
+		assertEquals(1, both.poll(0).size());
+		assertEquals(0, other.poll(0).size());
+	}
+	
+	/**
+	 * Test of publish method, of class RaxaAlertEventBus.
+	 */
+	@Test
+	public void testPublishShouldMergeEventsOfTheSameAlert() throws Exception {
+		RaxaAlertEventBus bus = new RaxaAlertEventBus();
+		RaxaAlertSubscription subscription = bus.subscribe(1, null, null, 10);
+		bus.publish(event(RaxaAlertEvent.TYPE_SAVED, 5, 1, null));
+		bus.publish(event(RaxaAlertEvent.TYPE_SEEN, 5, 1, null));
+		List<RaxaAlertEvent> events = subscription.poll(0);
+		assertEquals(1, events.size());
+		assertEquals(RaxaAlertEvent.TYPE_SEEN, events.get(0).getType());
+	}
+	
+	/**
+	 * Test of publish method, of class RaxaAlertEventBus.
+	 */
+	@Test
+	public void testPublishShouldDropTheOldestEventWhenTheQueueIsFull() throws Exception {
+		RaxaAlertEventBus bus = new RaxaAlertEventBus();
+		RaxaAlertSubscription subscription = bus.subscribe(1, null, null, 2);
+		bus.publish(event(RaxaAlertEvent.TYPE_SAVED, 5, 1, null));
+		bus.publish(event(RaxaAlertEvent.TYPE_SAVED, 6, 1, null));
+		bus.publish(event(RaxaAlertEvent.TYPE_SAVED, 7, 1, null));
+		List<RaxaAlertEvent> events = subscription.poll(0);
+		assertEquals(2, events.size());
+		assertEquals(Integer.valueOf(6), events.get(0).getAlertId());
+		assertTrue(subscription.clearOverflow());
+		assertFalse(subscription.clearOverflow());
+	}
+	
+	/**
+	 * Test of close method, of class RaxaAlertSubscription.
+	 */
+	@Test
+	public void testCloseShouldStopTheSubscription() throws Exception {
+		RaxaAlertEventBus bus = new RaxaAlertEventBus();
+		RaxaAlertSubscription subscription = bus.subscribe(1, null, null, 10);
+		subscription.close();
+		bus.publish(event(RaxaAlertEvent.TYPE_SAVED, 5, 1, null));
+		assertEquals(0, subscription.poll(1000).size());
+	}
+}
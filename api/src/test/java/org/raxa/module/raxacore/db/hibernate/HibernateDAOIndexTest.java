@@ -0,0 +1,185 @@
+package org.raxa.module.raxacore.db.hibernate;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import static org.junit.Assert.*;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+
+/**
+ * Checks that the lookups of the raxacore DAOs are answered from the indexes added for them. The SQL each DAO
+ * method generates is taken from the org.hibernate.SQL log and the test database is asked for its plan
+ */
+public class HibernateDAOIndexTest extends BaseModuleContextSensitiveTest {
+	
+	private static final String TEST_DATA_PATH = "org/raxa/module/raxacore/include/";
+	
+	private static final String MODULE_TEST_DATA_XML = TEST_DATA_PATH + "moduleTestData.xml";
+	
+	private SessionFactory sessionFactory = null;
+	
+	private Logger sqlLog = Logger.getLogger("org.hibernate.SQL");
+	
+	private Level sqlLogLevel = null;
+	
+	private SqlAppender sqlAppender = new SqlAppender();
+	
+	@Before
+	public void setUp() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_XML);
+		sessionFactory = (SessionFactory) applicationContext.getBean("sessionFactory");
+		sqlLogLevel = sqlLog.getLevel();
+		sqlLog.setLevel(Level.DEBUG);
+		sqlLog.addAppender(sqlAppender);
+	}
+	
+	@After
+	public void tearDown() {
+		sqlLog.removeAppender(sqlAppender);
+		sqlLog.setLevel(sqlLogLevel);
+	}
+	
+	private Object getDAO(Class<?> daoClass) {
+		return applicationContext.getBean(daoClass.getName());
+	}
+	
+	/**
+	 * Asserts the plan of the first select logged since the last call uses one of the given indexes
+	 */
+	private void assertUsesIndex(String... indexNames) throws Exception {
+		String sql = sqlAppender.getFirstSelect();
+		assertNotNull("no select was logged", sql);
+		PreparedStatement statement = sessionFactory.getCurrentSession().connection().prepareStatement("EXPLAIN " + sql);
+		try {
+			//the plan is chosen when the statement is prepared, so the parameter values do not matter
+			for (int i = 1; i <= statement.getParameterMetaData().getParameterCount(); i++) {
+				statement.setObject(i, null);
+			}
+			ResultSet plan = statement.executeQuery();
+			assertTrue(plan.next());
+			String planText = plan.getString(1).toLowerCase();
+			boolean usesIndex = false;
+			for (String indexName : indexNames) {
+				usesIndex |= planText.contains(indexName);
+			}
+			assertTrue(sql + " does not use " + indexNames[0] + ": " + planText, usesIndex);
+		}
+		finally {
+			statement.close();
+			sqlAppender.clear();
+		}
+	}
+	
+	@Test
+	public void raxaAlertDAO_shouldUseIndexesForLookups() throws Exception {
+		HibernateRaxaAlertDAO dao = (HibernateRaxaAlertDAO) getDAO(HibernateRaxaAlertDAO.class);
+		dao.getRaxaAlertByProviderRecipientId(1, false);
+		assertUsesIndex("raxacore_raxaalert_recipient_seen");
+		dao.getRaxaAlertByProviderSentId(1, false);
+		assertUsesIndex("raxacore_raxaalert_sent_seen");
+		dao.getRaxaAlertByToLocationId(1, false);
+		assertUsesIndex("raxacore_raxaalert_to_location_seen");
+		dao.getRaxaAlertByPatientId(1, false);
+		assertUsesIndex("raxacore_raxaalert_patient_seen");
+	}
+	
+	@Test
+	public void drugInventoryDAO_shouldUseIndexesForLookups() throws Exception {
+		HibernateDrugInventoryDAO dao = (HibernateDrugInventoryDAO) getDAO(HibernateDrugInventoryDAO.class);
+		dao.getDrugInventoriesByLocation(1);
+		assertUsesIndex("drug_inventory_resource_location", "drug_inventory_resource_location_expiry_status");
+		dao.getAllDrugInventoriesByStatus("on the way");
+		assertUsesIndex("drug_inventory_resource_status");
+		dao.getDrugInventoryByProvider(1);
+		assertUsesIndex("drug_inventory_resource_provider");
+		dao.getDrugInventoriesByDrugPurchaseOrder(1);
+		assertUsesIndex("drug_inventory_resource_purchase_order");
+		dao.getDispensableDrugInventories(2, 1);
+		assertUsesIndex("drug_inventory_resource_drug_location_expiry");
+		dao.getDrugInventoriesExpiringBefore(1, new Date(), null, null);
+		assertUsesIndex("drug_inventory_resource_location_expiry_status");
+	}
+	
+	@Test
+	public void billingDAO_shouldUseIndexesForLookups() throws Exception {
+		HibernateBillingDAO dao = (HibernateBillingDAO) getDAO(HibernateBillingDAO.class);
+		dao.getAllBillsByPatient(1);
+		assertUsesIndex("raxacore_billing_patient");
+		dao.getAllBillsByProvider(1);
+		assertUsesIndex("raxacore_billing_provider");
+		dao.getAllBillsByStatus("paid");
+		assertUsesIndex("raxacore_billing_status");
+	}
+	
+	@Test
+	public void imageDAO_shouldUseIndexesForLookups() throws Exception {
+		HibernateImageDAO dao = (HibernateImageDAO) getDAO(HibernateImageDAO.class);
+		dao.getImagesByPatientId(1);
+		assertUsesIndex("raxacore_image_patient_date");
+		dao.getImagesByLocationId(1);
+		assertUsesIndex("raxacore_image_location");
+		dao.getImagesByProviderId(1);
+		assertUsesIndex("raxacore_image_provider");
+	}
+	
+	/**
+	 * Keeps the statements hibernate logs to org.hibernate.SQL
+	 */
+	private static class SqlAppender extends AppenderSkeleton {
+		
+		private List<String> statements = new ArrayList<String>();
+		
+		@Override
+		protected void append(LoggingEvent event) {
+			statements.add(event.getRenderedMessage().trim());
+		}
+		
+		public String getFirstSelect() {
+			for (String statement : statements) {
+				if (statement.toLowerCase().startsWith("select")) {
+					return statement;
+				}
+			}
+			return null;
+		}
+		
+		public void clear() {
+			statements.clear();
+		}
+		
+		@Override
+		public void close() {
+		}
+		
+		@Override
+		public boolean requiresLayout() {
+			return false;
+		}
+	}
+}
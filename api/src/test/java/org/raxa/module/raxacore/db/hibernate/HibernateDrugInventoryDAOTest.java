@@ -15,6 +15,8 @@ package org.raxa.module.raxacore.db.hibernate;
  * License for the specific language governing permissions and limitations under
  * the License.
  */
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import static org.junit.Assert.*;
@@ -29,6 +31,7 @@ import org.openmrs.api.context.Context;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.raxa.module.raxacore.DrugInventory;
 import org.raxa.module.raxacore.DrugPurchaseOrder;
+import org.raxa.module.raxacore.DrugStock;
 import org.raxa.module.raxacore.PatientList;
 import org.raxa.module.raxacore.db.DrugInventoryDAO;
 import org.raxa.module.raxacore.db.PatientListDAO;
@@ -122,6 +125,15 @@ public class HibernateDrugInventoryDAOTest extends BaseModuleContextSensitiveTes
 		
 	}
 	
+	@Test
+	public void testGetAllDrugInventoriesPage() {
+		List<DrugInventory> firstPage = dao.getAllDrugInventories(0, 1);
+		assertEquals(1, firstPage.size());
+		assertEquals("68547121-1b70-465c-99ee-c9dfd95e7d36", firstPage.get(0).getUuid());
+		assertEquals(0, dao.getAllDrugInventories(1, 1).size());
+		assertEquals(Integer.valueOf(1), dao.getCountOfAllDrugInventories());
+	}
+	
 	@Test
 	public void testGetAllDrugInventoriesByStatus() {
 		List<DrugInventory> allDrugInventories = dao.getAllDrugInventoriesByStatus("on the way");
@@ -158,4 +170,123 @@ public class HibernateDrugInventoryDAOTest extends BaseModuleContextSensitiveTes
 		assertEquals(result.size(), 1);
 		
 	}
+	
+	@Test
+	public void testGetDrugInventoriesByUuids() {
+		List<DrugInventory> result = dao.getDrugInventoriesByUuids(Arrays.asList("68547121-1b70-465c-99ee-c9dfd95e7d36",
+		    "68547121-1b70-465c-99ee-c9dfd95e7d30"));
+		assertEquals(result.size(), 1);
+		assertEquals(result.get(0).getName(), "Test drug inventory");
+	}
+	
+	@Test
+	public void testSaveDrugInventories() {
+		List<DrugInventory> drugInventories = new ArrayList<DrugInventory>();
+		DrugInventory existing = dao.getDrugInventoryByUuid("68547121-1b70-465c-99ee-c9dfd95e7d36");
+		existing.setQuantity(250);
+		drugInventories.add(existing);
+		for (int i = 0; i < 60; i++) {
+			DrugInventory dInventory = new DrugInventory();
+			dInventory.setName("Batch inventory " + i);
+			dInventory.setCreator(Context.getUserContext().getAuthenticatedUser());
+			dInventory.setDateCreated(new java.util.Date());
+			dInventory.setRetired(Boolean.FALSE);
+			dInventory.setQuantity(10);
+			dInventory.setOriginalQuantity(10);
+			drugInventories.add(dInventory);
+		}
+		dao.saveDrugInventories(drugInventories);
+		List<String> uuids = new ArrayList<String>();
+		for (DrugInventory drugInventory : drugInventories) {
+			uuids.add(drugInventory.getUuid());
+		}
+		assertEquals(dao.getDrugInventoriesByUuids(uuids).size(), 61);
+		assertEquals(dao.getDrugInventoryByUuid("68547121-1b70-465c-99ee-c9dfd95e7d36").getQuantity(), Integer
+		        .valueOf(250));
+	}
+	
+	@Test
+	public void testDecrementDrugInventoryQuantity() {
+		DrugInventory batch = dao.getDrugInventoryByUuid("68547121-1b70-465c-99ee-c9dfd95e7d36");
+		Integer version = batch.getVersion();
+		assertTrue(dao.decrementDrugInventoryQuantity(batch, 100));
+		assertEquals(batch.getQuantity(), Integer.valueOf(200));
+		assertEquals(batch.getVersion(), Integer.valueOf(version + 1));
+		assertTrue(dao.decrementDrugInventoryQuantity(batch, 200));
+		assertEquals(batch.getQuantity(), Integer.valueOf(0));
+		assertEquals(batch.getStatus(), DrugInventory.STATUS_OUT);
+	}
+	
+	@Test
+	public void testDecrementDrugInventoryQuantity_shouldNotDecrementMoreThanTheBatchHolds() {
+		DrugInventory batch = dao.getDrugInventoryByUuid("68547121-1b70-465c-99ee-c9dfd95e7d36");
+		assertFalse(dao.decrementDrugInventoryQuantity(batch, 301));
+		assertEquals(dao.getDrugInventoryByUuid("68547121-1b70-465c-99ee-c9dfd95e7d36").getQuantity(), Integer
+		        .valueOf(300));
+	}
+	
+	@Test
+	public void testRefreshDrugStocks() {
+		dao.refreshDrugStocks(Arrays.asList(2));
+		DrugStock drugStock = dao.getDrugStock(2, 1);
+		assertEquals(drugStock.getQuantity(), Integer.valueOf(300));
+		assertEquals(dao.getDrugStocksByLocation(1).size(), 1);
+		DrugInventory dInventory = dao.getDrugInventoryByUuid("68547121-1b70-465c-99ee-c9dfd95e7d36");
+		dInventory.setQuantity(0);
+		dao.updateDrugInventory(dInventory);
+		dao.refreshDrugStocks(Arrays.asList(2));
+		assertNull(dao.getDrugStock(2, 1));
+	}
+	
+	@Test
+	public void testGetDispensableDrugInventories() {
+		DrugInventory existing = dao.getDrugInventoryByUuid("68547121-1b70-465c-99ee-c9dfd95e7d36");
+		List<DrugInventory> drugInventories = new ArrayList<DrugInventory>();
+		for (int i = 0; i < 3; i++) {
+			DrugInventory dInventory = new DrugInventory();
+			dInventory.setName("Batch " + i);
+			dInventory.setCreator(Context.getUserContext().getAuthenticatedUser());
+			dInventory.setDateCreated(new java.util.Date());
+			dInventory.setRetired(Boolean.FALSE);
+			dInventory.setDrug(existing.getDrug());
+			dInventory.setLocation(existing.getLocation());
+			dInventory.setQuantity(i == 2 ? 0 : 10);
+			dInventory.setExpiryDate(new Date(1000000000000L - i * 100000000L));
+			drugInventories.add(dInventory);
+		}
+		dao.saveDrugInventories(drugInventories);
+		List<DrugInventory> result = dao.getDispensableDrugInventories(existing.getDrug().getDrugId(), existing
+		        .getLocation().getLocationId());
+		assertEquals(result.size(), 3);
+		assertEquals(result.get(0).getName(), "Batch 1");
+		assertEquals(result.get(1).getName(), "Batch 0");
+		assertEquals(result.get(2).getName(), "Test drug inventory");
+	}
+	
+	@Test
+	public void testGetDrugInventoriesExpiringBefore() {
+		DrugInventory existing = dao.getDrugInventoryByUuid("68547121-1b70-465c-99ee-c9dfd95e7d36");
+		List<DrugInventory> drugInventories = new ArrayList<DrugInventory>();
+		for (int i = 0; i < 4; i++) {
+			DrugInventory dInventory = new DrugInventory();
+			dInventory.setName("Expiring " + i);
+			dInventory.setCreator(Context.getUserContext().getAuthenticatedUser());
+			dInventory.setDateCreated(new java.util.Date());
+			dInventory.setRetired(Boolean.FALSE);
+			dInventory.setDrug(existing.getDrug());
+			dInventory.setLocation(existing.getLocation());
+			dInventory.setQuantity(10);
+			//the last one expires far in the future
+			dInventory.setExpiryDate(new Date(i == 3 ? 4000000000000L : 1000000000000L + i * 100000000L));
+			drugInventories.add(dInventory);
+		}
+		dao.saveDrugInventories(drugInventories);
+		Integer locationId = existing.getLocation().getLocationId();
+		List<DrugInventory> result = dao.getDrugInventoriesExpiringBefore(locationId, new Date(), 0, 10);
+		assertEquals(result.size(), 3);
+		assertEquals(result.get(0).getName(), "Expiring 0");
+		result = dao.getDrugInventoriesExpiringBefore(locationId, new Date(), 1, 1);
+		assertEquals(result.size(), 1);
+		assertEquals(result.get(0).getName(), "Expiring 1");
+	}
 }
@@ -15,14 +15,19 @@ package org.raxa.module.raxacore.db.hibernate;
  * License for the specific language governing permissions and limitations under
  * the License.
  */
+import java.util.ArrayList;
 import java.util.List;
 import static org.junit.Assert.*;
+import org.hibernate.Hibernate;
 import org.junit.Before;
 import org.junit.Test;
+import org.openmrs.Encounter;
 import org.openmrs.EncounterType;
 import org.openmrs.api.context.Context;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.raxa.module.raxacore.PatientList;
+import org.raxa.module.raxacore.PatientListEncounterRow;
+import org.raxa.module.raxacore.PatientListQueryPlan;
 import org.raxa.module.raxacore.db.PatientListDAO;
 
 public class HibernatePatientListDAOTest extends BaseModuleContextSensitiveTest {
@@ -154,4 +159,66 @@ public class HibernatePatientListDAOTest extends BaseModuleContextSensitiveTest
 		assertEquals(allPatientList.size(), 3);
 	}
 	
+	/**
+	 * Test of getEncountersInPatientList method, of class HibernatePatientListDAO.
+	 */
+	@Test
+	public void testGetEncountersInPatientList_shouldFilterDrugOrders() {
+		PatientListQueryPlan plan = PatientListQueryPlan.compile("?encounterType=61ae96f4-6afe-4351-b6f8-cd4fc383ctyr"
+		        + "&containsOrderType=drugOrder");
+		List<Encounter> encs = dao.getEncountersInPatientList(plan.resolve(null, new ArrayList<PatientListQueryPlan>()));
+		assertEquals(1, encs.size());
+		assertEquals(Integer.valueOf(14), encs.get(0).getEncounterId());
+	}
+	
+	/**
+	 * Test of getEncounterRowsInPatientList method, of class HibernatePatientListDAO.
+	 */
+	@Test
+	public void testGetEncounterRowsInPatientList_shouldGetRowsForTheSameEncounters() {
+		PatientListQueryPlan plan = PatientListQueryPlan.compile("?encounterType=61ae96f4-6afe-4351-b6f8-cd4fc383ctyr")
+		        .resolve(null, new ArrayList<PatientListQueryPlan>());
+		List<Encounter> encs = dao.getEncountersInPatientList(plan);
+		List<PatientListEncounterRow> rows = dao.getEncounterRowsInPatientList(plan, null, null);
+		assertEquals(encs.size(), rows.size());
+		for (int i = 0; i < encs.size(); i++) {
+			assertEquals(encs.get(i).getUuid(), rows.get(i).getEncounterUuid());
+			assertEquals(encs.get(i).getPatient().getUuid(), rows.get(i).getPatientUuid());
+			assertEquals(encs.get(i).getPatient().getPersonName().getFullName(), rows.get(i).getPatientName());
+			assertEquals(encs.get(i).getObs().size(), rows.get(i).getObs().size());
+		}
+	}
+	
+	/**
+	 * Test of prefetchEncounterDetails method, of class HibernatePatientListDAO.
+	 */
+	@Test
+	public void testPrefetchEncounterDetails_shouldInitializeTheObsOfTheEncounters() {
+		Context.flushSession();
+		Context.clearSession();
+		PatientListQueryPlan plan = PatientListQueryPlan.compile("?encounterType=61ae96f4-6afe-4351-b6f8-cd4fc383ctyr");
+		List<Encounter> encs = dao.getEncountersInPatientList(plan.resolve(null, new ArrayList<PatientListQueryPlan>()));
+		assertFalse(encs.isEmpty());
+		dao.prefetchEncounterDetails(encs);
+		for (Encounter e : encs) {
+			assertTrue(Hibernate.isInitialized(e.getAllObs(true)));
+			assertTrue(Hibernate.isInitialized(e.getPatient().getIdentifiers()));
+		}
+	}
+	
+	/**
+	 * Test of getEncounterIdsInPatientList method, of class HibernatePatientListDAO.
+	 */
+	@Test
+	public void testGetEncounterIdsInPatientList_shouldExcludeLaterNotInListEncounters() {
+		PatientListQueryPlan notInList = PatientListQueryPlan.compile("?encounterType=61ae96f4-6afe-4351-b6f8-cd4fc383ctyy"
+		        + "&startDate=2000-01-01T00:00:00&endDate=2012-01-02T00:00:00");
+		PatientListQueryPlan plan = PatientListQueryPlan.compile("?encounterType=61ae96f4-6afe-4351-b6f8-cd4fc383ctyr"
+		        + "&startDate=2000-01-01T00:00:00&endDate=2012-01-02T00:00:00");
+		List<PatientListQueryPlan> notInListPlans = new ArrayList<PatientListQueryPlan>();
+		notInListPlans.add(notInList.resolve(null, new ArrayList<PatientListQueryPlan>()));
+		List<Integer> ids = dao.getEncounterIdsInPatientList(plan.resolve(null, notInListPlans));
+		assertEquals(2, ids.size());
+		assertFalse(ids.contains(10));
+	}
 }
@@ -177,6 +177,44 @@ public class HibernateRaxaAlertDAOTest extends BaseModuleContextSensitiveTest {
 		assertEquals(allRaxaAlert.size(), 0);
 	}
 	
+	/**
+	 * Test of getAllRaxaAlerts and getCountOfAllRaxaAlerts with paging, of class HibernateRaxaAlertDAO.
+	 */
+	@Test
+	public void testGetAllRaxaAlert_shouldReturnThePageStartingAtStartIndex() {
+		assertEquals(1, dao.getAllRaxaAlerts(true, 0, 10).size());
+		assertEquals(0, dao.getAllRaxaAlerts(true, 1, 10).size());
+		assertEquals(Integer.valueOf(1), dao.getCountOfAllRaxaAlerts(true));
+		assertEquals(Integer.valueOf(0), dao.getCountOfAllRaxaAlerts(false));
+	}
+	
+	/**
+	 * Test of getRaxaAlertInbox and getCountOfUnseenRaxaAlerts, of class HibernateRaxaAlertDAO.
+	 */
+	@Test
+	public void testGetRaxaAlertInbox_shouldReturnUnseenAlerts() {
+		RaxaAlert rAlert = new RaxaAlert();
+		rAlert.setName("TestInbox");
+		rAlert.setDescription("Inbox Test List");
+		rAlert.setCreator(Context.getUserContext().getAuthenticatedUser());
+		rAlert.setDateCreated(new java.util.Date());
+		rAlert.setUuid("68547121-1b70-465c-99ee-c9dfd95e7d31");
+		rAlert.setVoided(Boolean.FALSE);
+		rAlert.setSeen(Boolean.FALSE);
+		rAlert.setProviderRecipient(Context.getProviderService().getProvider(1));
+		dao.saveRaxaAlert(rAlert);
+		List<RaxaAlert> inbox = dao.getRaxaAlertInbox(1, null, 10);
+		assertEquals(1, inbox.size());
+		assertEquals("TestInbox", inbox.get(0).getName());
+		rAlert.setSeen(Boolean.TRUE);
+		dao.updateRaxaAlert(rAlert);
+		assertEquals(0, dao.getRaxaAlertInbox(1, null, 10).size());
+		rAlert.setSeen(Boolean.FALSE);
+		dao.updateRaxaAlert(rAlert);
+		assertEquals(Integer.valueOf(1), dao.getCountOfUnseenRaxaAlerts(1, null));
+		assertEquals(Integer.valueOf(0), dao.getCountOfUnseenRaxaAlerts(null, 1));
+	}
+	
 	/**
 	 * Test of updateRaxaAlert method, of class HibernateRaxaAlertDAO.
 	 */
@@ -1,5 +1,8 @@
 package org.raxa.module.raxacore.impl;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -7,6 +10,7 @@ import java.io.IOException;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.imageio.ImageIO;
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Assert;
@@ -203,6 +207,106 @@ public class ImageServiceImplTest extends BaseModuleContextSensitiveTest {
 		Assert.assertEquals(i.getTags(), "test image");
 	}
 	
+	/**
+	 * Test of saveImage method, of class ImageServiceImpl.
+	 */
+	@Test
+	public void testSaveImage_shouldStoreTheSameDataOnce() {
+		Image first = new Image();
+		first.setFileName("png");
+		first.setImageData(TEST_DATA);
+		s.saveImage(first);
+		Image second = new Image();
+		second.setFileName("png");
+		second.setImageData(TEST_DATA);
+		s.saveImage(second);
+		Assert.assertTrue(first.getFileName().matches("[0-9a-f]{2}/[0-9a-f]{2}/[0-9a-f]{64}\\.png"));
+		Assert.assertEquals(first.getFileName(), second.getFileName());
+		Assert.assertTrue(new File(s.getPath(first)).isFile());
+	}
+	
+	/**
+	 * Test of migrateImagesToStore method, of class ImageServiceImpl.
+	 */
+	@Test
+	public void testMigrateImagesToStore_shouldMoveFlatFilesIntoTheStore() throws IOException {
+		Image i = s.getImageMetadataByUuid(TEST_UUID);
+		FileUtils.writeByteArrayToFile(new File(s.getPath(i)), TEST_DATA);
+		Assert.assertEquals(1, s.getCountOfImagesNotInStore().intValue());
+		Assert.assertEquals(i.getId(), s.migrateImagesToStore(null, 10));
+		Assert.assertNull(s.migrateImagesToStore(i.getId(), 10));
+		Assert.assertEquals(0, s.getCountOfImagesNotInStore().intValue());
+		Image migrated = s.getImageByUuid(TEST_UUID);
+		Assert.assertTrue(migrated.getFileName().endsWith(".jpg"));
+		Assert.assertArrayEquals(TEST_DATA, migrated.getImageData());
+	}
+	
+	/**
+	 * Test of getPath method, of class ImageServiceImpl.
+	 */
+	@Test
+	public void testGetPath_shouldReturnAThumbnailScaledDownFromTheSavedImage() throws IOException {
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB), "png", png);
+		Image i = new Image();
+		i.setFileName("png");
+		i.setImageData(png.toByteArray());
+		s.saveImage(i);
+		String thumbnailPath = s.getPath(i, "thumbnail");
+		Assert.assertFalse(thumbnailPath.equals(s.getPath(i)));
+		BufferedImage thumbnail = ImageIO.read(new File(thumbnailPath));
+		Assert.assertEquals(64, thumbnail.getWidth());
+		Assert.assertEquals(32, thumbnail.getHeight());
+		Assert.assertEquals(s.getPath(i), s.getPath(i, "original"));
+	}
+	
+	/**
+	 * Test of getPath method, of class ImageServiceImpl.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testGetPath_shouldRejectAnUnknownSize() {
+		s.getPath(s.getImageMetadataByUuid(TEST_UUID), "huge");
+	}
+	
+	/**
+	 * Test of getImageByUuid method, of class ImageServiceImpl.
+	 */
+	@Test
+	public void testGetImageByUuid_shouldServeRepeatedReadsFromTheCacheUntilTheImageChanges() throws IOException {
+		Image i = s.getImageMetadataByUuid(TEST_UUID);
+		FileUtils.writeByteArrayToFile(new File(s.getPath(i)), TEST_DATA);
+		s.getImageByUuid(TEST_UUID, "original");
+		long hits = ((Number) s.getImageCacheStatistics().get("hits")).longValue();
+		Assert.assertArrayEquals(TEST_DATA, s.getImageByUuid(TEST_UUID, "original").getImageData());
+		Assert.assertEquals(hits + 1, ((Number) s.getImageCacheStatistics().get("hits")).longValue());
+		byte[] newData = { 0x1, 0x2, 0x3 };
+		s.saveImage(i, new ByteArrayInputStream(newData));
+		Assert.assertArrayEquals(newData, s.getImageByUuid(TEST_UUID, "original").getImageData());
+		Assert.assertEquals(hits + 1, ((Number) s.getImageCacheStatistics().get("hits")).longValue());
+	}
+	
+	/**
+	 * Test of getLatestImageByTag method, of class ImageServiceImpl.
+	 */
+	@Test
+	public void testGetLatestImageByTag_shouldServeRepeatedReadsFromTheCacheUntilAnImageChanges() throws IOException {
+		s.getLatestImageByTag("est");
+		long hits = ((Number) s.getImageCacheStatistics().get("hits")).longValue();
+		Image cached = s.getLatestImageByTag("est");
+		Assert.assertEquals(hits + 1, ((Number) s.getImageCacheStatistics().get("hits")).longValue());
+		Assert.assertArrayEquals(TEST_DATA, cached.getImageData());
+		Assert.assertEquals("test image", cached.getTags());
+		Assert.assertEquals("da7f524f-27ce-4bb2-86d6-6d1d05312bd5", cached.getPatient().getUuid());
+		Image other = new Image();
+		other.setFileName("other.png");
+		other.setTags("other test image");
+		other.setCreator(Context.getUserContext().getAuthenticatedUser());
+		other.setDateCreated(new java.util.Date());
+		s.saveImage(other, new ByteArrayInputStream(TEST_DATA));
+		s.getLatestImageByTag("est");
+		Assert.assertEquals(hits + 1, ((Number) s.getImageCacheStatistics().get("hits")).longValue());
+	}
+	
 	/**
 	 * Recursively deletes a file or directory.
 	 * @param file
@@ -15,6 +15,7 @@ package org.raxa.module.raxacore.impl;
  * License for the specific language governing permissions and limitations under
  * the License.
  */
+import java.util.ArrayList;
 import java.util.List;
 import static org.junit.Assert.*;
 import org.junit.Before;
@@ -27,6 +28,8 @@ import org.openmrs.api.APIAuthenticationException;
 import org.openmrs.api.context.Context;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.raxa.module.raxacore.PatientList;
+import org.raxa.module.raxacore.PatientListCursor;
+import org.raxa.module.raxacore.PatientListQueryPlan;
 import org.raxa.module.raxacore.PatientListService;
 
 /*
@@ -366,6 +369,119 @@ public class PatientListServiceImplTest extends BaseModuleContextSensitiveTest {
 		assertEquals(encs.size(), 1);
 	}
 	
+	/**
+	 * Test of compile method, of class PatientListQueryPlan.
+	 */
+	@Test
+	public void testCompileQueryPlanShouldResolveSearchQuery() {
+		PatientListQueryPlan plan = PatientListQueryPlan.compile("?encounterType=61ae96f4-6afe-4351-b6f8-cd4fc383cce1"
+		        + "&startDate=2000-01-01T00:00:00&endDate=2012-01-02T00:00:00&provider=3effc802-12dd-4539-87f6-4065ca8e992c"
+		        + "&inList=68547121-1b70-465d-99ee-c9dfd95e7d30,68547121-1b70-465e-99ee-c9dfd95e7d30"
+		        + "&notInList=68547121-1b70-465f-99ee-c9dfd95e7d30&containsOrderType=drugOrder");
+		assertEquals(Context.getEncounterService().getEncounterTypeByUuid("61ae96f4-6afe-4351-b6f8-cd4fc383cce1").getId(),
+		    plan.getEncounterTypeId());
+		assertEquals(Context.getProviderService().getProviderByUuid("3effc802-12dd-4539-87f6-4065ca8e992c").getId(), plan
+		        .getProviderId());
+		assertTrue(plan.isPersonFiltered());
+		assertNull(plan.getPatientId());
+		assertFalse(plan.hasUnmatchedUuids());
+		assertNotNull(plan.getStartDate());
+		assertNotNull(plan.getEndDate());
+		assertEquals(2, plan.getInListUuids().size());
+		assertEquals("68547121-1b70-465f-99ee-c9dfd95e7d30", plan.getNotInListUuids().get(0));
+		assertEquals("drugOrder", plan.getContainsOrderType());
+	}
+	
+	/**
+	 * Test of parse and bind methods, of class PatientListQueryPlan.
+	 */
+	@Test
+	public void testParseQueryPlanShouldLookUpIdsOnlyWhenBound() {
+		PatientListQueryPlan plan = PatientListQueryPlan.parse("?encounterType=61ae96f4-6afe-4351-b6f8-cd4fc383cce1");
+		assertNull(plan.getEncounterTypeId());
+		assertTrue(plan.hasUnmatchedUuids());
+		assertEquals(Context.getEncounterService().getEncounterTypeByUuid("61ae96f4-6afe-4351-b6f8-cd4fc383cce1").getId(),
+		    plan.bind().getEncounterTypeId());
+		assertTrue(PatientListQueryPlan.compile("?encounterType=00000000-0000-0000-0000-000000000000")
+		        .hasUnmatchedUuids());
+	}
+	
+	/**
+	 * Test of getEncountersInPatientList method, of class PatientListServiceImpl, evaluating the same
+	 * searchQuery twice.
+	 */
+	@Test
+	public void testGetEncountersInPatientListShouldReturnSameEncountersFromCachedPlan() {
+		PatientList p = new PatientList();
+		p.setName("GetPatientsTestList");
+		p.setSearchQuery("?encounterType=61ae96f4-6afe-4351-b6f8-cd4fc383cce1"
+		        + "&startDate=2000-01-01T00:00:00&endDate=2012-01-02T00:00:00");
+		List<Encounter> first = s.getEncountersInPatientList(p);
+		List<Encounter> second = s.getEncountersInPatientList(p);
+		assertEquals(first, second);
+	}
+	
+	/**
+	 * Test of getEncountersInPatientList method with a cursor, of class PatientListServiceImpl.
+	 */
+	@Test
+	public void testGetEncountersInPatientListShouldPageWithCursor() {
+		PatientList p = new PatientList();
+		p.setSearchQuery("?encounterType=61ae96f4-6afe-4351-b6f8-cd4fc383ctyr");
+		List<Encounter> all = s.getEncountersInPatientList(p);
+		assertTrue(all.size() > 1);
+		List<Encounter> paged = new ArrayList<Encounter>();
+		PatientListCursor cursor = null;
+		List<Encounter> page = s.getEncountersInPatientList(p, cursor, 1);
+		while (!page.isEmpty()) {
+			assertEquals(1, page.size());
+			paged.addAll(page);
+			cursor = PatientListCursor.parse(PatientListCursor.after(page.get(0)).toString());
+			page = s.getEncountersInPatientList(p, cursor, 1);
+		}
+		assertEquals(all, paged);
+	}
+	
+	/**
+	 * Test of refreshMaterializedPatientLists method, of class PatientListServiceImpl.
+	 */
+	@Test
+	public void testRefreshMaterializedPatientListsShouldUpdateStoredEncounters() {
+		PatientList p = new PatientList();
+		p.setName("MaterializedTestList");
+		p.setSearchQuery("?encounterType=61ae96f4-6afe-4351-b6f8-cd4fc383ctyr");
+		p.setMaterialized(Boolean.TRUE);
+		s.savePatientList(p);
+		int before = s.getEncountersInPatientList(p).size();
+		assertTrue(before > 0);
+		Encounter encounter = Context.getEncounterService().getEncounter(11);
+		Context.getEncounterService().voidEncounter(encounter, "test");
+		//stored members are unchanged until the patient's membership is refreshed
+		assertEquals(before, s.getEncountersInPatientList(p).size());
+		s.refreshMaterializedPatientLists(encounter);
+		List<Encounter> encs = s.getEncountersInPatientList(p);
+		assertEquals(before - 1, encs.size());
+		assertFalse(encs.contains(encounter));
+	}
+	
+	/**
+	 * Test of removeFromMaterializedPatientLists method, of class PatientListServiceImpl.
+	 */
+	@Test
+	public void testRemoveFromMaterializedPatientListsShouldDeleteStoredEncounter() {
+		PatientList p = new PatientList();
+		p.setName("MaterializedPurgeTestList");
+		p.setSearchQuery("?encounterType=61ae96f4-6afe-4351-b6f8-cd4fc383ctyr");
+		p.setMaterialized(Boolean.TRUE);
+		s.savePatientList(p);
+		int before = s.getEncountersInPatientList(p).size();
+		Encounter encounter = Context.getEncounterService().getEncounter(11);
+		s.removeFromMaterializedPatientLists(encounter);
+		List<Encounter> encs = s.getEncountersInPatientList(p);
+		assertEquals(before - 1, encs.size());
+		assertFalse(encs.contains(encounter));
+	}
+	
 	/**
 	 * Test of getPatientsInPatientList method, of class PatientListServiceImpl.
 	 */
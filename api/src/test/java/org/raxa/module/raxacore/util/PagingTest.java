@@ -0,0 +1,47 @@
+package org.raxa.module.raxacore.util;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PagingTest {
+	
+	/**
+	 * Test of getFirstResult method, of class Paging.
+	 */
+	@Test
+	public void testGetFirstResultShouldStartAtZeroByDefault() {
+		assertEquals(0, Paging.getFirstResult(null, 10));
+		assertEquals(20, Paging.getFirstResult(20, 10));
+	}
+	
+	/**
+	 * Test of getFirstResult method, of class Paging.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testGetFirstResultShouldRejectANegativeStartIndex() {
+		Paging.getFirstResult(-1, 10);
+	}
+	
+	/**
+	 * Test of checkLimit method, of class Paging.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testCheckLimitShouldRejectAZeroLimit() {
+		Paging.checkLimit(0);
+	}
+}
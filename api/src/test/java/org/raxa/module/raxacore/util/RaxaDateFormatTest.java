@@ -0,0 +1,64 @@
+package org.raxa.module.raxacore.util;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import java.util.Calendar;
+import java.util.Date;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class RaxaDateFormatTest {
+	
+	/**
+	 * Test of parse method, of class RaxaDateFormat.
+	 */
+	@Test
+	public void testParseShouldKeepTheTimeOfIsoDates() {
+		Date date = RaxaDateFormat.parse("2012-05-07T10:20:30.400+0000");
+		assertEquals(1336386030400L, date.getTime());
+	}
+	
+	/**
+	 * Test of parse method, of class RaxaDateFormat.
+	 */
+	@Test
+	public void testParseShouldParseDatesWithoutTime() {
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(RaxaDateFormat.parse("2012-05-07"));
+		assertEquals(2012, cal.get(Calendar.YEAR));
+		assertEquals(Calendar.MAY, cal.get(Calendar.MONTH));
+		assertEquals(7, cal.get(Calendar.DAY_OF_MONTH));
+		assertEquals(0, cal.get(Calendar.HOUR_OF_DAY));
+	}
+	
+	/**
+	 * Test of parse method, of class RaxaDateFormat.
+	 */
+	@Test
+	public void testParseShouldReturnNullForUnsupportedFormats() {
+		assertNull(RaxaDateFormat.parse("07/05/2012"));
+		assertNull(RaxaDateFormat.parse(null));
+	}
+	
+	/**
+	 * Test of format method, of class RaxaDateFormat.
+	 */
+	@Test
+	public void testFormatShouldBeParsedBackToTheSameDate() {
+		Date date = new Date(1336386030400L);
+		assertEquals(date, RaxaDateFormat.parse(RaxaDateFormat.format(date)));
+	}
+}
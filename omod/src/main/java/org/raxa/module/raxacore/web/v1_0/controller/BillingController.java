@@ -156,16 +156,23 @@ public class BillingController extends BaseRestController {
 	/**
 	 * 
 	 * @param query
+	 * @param startIndex index of the first bill, 0 by default
+	 * @param limit maximum number of bills, 50 by default when startIndex is given
 	 * @param request
+	 * @param response
 	 * @return
 	 * @throws ResponseException
-	 gets all bills by patientuuid
+	 gets all bills by patientuuid, or one page of them when startIndex or limit is given, with the total
+	 number of bills of the patient in the X-Total-Count header. When the page is full, nextStartIndex is
+	 the startIndex of the page after it.
 	 */
 	@RequestMapping(method = RequestMethod.GET, params = "q")
 	@WSDoc("Gets All bills by patient uuid")
 	@ResponseBody()
-	public String getPatientListsByName(@RequestParam("q") String query, HttpServletRequest request)
-	        throws ResponseException {
+	public String getPatientListsByName(@RequestParam("q") String query,
+	        @RequestParam(value = "startIndex", required = false) Integer startIndex,
+	        @RequestParam(value = "limit", required = false) Integer limit, HttpServletRequest request,
+	        HttpServletResponse response) throws ResponseException {
 		initBillingController();
 		
 		Patient patient = Context.getPatientService().getPatientByUuid(query);
@@ -173,7 +180,12 @@ public class BillingController extends BaseRestController {
 			throw new ResponseException(
 			                            "Patient with given uuid not found") {};
 		}
-		List<Billing> getAllBillsByPatient = service.getAllBillsByPatient(patient.getId());
+		List<Billing> getAllBillsByPatient;
+		if (PagedResults.isPaged(startIndex, limit)) {
+			getAllBillsByPatient = service.getAllBillsByPatient(patient.getId(), startIndex, PagedResults.getLimit(limit));
+		} else {
+			getAllBillsByPatient = service.getAllBillsByPatient(patient.getId());
+		}
 		ArrayList results = new ArrayList();
 		for (Billing patientList : getAllBillsByPatient) {
 			SimpleObject obj = new SimpleObject();
@@ -188,7 +200,12 @@ public class BillingController extends BaseRestController {
 			
 			results.add(obj);
 		}
-		return gson.toJson(new SimpleObject().add("results", results));
+		SimpleObject obj = new SimpleObject().add("results", results);
+		if (PagedResults.isPaged(startIndex, limit)) {
+			PagedResults.addPaging(obj, response, startIndex, limit, getAllBillsByPatient.size(), service
+			        .getCountOfBillsByPatient(patient.getId()));
+		}
+		return gson.toJson(obj);
 	}
 	
 	/**
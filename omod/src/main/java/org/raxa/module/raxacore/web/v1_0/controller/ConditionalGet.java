@@ -0,0 +1,83 @@
+package org.raxa.module.raxacore.web.v1_0.controller;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * HTTP conditional GET for the raxacore controllers: sets the ETag and Last-Modified of the current
+ * version of a resource and answers 304 Not Modified when the client already has that version
+ */
+final class ConditionalGet {
+	
+	private ConditionalGet() {
+	}
+	
+	/**
+	 * Sets the validators of the resource on the response and checks them against If-None-Match, or
+	 * If-Modified-Since when the request has no If-None-Match. Clients are asked to revalidate on
+	 * every use, since the resources can change at any time.
+	 *
+	 * @param eTag quoted entity tag of the current version
+	 * @param lastModified time the resource last changed, in milliseconds
+	 * @return true if the response was set to 304 and no body should be written
+	 */
+	static boolean checkNotModified(HttpServletRequest request, HttpServletResponse response, String eTag,
+	        long lastModified) {
+		//HTTP dates only have whole seconds
+		long lastModifiedSeconds = lastModified / 1000 * 1000;
+		response.setHeader("ETag", eTag);
+		response.setDateHeader("Last-Modified", lastModifiedSeconds);
+		response.setHeader("Cache-Control", "no-cache");
+		boolean notModified;
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			notModified = matches(ifNoneMatch, eTag);
+		} else {
+			notModified = getIfModifiedSince(request) >= lastModifiedSeconds;
+		}
+		if (notModified) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		}
+		return notModified;
+	}
+	
+	private static boolean matches(String ifNoneMatch, String eTag) {
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals("*") || candidate.equals(eTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return the If-Modified-Since time, or -1 when it is missing or malformed
+	 */
+	private static long getIfModifiedSince(HttpServletRequest request) {
+		try {
+			return request.getDateHeader("If-Modified-Since");
+		}
+		catch (IllegalArgumentException e) {
+			return -1;
+		}
+	}
+}
@@ -18,7 +18,6 @@ package org.raxa.module.raxacore.web.v1_0.controller;
 import com.google.common.base.Joiner;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -31,8 +30,10 @@ import org.openmrs.module.webservices.rest.web.RestUtil;
 import org.openmrs.module.webservices.rest.web.annotation.WSDoc;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.raxa.module.raxacore.DrugCatalogVersion;
 import org.raxa.module.raxacore.DrugGroup;
 import org.raxa.module.raxacore.DrugGroupService;
+import org.raxa.module.raxacore.util.RaxaDateFormat;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -50,8 +51,6 @@ public class DrugGroupController extends BaseRestController {
 	
 	DrugGroupService service;
 	
-	SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-	
 	Gson gson = new GsonBuilder().serializeNulls().create();
 	
 	private static final String[] REF = { "uuid", "name", "description" };
@@ -129,7 +128,8 @@ public class DrugGroupController extends BaseRestController {
 	//</editor-fold>
 	//<editor-fold defaultstate="collapsed" desc="GET all">
 	/**
-	 * Get all the unretired drug groups (as REF representation) in the system
+	 * Get all the unretired drug groups (as REF representation) in the system. Answers 304 Not
+	 * Modified when the If-None-Match or If-Modified-Since header matches the drug catalog version.
 	 *
 	 * @param request
 	 * @param response
@@ -141,6 +141,10 @@ public class DrugGroupController extends BaseRestController {
 	@ResponseBody()
 	public String getAllDrugGroups(HttpServletRequest request, HttpServletResponse response) throws ResponseException {
 		initDrugGroupController();
+		if (ConditionalGet.checkNotModified(request, response, DrugCatalogVersion.getETag(), DrugCatalogVersion
+		        .getLastModified())) {
+			return null;
+		}
 		List<DrugGroup> allDrugGroup = service.getAllDrugGroup(false);
 		ArrayList results = new ArrayList();
 		for (DrugGroup drugGroup : allDrugGroup) {
@@ -255,10 +259,10 @@ public class DrugGroupController extends BaseRestController {
 			}
 			SimpleObject auditInfo = new SimpleObject();
 			auditInfo.add("creator", drugGroup.getCreator().getUuid());
-			auditInfo.add("dateCreated", df.format(drugGroup.getDateCreated()));
+			auditInfo.add("dateCreated", RaxaDateFormat.format(drugGroup.getDateCreated()));
 			if (drugGroup.getChangedBy() != null) {
 				auditInfo.add("changedBy", drugGroup.getChangedBy().getUuid());
-				auditInfo.add("dateChanged", df.format(drugGroup.getDateChanged()));
+				auditInfo.add("dateChanged", RaxaDateFormat.format(drugGroup.getDateChanged()));
 			}
 			obj.add("auditInfo", auditInfo);
 		}
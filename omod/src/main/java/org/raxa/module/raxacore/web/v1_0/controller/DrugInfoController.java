@@ -18,7 +18,6 @@ package org.raxa.module.raxacore.web.v1_0.controller;
 import com.google.common.base.Joiner;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -36,8 +35,10 @@ import org.openmrs.module.webservices.rest.web.annotation.WSDoc;
 import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.raxa.module.raxacore.DrugCatalogVersion;
 import org.raxa.module.raxacore.DrugInfo;
 import org.raxa.module.raxacore.DrugInfoService;
+import org.raxa.module.raxacore.util.RaxaDateFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -56,8 +57,6 @@ public class DrugInfoController extends BaseRestController {
 	
 	DrugInfoService service;
 	
-	SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-	
 	Gson gson = new GsonBuilder().serializeNulls().create();
 	
 	private static final String[] REF = { "uuid", "name", "description", "price", "cost" };
@@ -193,7 +192,8 @@ public class DrugInfoController extends BaseRestController {
 	}
 	
 	/**
-	 * Get all the unvoided drug info (as REF representation) in the system
+	 * Get all the unvoided drug info (as REF representation) in the system. Answers 304 Not Modified
+	 * when the If-None-Match or If-Modified-Since header matches the drug catalog version.
 	 *
 	 * @param request
 	 * @param response
@@ -205,6 +205,10 @@ public class DrugInfoController extends BaseRestController {
 	@ResponseBody()
 	public String getAllDrugInfo(HttpServletRequest request, HttpServletResponse response) throws ResponseException {
 		initDrugInfoController();
+		if (ConditionalGet.checkNotModified(request, response, DrugCatalogVersion.getETag(), DrugCatalogVersion
+		        .getLastModified())) {
+			return null;
+		}
 		List<DrugInfo> allDrugInfo = service.getAllDrugInfo(false);
 		ArrayList results = new ArrayList();
 		for (DrugInfo drugInfo : allDrugInfo) {
@@ -256,10 +260,10 @@ public class DrugInfoController extends BaseRestController {
 			}
 			SimpleObject auditInfo = new SimpleObject();
 			auditInfo.add("creator", drugInfo.getCreator().getUuid());
-			auditInfo.add("dateCreated", df.format(drugInfo.getDateCreated()));
+			auditInfo.add("dateCreated", RaxaDateFormat.format(drugInfo.getDateCreated()));
 			if (drugInfo.getChangedBy() != null) {
 				auditInfo.add("changedBy", drugInfo.getChangedBy().getUuid());
-				auditInfo.add("dateChanged", df.format(drugInfo.getDateChanged()));
+				auditInfo.add("dateChanged", RaxaDateFormat.format(drugInfo.getDateChanged()));
 			}
 			obj.add("auditInfo", auditInfo);
 		}
@@ -15,7 +15,6 @@ package org.raxa.module.raxacore.web.v1_0.controller;
 import com.google.common.base.Joiner;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -35,8 +34,10 @@ import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
 import org.raxa.module.raxacore.DrugInventory;
 import org.raxa.module.raxacore.DrugInventoryService;
+import org.raxa.module.raxacore.DrugStock;
 import org.raxa.module.raxacore.DrugPurchaseOrder;
 import org.raxa.module.raxacore.DrugPurchaseOrderService;
+import org.raxa.module.raxacore.util.RaxaDateFormat;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -58,6 +59,8 @@ public class DrugInventoryController extends BaseRestController {
 	
 	private static final String[] REF = { "uuid", "drugId", "quantity" };
 	
+	private static final long MILLISECONDS_PER_DAY = 24L * 60 * 60 * 1000;
+	
 	public void initDrugInventoryController() {
 		service = Context.getService(DrugInventoryService.class);
 	}
@@ -104,15 +107,9 @@ public class DrugInventoryController extends BaseRestController {
 			drugInventory.setOriginalQuantity(Integer.parseInt(post.get("originalQuantity").toString()));
 		}
 		if (post.get("expiryDate") != null) {
-			String[] supportedFormats = { "EEE MMM dd yyyy HH:mm:ss", "yyyy-MM-dd'T'HH:mm:ss.SSSZ",
-			        "yyyy-MM-dd'T'HH:mm:ss.SSS", "yyyy-MM-dd'T'HH:mm:ssZ", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd HH:mm:ss",
-			        "yyyy-MM-dd" };
-			for (int i = 0; i < supportedFormats.length; i++) {
-				try {
-					Date date = new SimpleDateFormat(supportedFormats[i]).parse(post.get("expiryDate").toString());
-					drugInventory.setExpiryDate(date);
-				}
-				catch (Exception ex) {}
+			Date date = RaxaDateFormat.parse(post.get("expiryDate").toString());
+			if (date != null) {
+				drugInventory.setExpiryDate(date);
 			}
 		}
 		if (post.get("batch") != null) {
@@ -250,17 +247,39 @@ public class DrugInventoryController extends BaseRestController {
 		return gson.toJson(obj);
 	}
 	
+	/**
+	 * Get all drug inventories in the system, or one page of them when startIndex or limit is given, with the total number of drug
+	 * inventories in the X-Total-Count header. When the page is full, nextStartIndex is the startIndex of the page after it.
+	 *
+	 * @param startIndex index of the first inventory, 0 by default
+	 * @param limit maximum number of inventories, 50 by default when startIndex is given
+	 * @param request
+	 * @param response
+	 * @return
+	 * @throws ResponseException
+	 */
 	@RequestMapping(method = RequestMethod.GET)
 	@WSDoc("Get All Unretired Drug Inventories in the system")
 	@ResponseBody()
-	public String getAllDrugInventories(HttpServletRequest request, HttpServletResponse response) throws ResponseException {
+	public String getAllDrugInventories(@RequestParam(value = "startIndex", required = false) Integer startIndex,
+	        @RequestParam(value = "limit", required = false) Integer limit, HttpServletRequest request,
+	        HttpServletResponse response) throws ResponseException {
 		initDrugInventoryController();
-		List<DrugInventory> allDIs = service.getAllDrugInventories();
+		List<DrugInventory> allDIs;
+		if (PagedResults.isPaged(startIndex, limit)) {
+			allDIs = service.getAllDrugInventories(startIndex, PagedResults.getLimit(limit));
+		} else {
+			allDIs = service.getAllDrugInventories();
+		}
 		ArrayList results = new ArrayList();
 		for (DrugInventory di : allDIs) {
 			results.add(getFieldsFromDrugInventory(di));
 		}
-		return gson.toJson(new SimpleObject().add("results", results));
+		SimpleObject obj = new SimpleObject().add("results", results);
+		if (PagedResults.isPaged(startIndex, limit)) {
+			PagedResults.addPaging(obj, response, startIndex, limit, allDIs.size(), service.getCountOfAllDrugInventories());
+		}
+		return gson.toJson(obj);
 	}
 	
 	/**
@@ -293,4 +312,98 @@ public class DrugInventoryController extends BaseRestController {
 		    location).getId());
 		return inventoryListToJson(dIs);
 	}
+	
+	/**
+	 * Fetch one page of the drug inventories of a location that expire within the given number of
+	 * days, including the ones that have expired already. When the page is full, nextStartIndex is
+	 * the startIndex of the page after it.
+	 *
+	 * @param location
+	 * @param days
+	 * @param startIndex index of the first inventory, 0 by default
+	 * @param limit maximum number of inventories, 50 by default
+	 * @param request
+	 * @return drug inventories expiring within days
+	 * @throws ResponseException
+	 */
+	@RequestMapping(value = "/expiring", method = RequestMethod.GET, params = { "location", "days" })
+	@WSDoc("Fetch non-retired inventories of a location expiring within the given number of days")
+	@ResponseBody()
+	public String searchExpiring(@RequestParam("location") String location, @RequestParam("days") Integer days,
+	        @RequestParam(value = "startIndex", required = false) Integer startIndex,
+	        @RequestParam(value = "limit", required = false) Integer limit, HttpServletRequest request)
+	        throws ResponseException {
+		initDrugInventoryController();
+		Location l = Context.getLocationService().getLocationByUuid(location);
+		if (l == null) {
+			throw new ResponseException(
+			                            "Location uuid not found") {};
+		}
+		int first = startIndex == null ? 0 : startIndex;
+		int pageSize = PagedResults.getLimit(limit);
+		Date expiryDate = new Date(System.currentTimeMillis() + days * MILLISECONDS_PER_DAY);
+		List<DrugInventory> dIs = service.getDrugInventoriesExpiringBefore(l.getId(), expiryDate, first, pageSize);
+		ArrayList results = new ArrayList();
+		for (DrugInventory di : dIs) {
+			results.add(getFieldsFromDrugInventory(di));
+		}
+		SimpleObject obj = new SimpleObject().add("results", results);
+		if (dIs.size() == pageSize) {
+			obj.add("nextStartIndex", first + pageSize);
+		}
+		return gson.toJson(obj);
+	}
+	
+	/**
+	 * Fetch the total stock of every drug in a location, or of a single drug if one is given
+	 *
+	 * @param location
+	 * @param drug uuid of the drug, optional
+	 * @param request
+	 * @return drug stocks for the given location
+	 * @throws ResponseException
+	 */
+	@RequestMapping(value = "/stock", method = RequestMethod.GET, params = "location")
+	@WSDoc("Fetch the total stock of drugs in a location")
+	@ResponseBody()
+	public String getDrugStocks(@RequestParam("location") String location,
+	        @RequestParam(value = "drug", required = false) String drug, HttpServletRequest request)
+	        throws ResponseException {
+		initDrugInventoryController();
+		Location l = Context.getLocationService().getLocationByUuid(location);
+		if (l == null) {
+			throw new ResponseException(
+			                            "Location uuid not found") {};
+		}
+		List<DrugStock> drugStocks = new ArrayList<DrugStock>();
+		if (drug != null) {
+			Drug d = Context.getConceptService().getDrugByUuid(drug);
+			if (d == null) {
+				throw new ResponseException(
+				                            "Drug uuid not found") {};
+			}
+			DrugStock drugStock = service.getDrugStock(d.getDrugId(), l.getId());
+			if (drugStock != null) {
+				drugStocks.add(drugStock);
+			}
+		} else {
+			drugStocks = service.getDrugStocksByLocation(l.getId());
+		}
+		ArrayList results = new ArrayList();
+		for (DrugStock drugStock : drugStocks) {
+			SimpleObject obj = new SimpleObject();
+			SimpleObject drugObj = new SimpleObject();
+			drugObj.add("uuid", drugStock.getDrug().getUuid());
+			drugObj.add("display", drugStock.getDrug().getName());
+			obj.add("drug", drugObj);
+			SimpleObject lObj = new SimpleObject();
+			lObj.add("uuid", drugStock.getLocation().getUuid());
+			lObj.add("display", drugStock.getLocation().getName());
+			obj.add("location", lObj);
+			obj.add("quantity", drugStock.getQuantity());
+			obj.add("earliestExpiryDate", drugStock.getEarliestExpiryDate());
+			results.add(obj);
+		}
+		return gson.toJson(new SimpleObject().add("results", results));
+	}
 }
@@ -6,12 +6,14 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.servlet.http.HttpServletRequest;
@@ -23,6 +25,7 @@ import org.openmrs.Drug;
 import org.openmrs.Location;
 
 import org.openmrs.Provider;
+import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.RestUtil;
@@ -30,9 +33,11 @@ import org.openmrs.module.webservices.rest.web.annotation.WSDoc;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
 import org.raxa.module.raxacore.DrugInventory;
+import org.raxa.module.raxacore.DrugInventoryMovement;
 import org.raxa.module.raxacore.DrugInventoryService;
 import org.raxa.module.raxacore.DrugPurchaseOrder;
 import org.raxa.module.raxacore.DrugPurchaseOrderService;
+import org.raxa.module.raxacore.util.RaxaDateFormat;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -161,14 +166,9 @@ public class DrugPurchaseOrderController extends BaseRestController {
 			purchaseOrder.setReceived(Boolean.parseBoolean(post.get("received").toString()));
 		}
 		if (post.get("drugPurchaseOrderDate") != null) {
-			String[] supportedFormats = { "yyyy-MM-dd'T'HH:mm:ss.SSSZ", "yyyy-MM-dd'T'HH:mm:ss.SSS",
-			        "yyyy-MM-dd'T'HH:mm:ssZ", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd" };
-			for (int i = 0; i < supportedFormats.length; i++) {
-				try {
-					Date date = new SimpleDateFormat(supportedFormats[i]).parse(post.get("expiryDate").toString());
-					purchaseOrder.setDrugPurchaseOrderDate(date);
-				}
-				catch (Exception ex) {}
+			Date date = RaxaDateFormat.parse(post.get("drugPurchaseOrderDate").toString());
+			if (date != null) {
+				purchaseOrder.setDrugPurchaseOrderDate(date);
 			}
 		}
 		if (post.get("provider") != null) {
@@ -190,62 +190,61 @@ public class DrugPurchaseOrderController extends BaseRestController {
 	}
 	
 	/**
-	 * Helper function to create drug inventories from drug purchase order
+	 * Helper function to create drug inventories from drug purchase order. All inventory uuids are
+	 * resolved with one query and the whole order is handed to DrugInventoryService as one batch of
+	 * stock movements. An inventory takes its quantity out of the batch given by "batchUuid", or if
+	 * "allocate" is true, out of the batches of the stock location that expire first.
 	 */
 	private void saveOrUpdateDrugInventories(SimpleObject post, DrugPurchaseOrder purchaseOrder) throws ResponseException {
 		if (post.get("inventories") != null) {
 			List<LinkedHashMap> inventoryObjects = (List<LinkedHashMap>) post.get("inventories");
+			DrugInventoryService inventoryService = Context.getService(DrugInventoryService.class);
 			//need to differentiate between inventories we are creating, and ones we are updating
-			List<DrugInventory> newInventories = new ArrayList();
-			List<DrugInventory> updateInventories = new ArrayList();
-			List<DrugInventory> updateBatches = new ArrayList();
+			Set<String> updateUuids = new HashSet<String>();
+			for (int i = 0; i < inventoryObjects.size(); i++) {
+				if (inventoryObjects.get(i).get("uuid") != null) {
+					updateUuids.add(inventoryObjects.get(i).get("uuid").toString());
+				}
+			}
+			Map<String, DrugInventory> updateInventories = inventoryService.getDrugInventoriesByUuids(updateUuids);
+			List<DrugInventoryMovement> movements = new ArrayList<DrugInventoryMovement>();
 			for (int i = 0; i < inventoryObjects.size(); i++) {
-				//whether or not current inventory is new or an update
-				boolean update = false;
 				DrugInventory di = new DrugInventory();
 				if (inventoryObjects.get(i).get("uuid") != null) {
-					System.out.println("getting existing uuid");
-					di = Context.getService(DrugInventoryService.class).getDrugInventoryByUuid(
-					    inventoryObjects.get(i).get("uuid").toString());
-					update = true;
+					di = updateInventories.get(inventoryObjects.get(i).get("uuid").toString());
+					if (di == null) {
+						throw new ResponseException(
+						                            "Drug inventory uuid not found") {};
+					}
 				}
 				setDrugInventoryFields(di, inventoryObjects.get(i));
 				di.setDrugPurchaseOrder(purchaseOrder);
 				di.setDrugPurchaseOrderId(purchaseOrder.getId());
 				if (inventoryObjects.get(i).get("batchUuid") != null) {
-					DrugInventory batchDrugInv = Context.getService(DrugInventoryService.class).getDrugInventoryByUuid(
-					    inventoryObjects.get(i).get("batchUuid").toString());
-					if (batchDrugInv == null) {
+					movements.add(new DrugInventoryMovement(di, inventoryObjects.get(i).get("batchUuid").toString()));
+				} else if (inventoryObjects.get(i).get("allocate") != null
+				        && Boolean.parseBoolean(inventoryObjects.get(i).get("allocate").toString())) {
+					//let the server pick the batches, first expiry first out, from the order's stock location
+					Integer locationId = purchaseOrder.getStockLocationId() != null ? purchaseOrder.getStockLocationId()
+					        : di.getLocationId();
+					if (locationId == null) {
 						throw new ResponseException(
-						                            "Batch uuid not found") {};
+						                            "Location is required to allocate batches") {};
 					}
-					if (batchDrugInv.getQuantity() < di.getQuantity()) {
-						throw new ResponseException(
-						                            "Requested quantity cannot exceed batch quantity") {};
-					}
-					batchDrugInv.setQuantity(batchDrugInv.getQuantity() - di.getQuantity());
-					if (batchDrugInv.getQuantity() == 0)
-						batchDrugInv.setStatus("out");
-					updateBatches.add(batchDrugInv);
-				}
-				if (update) {
-					updateInventories.add(di);
+					movements.add(DrugInventoryMovement.allocate(di, locationId));
 				} else {
-					newInventories.add(di);
+					movements.add(new DrugInventoryMovement(di, null));
 				}
 			}
-			if (!purchaseOrder.getName().equals(DrugPurchaseOrder.PRESCRIPTIONNAME)) {
-				for (int n = 0; n < newInventories.size(); n++) {
-					Context.getService(DrugInventoryService.class).saveDrugInventory(newInventories.get(n));
-				}
-				for (int n = 0; n < updateInventories.size(); n++) {
-					Context.getService(DrugInventoryService.class).updateDrugInventory(updateInventories.get(n));
-				}
+			try {
+				//prescriptions only take stock out of their batches
+				inventoryService.saveDrugInventoryMovements(movements, !purchaseOrder.getName().equals(
+				    DrugPurchaseOrder.PRESCRIPTIONNAME));
 			}
-			for (int n = 0; n < updateBatches.size(); n++) {
-				Context.getService(DrugInventoryService.class).updateDrugInventory(updateBatches.get(n));
+			catch (APIException ex) {
+				throw new ResponseException(
+				                            ex.getMessage()) {};
 			}
-			
 		}
 	}
 	
@@ -276,18 +275,8 @@ public class DrugPurchaseOrderController extends BaseRestController {
 			drugInventory.setOriginalQuantity(Integer.parseInt(postFields.get("originalQuantity").toString()));
 		}
 		if (postFields.get("expiryDate") != null) {
-			Date date = null;
-			String[] supportedFormats = { "EEE MMM dd yyyy HH:mm:ss z (zzzz)", "EEE MMM dd yyyy HH:mm:ss z (zzzz)",
-			        "MMM dd, yyyy HH:mm:ss a", "EEE MMM dd yyyy HH:mm:ss", "yyyy-MM-dd'T'HH:mm:ss.SSSZ",
-			        "yyyy-MM-dd'T'HH:mm:ss.SSS", "yyyy-MM-dd'T'HH:mm:ssZ", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd HH:mm:ss",
-			        "yyyy-MM-dd" };
-			for (int i = 0; i < supportedFormats.length; i++) {
-				try {
-					date = new SimpleDateFormat(supportedFormats[i]).parse(postFields.get("expiryDate").toString());
-					drugInventory.setExpiryDate(date);
-				}
-				catch (Exception ex) {}
-			}
+			Date date = RaxaDateFormat.parse(postFields.get("expiryDate").toString());
+			drugInventory.setExpiryDate(date);
 			if (date == null) {
 				throw new ResponseException(
 				                            "Invalid date " + postFields.get("expiryDate")) {};
@@ -338,14 +327,32 @@ public class DrugPurchaseOrderController extends BaseRestController {
 		}
 	}
 	
+	/**
+	 * Get all drug purchase orders in the system, or one page of them when startIndex or limit is given, with the total
+	 * number of drug purchase orders in the X-Total-Count header. When the page is full, nextStartIndex is the startIndex
+	 * of the page after it.
+	 *
+	 * @param startIndex index of the first purchase order, 0 by default
+	 * @param limit maximum number of purchase orders, 50 by default when startIndex is given
+	 * @param request
+	 * @param response
+	 * @return
+	 * @throws ResponseException
+	 */
 	@RequestMapping(method = RequestMethod.GET)
 	@WSDoc("Get All Unretired Drug Purchase Orders in the system")
 	@ResponseBody()
-	public String getAllDrugPurchaseOrders(HttpServletRequest request, HttpServletResponse response)
-	        throws ResponseException {
+	public String getAllDrugPurchaseOrders(@RequestParam(value = "startIndex", required = false) Integer startIndex,
+	        @RequestParam(value = "limit", required = false) Integer limit, HttpServletRequest request,
+	        HttpServletResponse response) throws ResponseException {
 		initDrugPurchaseOrderController();
-		List<DrugPurchaseOrder> allDPOs = service.getAllDrugPurchaseOrders();
-		return purchaseOrderListToJson(allDPOs);
+		if (!PagedResults.isPaged(startIndex, limit)) {
+			return purchaseOrderListToJson(service.getAllDrugPurchaseOrders());
+		}
+		List<DrugPurchaseOrder> dPOs = service.getAllDrugPurchaseOrders(startIndex, PagedResults.getLimit(limit));
+		SimpleObject obj = purchaseOrderListToResults(dPOs);
+		PagedResults.addPaging(obj, response, startIndex, limit, dPOs.size(), service.getCountOfAllDrugPurchaseOrders());
+		return gson.toJson(obj);
 	}
 	
 	/**
@@ -372,11 +379,18 @@ public class DrugPurchaseOrderController extends BaseRestController {
 	 * Helper function that parses a list of Inventories, returns a JSon
 	 */
 	private String purchaseOrderListToJson(List<DrugPurchaseOrder> drugPurchaseOrders) {
+		return gson.toJson(purchaseOrderListToResults(drugPurchaseOrders));
+	}
+	
+	/**
+	 * Helper function that parses a list of Drug Purchase Orders, returns the results as a SimpleObject
+	 */
+	private SimpleObject purchaseOrderListToResults(List<DrugPurchaseOrder> drugPurchaseOrders) {
 		ArrayList results = new ArrayList();
 		for (DrugPurchaseOrder dpo : drugPurchaseOrders) {
 			results.add(getFieldsFromDrugPurchaseOrder(dpo));
 		}
-		return gson.toJson(new SimpleObject().add("results", results));
+		return new SimpleObject().add("results", results);
 	}
 	
 	/**
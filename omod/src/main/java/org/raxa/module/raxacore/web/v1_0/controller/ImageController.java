@@ -15,6 +15,12 @@ package org.raxa.module.raxacore.web.v1_0.controller;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.apache.commons.codec.binary.Base64;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -35,6 +41,7 @@ import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestUtil;
 import org.openmrs.module.webservices.rest.web.annotation.WSDoc;
+import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseCrudController;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
@@ -63,6 +70,8 @@ public class ImageController {
 	
 	private static final String DATAURI_PREFIX = "data:image/";
 	
+	private static final String IMAGE_MIME_PREFIX = "image/";
+	
 	private static final String DATAURI_ENCODING = ";base64";
 	
 	/**
@@ -95,13 +104,219 @@ public class ImageController {
 	}
 	
 	/**
-	 * Helper function to set fields from a POST call
+	 * Create new Image from the raw bytes in the request body, which are streamed to disk. The image type comes from
+	 * the Content-Type header, e.g. image/jpeg
+	 *
+	 * @param patient uuid of the patient
+	 * @param provider uuid of the provider
+	 * @param location uuid of the location
+	 * @param tags
+	 * @param request
+	 * @param response
+	 * @return 201 response status and the uuid and fileName of the Image
+	 * @throws ResponseException
+	 * @throws IOException
+	 */
+	@RequestMapping(value = "/data", method = RequestMethod.POST)
+	@WSDoc("Save New Image from the raw image bytes")
+	@ResponseBody
+	public Object createNewImageFromData(@RequestParam(value = "patient", required = false) String patient,
+	        @RequestParam(value = "provider", required = false) String provider,
+	        @RequestParam(value = "location", required = false) String location,
+	        @RequestParam(value = "tags", required = false) String tags, HttpServletRequest request,
+	        HttpServletResponse response) throws ResponseException, IOException {
+		initImageController();
+		Image image = new Image();
+		SimpleObject fields = new SimpleObject();
+		fields.add("patient", patient);
+		fields.add("provider", provider);
+		fields.add("location", location);
+		fields.add("tags", tags);
+		setPostFields(image, fields);
+		image.setFileName(getImageType(request));
+		Image created = service.saveImage(image, request.getInputStream());
+		SimpleObject obj = new SimpleObject();
+		obj.add("uuid", created.getUuid());
+		obj.add("fileName", created.getFileName());
+		return RestUtil.created(response, obj);
+	}
+	
+	/**
+	 * Replaces the bytes of an existing Image with the raw request body, which is streamed to disk
+	 *
+	 * @param uuid the uuid for the image resource
+	 * @param request
+	 * @param response
+	 * @return 204 response status
+	 * @throws ResponseException
+	 * @throws IOException
+	 */
+	@RequestMapping(value = "/{uuid}/data", method = RequestMethod.POST)
+	@WSDoc("Replaces the bytes of an existing image")
+	@ResponseBody
+	public Object updateImageData(@PathVariable("uuid") String uuid, HttpServletRequest request,
+	        HttpServletResponse response) throws ResponseException, IOException {
+		initImageController();
+		String imageType = getImageType(request);
+		Image image = service.getImageMetadataByUuid(uuid);
+		if (image == null) {
+			throw new ObjectNotFoundException();
+		}
+		image.setFileName(imageType);
+		service.saveImage(image, request.getInputStream());
+		return RestUtil.noContent(response);
+	}
+	
+	/**
+	 * Streams the bytes of the Image with the given uuid, with its Content-Type and Content-Length. Answers 304 Not
+	 * Modified when the client already has this version of the image.
+	 *
+	 * @param uuid the uuid for the image resource
+	 * @param size rendition to return, e.g. thumbnail or medium, the original by default
+	 * @param request
+	 * @param response
+	 * @throws ResponseException
+	 * @throws IOException
+	 */
+	@RequestMapping(value = "/{uuid}/data", method = RequestMethod.GET)
+	@WSDoc("Gets the bytes of the Image for the given uuid")
+	public void getImageData(@PathVariable("uuid") String uuid,
+	        @RequestParam(value = "size", required = false) String size, HttpServletRequest request,
+	        HttpServletResponse response) throws ResponseException, IOException {
+		initImageController();
+		Image image = service.getImageMetadataByUuid(uuid);
+		if (image == null) {
+			throw new ObjectNotFoundException();
+		}
+		if (isNotModified(image, size, request, response)) {
+			return;
+		}
+		File file = new File(service.getPath(image, size));
+		if (!file.isFile()) {
+			throw new ObjectNotFoundException();
+		}
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			FileChannel channel = fis.getChannel();
+			long length = channel.size();
+			response.setContentType(getContentType(file.getName()));
+			response.setHeader("Content-Length", String.valueOf(length));
+			WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+			long position = 0;
+			while (position < length) {
+				position += channel.transferTo(position, length - position, out);
+			}
+			response.flushBuffer();
+		}
+		finally {
+			fis.close();
+		}
+	}
+	
+	/**
+	 * Moves the files of images saved flat in the image directory into the sharded image store, one batch per
+	 * transaction
+	 *
+	 * @param limit number of images per batch, 50 by default
+	 * @param request
+	 * @param response
+	 * @return the number of images left outside the store, whose files are missing
+	 * @throws ResponseException
+	 */
+	@RequestMapping(value = "/migrate", method = RequestMethod.POST)
+	@WSDoc("Moves the files of existing images into the sharded image store")
+	@ResponseBody
+	public String migrateImagesToStore(@RequestParam(value = "limit", required = false) Integer limit,
+	        HttpServletRequest request, HttpServletResponse response) throws ResponseException {
+		initImageController();
+		int batchSize = PagedResults.getLimit(limit);
+		Integer lastId = service.migrateImagesToStore(null, batchSize);
+		while (lastId != null) {
+			lastId = service.migrateImagesToStore(lastId, batchSize);
+		}
+		return gson.toJson(new SimpleObject().add("remaining", service.getCountOfImagesNotInStore()));
+	}
+	
+	/**
+	 * Get the hit rate and size of the image cache
+	 *
+	 * @param request
+	 * @return hits, misses, hitRate, evictions, entries, bytes, maxBytes and offHeap
+	 * @throws ResponseException
+	 */
+	@RequestMapping(value = "/cache", method = RequestMethod.GET)
+	@WSDoc("Gets the statistics of the image cache")
+	@ResponseBody()
+	public String getImageCacheStatistics(HttpServletRequest request) throws ResponseException {
+		initImageController();
+		return gson.toJson(service.getImageCacheStatistics());
+	}
+	
+	/**
+	 * Helper function that checks the conditional GET headers against the image. Images only change when they are
+	 * saved, so the uuid, dateChanged and the requested size identify the version.
+	 *
+	 * @return true if the response was set to 304 Not Modified
+	 */
+	private boolean isNotModified(Image image, String size, HttpServletRequest request, HttpServletResponse response) {
+		Date changed = image.getDateChanged() != null ? image.getDateChanged() : image.getDateCreated();
+		long lastModified = changed == null ? 0 : changed.getTime();
+		String eTag = "\"" + image.getUuid() + "-" + lastModified + "-" + (size == null ? "original" : size) + "\"";
+		return ConditionalGet.checkNotModified(request, response, eTag, lastModified);
+	}
+	
+	/**
+	 * Helper function that returns the image type of a raw image request
+	 *
+	 * @throws ResponseException if the Content-Type is not a supported image type
+	 */
+	private String getImageType(HttpServletRequest request) throws ResponseException {
+		String contentType = request.getContentType();
+		if (contentType != null && contentType.startsWith(IMAGE_MIME_PREFIX)) {
+			String imageType = contentType.substring(IMAGE_MIME_PREFIX.length()).split(";")[0].trim();
+			for (int k = 0; k < SUPPORTED_MIME_TYPES.length; k++) {
+				if (imageType.equals(SUPPORTED_MIME_TYPES[k])) {
+					return imageType;
+				}
+			}
+		}
+		throw new ResponseException(
+		                            "Content-Type must be image/png, image/jpeg, image/tiff or image/gif") {};
+	}
+	
+	/**
+	 * Helper function that returns the Content-Type for an image file name
+	 */
+	private String getContentType(String fileName) {
+		String[] fileNameParts = fileName.split("\\.");
+		String imageType = fileNameParts[fileNameParts.length - 1].toLowerCase();
+		if (imageType.equals("jpg")) {
+			imageType = "jpeg";
+		} else if (imageType.equals("tif")) {
+			imageType = "tiff";
+		}
+		return IMAGE_MIME_PREFIX + imageType;
+	}
+	
+	/**
+	 * Helper function to set fields from a POST call and save the image
 	 *
 	 * @param image our Image to change
 	 * @param post our REST call
 	 * @return the changed image
 	 */
 	private Image createUsingPostFields(Image image, SimpleObject post) {
+		setPostFields(image, post);
+		return service.saveImage(image);
+	}
+	
+	/**
+	 * Helper function to set fields from a POST call
+	 *
+	 * @param image our Image to change
+	 * @param post our REST call
+	 */
+	private void setPostFields(Image image, SimpleObject post) {
 		if (post.get("provider") != null) {
 			Provider p = Context.getProviderService().getProviderByUuid(post.get("provider").toString());
 			image.setProviderId(p.getId());
@@ -158,8 +373,6 @@ public class ImageController {
 		if (post.get("tags") != null) {
 			image.setTags(post.get("tags").toString());
 		}
-		image = service.saveImage(image);
-		return image;
 	}
 	
 	/**
@@ -199,17 +412,40 @@ public class ImageController {
 		return obj;
 	}
 	
+	/**
+	 * Get all images in the system, or one page of them when startIndex or limit is given, with the total
+	 * number of images in the X-Total-Count header. When the page is full, nextStartIndex is the startIndex
+	 * of the page after it.
+	 *
+	 * @param startIndex index of the first image, 0 by default
+	 * @param limit maximum number of images, 50 by default when startIndex is given
+	 * @param request
+	 * @param response
+	 * @return
+	 * @throws ResponseException
+	 */
 	@RequestMapping(method = RequestMethod.GET)
 	@WSDoc("Get All Unretired Images in the system")
 	@ResponseBody()
-	public String getAllImages(HttpServletRequest request, HttpServletResponse response) throws ResponseException {
+	public String getAllImages(@RequestParam(value = "startIndex", required = false) Integer startIndex,
+	        @RequestParam(value = "limit", required = false) Integer limit, HttpServletRequest request,
+	        HttpServletResponse response) throws ResponseException {
 		initImageController();
-		List<Image> allImage = service.getAllImages();
+		List<Image> allImage;
+		if (PagedResults.isPaged(startIndex, limit)) {
+			allImage = service.getAllImages(startIndex, PagedResults.getLimit(limit));
+		} else {
+			allImage = service.getAllImages();
+		}
 		ArrayList results = new ArrayList();
 		for (Image image : allImage) {
 			results.add(getFieldsFromImage(image));
 		}
-		return gson.toJson(new SimpleObject().add("results", results));
+		SimpleObject obj = new SimpleObject().add("results", results);
+		if (PagedResults.isPaged(startIndex, limit)) {
+			PagedResults.addPaging(obj, response, startIndex, limit, allImage.size(), service.getCountOfAllImages());
+		}
+		return gson.toJson(obj);
 	}
 	
 	/**
@@ -270,18 +506,23 @@ public class ImageController {
 	 *
 	 * @param patient
 	 * @param tag
+	 * @param size rendition to return, e.g. thumbnail or medium, the original by default
 	 * @param request
 	 * @param response
-	 * @return images for the given location
+	 * @return the latest image, or 304 Not Modified when the client already has this version of it
 	 * @throws ResponseException
 	 */
 	@RequestMapping(method = RequestMethod.GET, params = { "patient", "tag" })
 	@WSDoc("Fetch latest image according to patient and tag")
 	@ResponseBody()
 	public String searchLatestForPatientByTag(@RequestParam("patient") String patient, @RequestParam("tag") String tag,
-	        HttpServletRequest request) throws ResponseException {
+	        @RequestParam(value = "size", required = false) String size, HttpServletRequest request,
+	        HttpServletResponse response) throws ResponseException {
 		initImageController();
-		Image image = service.getLatestImageByTagForPatient(tag, patient);
+		Image image = service.getLatestImageByTagForPatient(tag, patient, size);
+		if (isNotModified(image, size, request, response)) {
+			return null;
+		}
 		return gson.toJson(getFieldsFromImage(image));
 	}
 	
@@ -324,16 +565,24 @@ public class ImageController {
 	/**
 	 * Get the Image by uuid
 	 * @param uuid
+	 * @param size rendition to return, e.g. thumbnail or medium, the original by default
 	 * @param request
-	 * @return response string
+	 * @param response
+	 * @return response string, or 304 Not Modified when the client already has this version of the image
 	 * @throws ResponseException 
 	 */
 	@RequestMapping(value = "/{uuid}", method = RequestMethod.GET)
 	@WSDoc("Gets Image for the given uuid")
 	@ResponseBody()
-	public String getImageByUuid(@PathVariable("uuid") String uuid, HttpServletRequest request) throws ResponseException {
+	public String getImageByUuid(@PathVariable("uuid") String uuid,
+	        @RequestParam(value = "size", required = false) String size, HttpServletRequest request,
+	        HttpServletResponse response) throws ResponseException {
 		initImageController();
-		Image image = service.getImageByUuid(uuid);
+		//cached images are served without the database, so the version is checked on the image itself
+		Image image = service.getImageByUuid(uuid, size);
+		if (isNotModified(image, size, request, response)) {
+			return null;
+		}
 		return gson.toJson(getFieldsFromImage(image));
 	}
 	
@@ -0,0 +1,73 @@
+package org.raxa.module.raxacore.web.v1_0.controller;
+
+/**
+ * Copyright 2012, Raxa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+import javax.servlet.http.HttpServletResponse;
+
+import org.openmrs.module.webservices.rest.SimpleObject;
+
+/**
+ * Paging for the list endpoints of the raxacore controllers. A list is returned whole unless the
+ * client passes startIndex or limit; a page then has the total number of results in the
+ * X-Total-Count header and, when it is full, the startIndex of the next page in nextStartIndex.
+ */
+final class PagedResults {
+	
+	/**
+	 * Size of a page when the client gives a startIndex but no limit
+	 */
+	static final int DEFAULT_LIMIT = 50;
+	
+	/**
+	 * Largest page a client can ask for, so that a large limit cannot load a whole table
+	 */
+	static final int MAX_LIMIT = 500;
+	
+	static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+	
+	private PagedResults() {
+	}
+	
+	/**
+	 * @return true if the client asked for a page rather than the whole list
+	 */
+	static boolean isPaged(Integer startIndex, Integer limit) {
+		return startIndex != null || limit != null;
+	}
+	
+	/**
+	 * @return the requested limit capped at MAX_LIMIT, or DEFAULT_LIMIT when there is none
+	 */
+	static int getLimit(Integer limit) {
+		return limit == null ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+	}
+	
+	/**
+	 * Sets the total count header and adds nextStartIndex to the results when the page is full
+	 *
+	 * @param obj the results of the page
+	 * @param size number of results in the page
+	 * @param totalCount number of results in the whole list
+	 */
+	static void addPaging(SimpleObject obj, HttpServletResponse response, Integer startIndex, Integer limit, int size,
+	        Integer totalCount) {
+		response.setHeader(TOTAL_COUNT_HEADER, String.valueOf(totalCount));
+		int pageSize = getLimit(limit);
+		if (size == pageSize) {
+			obj.add("nextStartIndex", (startIndex == null ? 0 : startIndex) + pageSize);
+		}
+	}
+}
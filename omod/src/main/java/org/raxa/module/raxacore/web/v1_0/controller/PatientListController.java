@@ -18,8 +18,12 @@ package org.raxa.module.raxacore.web.v1_0.controller;
 import com.google.common.base.Joiner;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import java.text.SimpleDateFormat;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -28,6 +32,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.openmrs.Encounter;
 import org.openmrs.Obs;
 import org.openmrs.Patient;
+import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.RestUtil;
@@ -35,7 +40,12 @@ import org.openmrs.module.webservices.rest.web.annotation.WSDoc;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
 import org.raxa.module.raxacore.PatientList;
+import org.raxa.module.raxacore.PatientListCursor;
+import org.raxa.module.raxacore.PatientListEncounterRow;
+import org.raxa.module.raxacore.PatientListObsRow;
+import org.raxa.module.raxacore.PatientListQueryPlan;
 import org.raxa.module.raxacore.PatientListService;
+import org.raxa.module.raxacore.util.RaxaDateFormat;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -53,8 +63,6 @@ public class PatientListController extends BaseRestController {
 	
 	PatientListService service;
 	
-	SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-	
 	Gson gson = new GsonBuilder().serializeNulls().create();
 	
 	private static final String[] REF = { "uuid", "name", "description" };
@@ -73,6 +81,29 @@ public class PatientListController extends BaseRestController {
 	
 	//</editor-fold>
 	
+	//<editor-fold defaultstate="collapsed" desc="groupEncountersByPatient">
+	/**
+	 * Groups the encounters of an evaluated patient list by patient, keeping patients in the order
+	 * their first encounter appears so a list only has to be evaluated once per request
+	 * 
+	 * @param encounters
+	 * @return map of patient to that patient's encounters
+	 */
+	private Map<Patient, List<Encounter>> groupEncountersByPatient(List<Encounter> encounters) {
+		Map<Patient, List<Encounter>> encountersByPatient = new LinkedHashMap<Patient, List<Encounter>>();
+		for (Encounter e : encounters) {
+			List<Encounter> patientEncounters = encountersByPatient.get(e.getPatient());
+			if (patientEncounters == null) {
+				patientEncounters = new ArrayList<Encounter>();
+				encountersByPatient.put(e.getPatient(), patientEncounters);
+			}
+			patientEncounters.add(e);
+		}
+		return encountersByPatient;
+	}
+	
+	//</editor-fold>
+	
 	//<editor-fold defaultstate="collapsed" desc="POST - Without Params">
 	/**
 	 * Create new patient list by POST'ing atleast name and description property
@@ -96,6 +127,9 @@ public class PatientListController extends BaseRestController {
 		if (post.get("searchQuery") != null) {
 			patientList.setSearchQuery(post.get("searchQuery").toString());
 		}
+		if (post.get("materialized") != null) {
+			patientList.setMaterialized(Boolean.valueOf(post.get("materialized").toString()));
+		}
 		PatientList created = service.savePatientList(patientList);
 		SimpleObject obj = new SimpleObject();
 		obj.add("uuid", created.getUuid());
@@ -130,6 +164,9 @@ public class PatientListController extends BaseRestController {
 		if (post.get("searchQuery") != null) {
 			patientList.setSearchQuery(post.get("searchQuery").toString());
 		}
+		if (post.get("materialized") != null) {
+			patientList.setMaterialized(Boolean.valueOf(post.get("materialized").toString()));
+		}
 		PatientList created = service.updatePatientList(patientList);
 		SimpleObject obj = new SimpleObject();
 		obj.add("uuid", created.getUuid());
@@ -201,61 +238,109 @@ public class PatientListController extends BaseRestController {
 	/**
 	 * Get the Patientlist along with patients, encounters and obs (DEFAULT rep).
 	 * Contains all encounters of the searched encounterType between the startDate
-	 * and endDate
+	 * and endDate. The JSON is streamed onto the response as each patient is written.
+	 * Pass limit to get one page of encounters, and the returned nextCursor as cursor
+	 * to get the page after it
 	 * 
 	 * @param uuid
+	 * @param cursor
+	 * @param limit
 	 * @param request
-	 * @return
-	 * @throws ResponseException 
+	 * @param response
+	 * @throws ResponseException
+	 * @throws IOException 
 	 */
 	@RequestMapping(value = "/{uuid}", method = RequestMethod.GET)
 	@WSDoc("Gets Patient Lists for the uuid path")
-	@ResponseBody()
-	public String getAllPatientListByUuid(@PathVariable("uuid") String uuid, HttpServletRequest request)
-	        throws ResponseException {
+	public void getAllPatientListByUuid(@PathVariable("uuid") String uuid,
+	        @RequestParam(value = "cursor", required = false) String cursor,
+	        @RequestParam(value = "limit", required = false) Integer limit, HttpServletRequest request,
+	        HttpServletResponse response) throws ResponseException, IOException {
 		initPatientListController();
 		PatientList patientList = service.getPatientListByUuid(uuid);
-		SimpleObject obj = new SimpleObject();
-		obj.add("uuid", patientList.getUuid());
-		obj.add("name", patientList.getName());
-		obj.add("description", patientList.getDescription());
-		ArrayList patients = new ArrayList();
-		List<Patient> patientsInPatientList = service.getPatientsInPatientList(patientList);
-		for (Patient p : patientsInPatientList) {
-			SimpleObject patient = new SimpleObject();
-			patient.add("uuid", p.getUuid());
-			patient.add("display", p.getPersonName().getFullName());
-			patient.add("gender", p.getGender());
-			patient.add("age", p.getAge());
-			ArrayList encounters = new ArrayList();
-			List<Encounter> encountersInPatientList = service.getEncountersInPatientList(patientList);
-			for (Encounter e : encountersInPatientList) {
-				if (e.getPatient().equals(p)) {
-					SimpleObject encounter = new SimpleObject();
-					encounter.add("uuid", e.getUuid());
-					encounter.add("display", e.getEncounterType().getName() + " - " + e.getEncounterDatetime());
-					encounter.add("encounterType", e.getEncounterType().getUuid());
-					encounter.add("encounterDatetime", df.format(e.getEncounterDatetime()));
-					ArrayList obsArray = new ArrayList();
-					Set<Obs> obsAll = e.getObs();
-					for (Obs o : obsAll) {
-						SimpleObject obs = new SimpleObject();
-						obs.add("uuid", o.getUuid());
-						obs.add("display", o.getConcept().getName().getName() + " = "
-						        + o.getValueAsString(request.getLocale()));
-						obs.add("obsDatetime", df.format(o.getObsDatetime()));
-						obs.add("value", o.getValueAsString(request.getLocale()));
-						obsArray.add(obs);
-					}
-					encounter.add("obs", obsArray);
-					encounters.add(encounter);
+		//the page is read before the response is opened, so a failing query still gets an error status
+		List<PatientListEncounterRow> page = service.getEncounterRowsInPatientList(patientList, getCursor(cursor), limit);
+		JsonWriter writer = createJsonWriter(response);
+		writeDefaultPatientList(writer, patientList, page, limit, request);
+		writer.flush();
+	}
+	
+	/**
+	 * Renders the DEFAULT rep of the Patientlist as a String
+	 * 
+	 * @see #getAllPatientListByUuid(String, String, Integer, HttpServletRequest, HttpServletResponse)
+	 */
+	public String getAllPatientListByUuid(String uuid, HttpServletRequest request) throws ResponseException {
+		initPatientListController();
+		PatientList patientList = service.getPatientListByUuid(uuid);
+		List<PatientListEncounterRow> page = service.getEncounterRowsInPatientList(patientList, null, null);
+		StringWriter out = new StringWriter();
+		try {
+			writeDefaultPatientList(createJsonWriter(out), patientList, page, null, request);
+		}
+		catch (IOException ex) {
+			throw new APIException("Unable to render patient list", ex);
+		}
+		return out.toString();
+	}
+	
+	/**
+	 * Writes the DEFAULT rep of the Patientlist with its already read page of encounter rows.
+	 * The DEFAULT rep only needs a few fields, so it is read as projected rows rather than entities
+	 */
+	private void writeDefaultPatientList(JsonWriter writer, PatientList patientList, List<PatientListEncounterRow> page,
+	        Integer limit, HttpServletRequest request) throws IOException {
+		writer.beginObject();
+		writer.name("uuid").value(patientList.getUuid());
+		writer.name("name").value(patientList.getName());
+		writer.name("description").value(patientList.getDescription());
+		writer.name("patients").beginArray();
+		Map<Integer, List<PatientListEncounterRow>> rowsByPatient = new LinkedHashMap<Integer, List<PatientListEncounterRow>>();
+		for (PatientListEncounterRow row : page) {
+			List<PatientListEncounterRow> patientRows = rowsByPatient.get(row.getPatientId());
+			if (patientRows == null) {
+				patientRows = new ArrayList<PatientListEncounterRow>();
+				rowsByPatient.put(row.getPatientId(), patientRows);
+			}
+			patientRows.add(row);
+		}
+		for (List<PatientListEncounterRow> patientRows : rowsByPatient.values()) {
+			PatientListEncounterRow first = patientRows.get(0);
+			writer.beginObject();
+			writer.name("uuid").value(first.getPatientUuid());
+			writer.name("display").value(first.getPatientName());
+			writer.name("gender").value(first.getGender());
+			writer.name("age").value(first.getAge());
+			writer.name("encounters").beginArray();
+			for (PatientListEncounterRow row : patientRows) {
+				writer.beginObject();
+				writer.name("uuid").value(row.getEncounterUuid());
+				writer.name("display").value(row.getEncounterTypeName() + " - " + row.getEncounterDatetime());
+				writer.name("encounterType").value(row.getEncounterTypeUuid());
+				writer.name("encounterDatetime").value(RaxaDateFormat.format(row.getEncounterDatetime()));
+				writer.name("obs").beginArray();
+				for (PatientListObsRow o : row.getObs()) {
+					writer.beginObject();
+					writer.name("uuid").value(o.getUuid());
+					writer.name("display").value(o.getConceptName() + " = " + o.getValueAsString(request.getLocale()));
+					writer.name("obsDatetime").value(RaxaDateFormat.format(o.getObsDatetime()));
+					writer.name("value").value(o.getValueAsString(request.getLocale()));
+					writer.endObject();
 				}
+				writer.endArray();
+				writer.endObject();
 			}
-			patient.add("encounters", encounters);
-			patients.add(patient);
+			writer.endArray();
+			writer.endObject();
+		}
+		writer.endArray();
+		if (limit != null) {
+			PatientListEncounterRow last = page.isEmpty() ? null : page.get(page.size() - 1);
+			writer.name("nextCursor").value(
+			    page.size() == limit ? new PatientListCursor(last.getEncounterDatetime(), last.getEncounterId()).toString()
+			            : null);
 		}
-		obj.add("patients", patients);
-		return gson.toJson(obj);
+		writer.endObject();
 	}
 	
 	//</editor-fold>
@@ -265,90 +350,98 @@ public class PatientListController extends BaseRestController {
 	 * Get the patient list as FULL representation that shows patients, encounters and obs.
 	 * Contains all encounters of the searched encounterType between the startDate
 	 * and endDate. Contains patientList.searchQuery, encounter.provider and obs.comment
-	 * and obs.order compared to DEFAULT rep
+	 * and obs.order compared to DEFAULT rep. The JSON is streamed onto the response.
+	 * Pass limit to get one page of encounters, and the returned nextCursor as cursor
+	 * to get the page after it
 	 * 
 	 * @param uuid
 	 * @param rep
+	 * @param cursor
+	 * @param limit
 	 * @param request
-	 * @return
-	 * @throws ResponseException 
+	 * @param response
+	 * @throws ResponseException
+	 * @throws IOException 
 	 */
 	@RequestMapping(value = "/{uuid}", method = RequestMethod.GET, params = "v")
 	@WSDoc("Gets Full representation of Patient Lists for the uuid path")
-	@ResponseBody()
-	public String getAllPatientListByUuidFull(@PathVariable("uuid") String uuid, @RequestParam("v") String rep,
-	        HttpServletRequest request) throws ResponseException {
+	public void getAllPatientListByUuidFull(@PathVariable("uuid") String uuid, @RequestParam("v") String rep,
+	        @RequestParam(value = "cursor", required = false) String cursor,
+	        @RequestParam(value = "limit", required = false) Integer limit, HttpServletRequest request,
+	        HttpServletResponse response) throws ResponseException, IOException {
 		initPatientListController();
 		PatientList patientList = service.getPatientListByUuid(uuid);
-		SimpleObject obj = new SimpleObject();
-		obj.add("uuid", patientList.getUuid());
-		obj.add("name", patientList.getName());
-		obj.add("description", patientList.getDescription());
-		obj.add("searchQuery", patientList.getSearchQuery());
-		ArrayList patients = new ArrayList();
-		List<Patient> patientsInPatientList = service.getPatientsInPatientList(patientList);
-		for (Patient p : patientsInPatientList) {
-			SimpleObject patient = new SimpleObject();
-			patient.add("uuid", p.getUuid());
-			patient.add("display", p.getPersonName().getFullName());
-			patient.add("gender", p.getGender());
-			patient.add("age", p.getAge());
-			ArrayList encounters = new ArrayList();
-			List<Encounter> encountersInPatientList = service.getEncountersInPatientList(patientList);
-			for (Encounter e : encountersInPatientList) {
-				if (e.getPatient().equals(p)) {
-					SimpleObject encounter = new SimpleObject();
-					encounter.add("uuid", e.getUuid());
-					encounter.add("display", e.getEncounterType().getName() + " - " + e.getEncounterDatetime());
-					encounter.add("encounterType", e.getEncounterType().getUuid());
-					encounter.add("encounterDatetime", df.format(e.getEncounterDatetime()));
-					if (e.getProvider() != null) {
-						encounter.add("provider", e.getProvider().getUuid());
-					} else {
-						encounter.add("provider", null);
-					}
-					ArrayList obsArray = new ArrayList();
-					Set<Obs> obsAll = e.getObs();
-					for (Obs o : obsAll) {
-						SimpleObject obs = new SimpleObject();
-						obs.add("uuid", o.getUuid());
-						obs.add("display", o.getConcept().getName().getName() + " = "
-						        + o.getValueAsString(request.getLocale()));
-						obs.add("obsDatetime", df.format(o.getObsDatetime()));
-						obs.add("value", o.getValueAsString(request.getLocale()));
-						obs.add("comment", o.getComment());
-						if (o.getOrder() != null) {
-							obs.add("order", o.getOrder().getUuid());
-						} else {
-							obs.add("order", null);
-						}
-						obsArray.add(obs);
-					}
-					encounter.add("obs", obsArray);
-					encounters.add(encounter);
-				}
+		List<Encounter> page = getEncounterPage(patientList, getCursor(cursor), limit);
+		JsonWriter writer = createJsonWriter(response);
+		writeFullPatientList(writer, patientList, page, rep, limit, request);
+		writer.flush();
+	}
+	
+	/**
+	 * Renders the FULL rep of the Patientlist as a String
+	 * 
+	 * @see #getAllPatientListByUuidFull(String, String, String, Integer, HttpServletRequest, HttpServletResponse)
+	 */
+	public String getAllPatientListByUuidFull(String uuid, String rep, HttpServletRequest request)
+	        throws ResponseException {
+		initPatientListController();
+		PatientList patientList = service.getPatientListByUuid(uuid);
+		List<Encounter> page = getEncounterPage(patientList, null, null);
+		StringWriter out = new StringWriter();
+		try {
+			writeFullPatientList(createJsonWriter(out), patientList, page, rep, null, request);
+		}
+		catch (IOException ex) {
+			throw new APIException("Unable to render patient list", ex);
+		}
+		return out.toString();
+	}
+	
+	/**
+	 * Writes the FULL rep of the Patientlist with its already read page of encounters,
+	 * adding retire and audit info when rep is "full"
+	 */
+	private void writeFullPatientList(JsonWriter writer, PatientList patientList, List<Encounter> page, String rep,
+	        Integer limit, HttpServletRequest request) throws IOException {
+		writer.beginObject();
+		writer.name("uuid").value(patientList.getUuid());
+		writer.name("name").value(patientList.getName());
+		writer.name("description").value(patientList.getDescription());
+		writer.name("searchQuery").value(patientList.getSearchQuery());
+		writer.name("patients").beginArray();
+		Map<Patient, List<Encounter>> encountersByPatient = groupEncountersByPatient(page);
+		for (Map.Entry<Patient, List<Encounter>> patientEncounters : encountersByPatient.entrySet()) {
+			writer.beginObject();
+			writePatientFields(writer, patientEncounters.getKey());
+			writer.name("encounters").beginArray();
+			for (Encounter e : patientEncounters.getValue()) {
+				writeEncounter(writer, e, true, request);
 			}
-			patient.add("encounters", encounters);
-			patients.add(patient);
+			writer.endArray();
+			writer.endObject();
 		}
-		obj.add("patients", patients);
+		writer.endArray();
+		writeNextCursor(writer, page, limit);
 		if (rep.equals("full")) {
-			obj.add("retired", patientList.getRetired());
+			writer.name("materialized");
+			writeBoolean(writer, patientList.getMaterialized());
+			writer.name("retired");
+			writeBoolean(writer, patientList.getRetired());
 			if (patientList.getRetired()) {
-				obj.add("retiredBy", patientList.getRetiredBy().getUuid());
-				obj.add("retireReason", patientList.getRetireReason());
+				writer.name("retiredBy").value(patientList.getRetiredBy().getUuid());
+				writer.name("retireReason").value(patientList.getRetireReason());
 			}
-			SimpleObject auditInfo = new SimpleObject();
-			auditInfo.add("creator", patientList.getCreator().getUuid());
-			auditInfo.add("dateCreated", df.format(patientList.getDateCreated()));
+			writer.name("auditInfo").beginObject();
+			writer.name("creator").value(patientList.getCreator().getUuid());
+			writer.name("dateCreated").value(RaxaDateFormat.format(patientList.getDateCreated()));
 			if (patientList.getChangedBy() != null) {
-				auditInfo.add("changedBy", patientList.getChangedBy().getUuid());
-				auditInfo.add("dateChanged", df.format(patientList.getDateChanged()));
+				writer.name("changedBy").value(patientList.getChangedBy().getUuid());
+				writer.name("dateChanged").value(RaxaDateFormat.format(patientList.getDateChanged()));
 			}
-			obj.add("auditInfo", auditInfo);
+			writer.endObject();
 		}
-		obj.add("resourceVersion", getResourceVersion());
-		return gson.toJson(obj);
+		writer.name("resourceVersion").value(getResourceVersion());
+		writer.endObject();
 	}
 	
 	//</editor-fold>
@@ -357,75 +450,75 @@ public class PatientListController extends BaseRestController {
 	/**
 	 * This is the on-the-fly generated patient list, by passing the searchQuery
 	 * as part of the resource URL as params. encounterType is required param.
-	 * Gives the FULL rep for the Patient list resource.
+	 * Gives the FULL rep for the Patient list resource. The JSON is streamed onto the response.
+	 * The cursor and limit params page the encounters and are not part of the searchQuery
 	 * 
 	 * @param params
 	 * @param request
-	 * @return
-	 * @throws ResponseException 
+	 * @param response
+	 * @throws ResponseException
+	 * @throws IOException 
 	 */
 	@RequestMapping(method = RequestMethod.GET, params = "encounterType")
 	@WSDoc("Gets Patients Without Saving the Patient list")
-	@ResponseBody()
-	public String getPatientsInPatientList(@RequestParam Map<String, String> params, HttpServletRequest request)
+	public void getPatientsInPatientList(@RequestParam Map<String, String> params, HttpServletRequest request,
+	        HttpServletResponse response) throws ResponseException, IOException {
+		initPatientListController();
+		PatientList patientList = createOnTheFlyPatientList(params);
+		Integer limit = getLimit(params.get("limit"));
+		List<Encounter> page = getEncounterPage(patientList, getCursor(params.get("cursor")), limit);
+		JsonWriter writer = createJsonWriter(response);
+		writeOnTheFlyPatientList(writer, patientList, page, limit, request);
+		writer.flush();
+	}
+	
+	/**
+	 * Renders the on-the-fly generated patient list as a String
+	 * 
+	 * @see #getPatientsInPatientList(Map, HttpServletRequest, HttpServletResponse)
+	 */
+	public String getPatientsInPatientList(Map<String, String> params, HttpServletRequest request)
 	        throws ResponseException {
 		initPatientListController();
-		PatientList patientList = new PatientList();
-		patientList.setSearchQuery("?" + Joiner.on("&").withKeyValueSeparator("=").join(params));
-		SimpleObject obj = new SimpleObject();
-		obj.add("uuid", patientList.getUuid());
-		obj.add("name", patientList.getName());
-		obj.add("description", patientList.getDescription());
-		obj.add("searchQuery", patientList.getSearchQuery());
-		ArrayList patients = new ArrayList();
-		List<Patient> patientsInPatientList = service.getPatientsInPatientList(patientList);
-		for (Patient p : patientsInPatientList) {
-			SimpleObject patient = new SimpleObject();
-			patient.add("uuid", p.getUuid());
-			patient.add("display", p.getPersonName().getFullName());
-			patient.add("gender", p.getGender());
-			patient.add("age", p.getAge());
-			ArrayList encounters = new ArrayList();
-			List<Encounter> encountersInPatientList = service.getEncountersInPatientList(patientList);
-			for (Encounter e : encountersInPatientList) {
-				if (e.getPatient().equals(p)) {
-					SimpleObject encounter = new SimpleObject();
-					encounter.add("uuid", e.getUuid());
-					encounter.add("display", e.getEncounterType().getName() + " - " + e.getEncounterDatetime());
-					encounter.add("encounterType", e.getEncounterType().getUuid());
-					encounter.add("encounterDatetime", df.format(e.getEncounterDatetime()));
-					if (e.getProvider() != null) {
-						encounter.add("provider", e.getProvider().getUuid());
-					} else {
-						encounter.add("provider", null);
-					}
-					ArrayList obsArray = new ArrayList();
-					Set<Obs> obsAll = e.getObs();
-					for (Obs o : obsAll) {
-						SimpleObject obs = new SimpleObject();
-						obs.add("uuid", o.getUuid());
-						obs.add("display", o.getConcept().getName().getName() + " = "
-						        + o.getValueAsString(request.getLocale()));
-						obs.add("obsDatetime", df.format(o.getObsDatetime()));
-						obs.add("value", o.getValueAsString(request.getLocale()));
-						obs.add("comment", o.getComment());
-						if (o.getOrder() != null) {
-							obs.add("order", o.getOrder().getUuid());
-						} else {
-							obs.add("order", null);
-						}
-						obsArray.add(obs);
-					}
-					encounter.add("obs", obsArray);
-					encounters.add(encounter);
-				}
+		PatientList patientList = createOnTheFlyPatientList(params);
+		Integer limit = getLimit(params.get("limit"));
+		List<Encounter> page = getEncounterPage(patientList, getCursor(params.get("cursor")), limit);
+		StringWriter out = new StringWriter();
+		try {
+			writeOnTheFlyPatientList(createJsonWriter(out), patientList, page, limit, request);
+		}
+		catch (IOException ex) {
+			throw new APIException("Unable to render patient list", ex);
+		}
+		return out.toString();
+	}
+	
+	/**
+	 * Writes the FULL rep of an unsaved patient list with its already read page of encounters
+	 */
+	private void writeOnTheFlyPatientList(JsonWriter writer, PatientList patientList, List<Encounter> page,
+	        Integer limit, HttpServletRequest request) throws IOException {
+		writer.beginObject();
+		writer.name("uuid").value(patientList.getUuid());
+		writer.name("name").value(patientList.getName());
+		writer.name("description").value(patientList.getDescription());
+		writer.name("searchQuery").value(patientList.getSearchQuery());
+		writer.name("patients").beginArray();
+		Map<Patient, List<Encounter>> encountersByPatient = groupEncountersByPatient(page);
+		for (Map.Entry<Patient, List<Encounter>> patientEncounters : encountersByPatient.entrySet()) {
+			writer.beginObject();
+			writePatientFields(writer, patientEncounters.getKey());
+			writer.name("encounters").beginArray();
+			for (Encounter e : patientEncounters.getValue()) {
+				writeEncounter(writer, e, true, request);
 			}
-			patient.add("encounters", encounters);
-			patients.add(patient);
+			writer.endArray();
+			writer.endObject();
 		}
-		obj.add("patients", patients);
-		obj.add("resourceVersion", getResourceVersion());
-		return gson.toJson(obj);
+		writer.endArray();
+		writeNextCursor(writer, page, limit);
+		writer.name("resourceVersion").value(getResourceVersion());
+		writer.endObject();
 	}
 	
 	//</editor-fold>
@@ -435,21 +528,52 @@ public class PatientListController extends BaseRestController {
 	 * This is the on-the-fly generated patient list, by passing the searchQuery
 	 * as part of the resource URL as params. encounterType is required param.
 	 * Gives the FULL rep for the Patient list resource.
-	 * Now optimized into one call
+	 * Now optimized into one call, and streamed onto the response.
+	 * The cursor and limit params page the encounters and are not part of the searchQuery
 	 * 
 	 * @param params
 	 * @param request
-	 * @return
-	 * @throws ResponseException 
+	 * @param response
+	 * @throws ResponseException
+	 * @throws IOException 
 	 */
 	@RequestMapping(value = "/optimized", method = RequestMethod.GET, params = "encounterType")
 	@WSDoc("Gets Patients Without Saving the Patient list")
-	@ResponseBody()
-	public String getPatientsInPatientListV2(@RequestParam Map<String, String> params, HttpServletRequest request)
+	public void getPatientsInPatientListV2(@RequestParam Map<String, String> params, HttpServletRequest request,
+	        HttpServletResponse response) throws ResponseException, IOException {
+		initPatientListController();
+		Integer limit = getLimit(params.get("limit"));
+		List<Encounter> page = getOptimizedEncounterPage(params, getCursor(params.get("cursor")), limit);
+		JsonWriter writer = createJsonWriter(response);
+		writeOptimizedPatientList(writer, params, page, limit, request);
+		writer.flush();
+	}
+	
+	/**
+	 * Renders the optimized on-the-fly patient list as a String
+	 * 
+	 * @see #getPatientsInPatientListV2(Map, HttpServletRequest, HttpServletResponse)
+	 */
+	public String getPatientsInPatientListV2(Map<String, String> params, HttpServletRequest request)
 	        throws ResponseException {
 		initPatientListController();
+		Integer limit = getLimit(params.get("limit"));
+		List<Encounter> page = getOptimizedEncounterPage(params, getCursor(params.get("cursor")), limit);
+		StringWriter out = new StringWriter();
+		try {
+			writeOptimizedPatientList(createJsonWriter(out), params, page, limit, request);
+		}
+		catch (IOException ex) {
+			throw new APIException("Unable to render patient list", ex);
+		}
+		return out.toString();
+	}
+	
+	/**
+	 * Reads one page of the optimized on-the-fly patient list, with the encounter details prefetched
+	 */
+	private List<Encounter> getOptimizedEncounterPage(Map<String, String> params, PatientListCursor cursor, Integer limit) {
 		//?encounterType=<>&startDate=<>&endDate=<>&excludeEncounterType=<>....
-		//placeholder until service code is re-written
 		String inListQuery = ("?encounterType=" + params.get("encounterType") + "&startDate=" + params.get("startDate")
 		        + "&endDate=" + params.get("endDate"));
 		if (params.get("patient") != null) {
@@ -478,93 +602,206 @@ public class PatientListController extends BaseRestController {
 		if (params.get("containsOrderType") != null) {
 			notInListQuery += "&containsOrderType=" + params.get("containsOrderType");
 		}
-		PatientList inList = new PatientList();
-		inList.setSearchQuery(inListQuery);
-		inList = service.savePatientList(inList);
-		
-		PatientList notInList = new PatientList();
-		notInList.setSearchQuery(notInListQuery);
-		notInList = service.savePatientList(notInList);
-		
-		String finalQuery = ("?encounterType=" + params.get("encounterType") + "&inList=" + inList.getUuid() + "&notInList=" + notInList
-		        .getUuid());
-		
+		//the in and not in lists are evaluated as sub-lists without being saved
+		List<PatientListQueryPlan> inListPlans = new ArrayList<PatientListQueryPlan>();
+		inListPlans.add(PatientListQueryPlan.compile(inListQuery));
+		List<PatientListQueryPlan> notInListPlans = new ArrayList<PatientListQueryPlan>();
+		notInListPlans.add(PatientListQueryPlan.compile(notInListQuery));
+		PatientListQueryPlan plan = PatientListQueryPlan.compile("?encounterType=" + params.get("encounterType")).resolve(
+		    inListPlans, notInListPlans);
+		List<Encounter> page = service.getEncountersInPatientList(plan, cursor, limit);
+		service.prefetchEncounterDetails(page);
+		return page;
+	}
+	
+	/**
+	 * Writes the optimized on-the-fly patient list with its already read page of encounters,
+	 * with the patient rep the registration pages expect
+	 */
+	private void writeOptimizedPatientList(JsonWriter writer, Map<String, String> params, List<Encounter> page,
+	        Integer limit, HttpServletRequest request) throws IOException {
+		PatientList patientList = createOnTheFlyPatientList(params);
+		writer.beginObject();
+		writer.name("uuid").value(patientList.getUuid());
+		writer.name("name").value(patientList.getName());
+		writer.name("description").value(patientList.getDescription());
+		writer.name("searchQuery").value(patientList.getSearchQuery());
+		writer.name("patients").beginArray();
+		Map<Patient, List<Encounter>> encountersByPatient = groupEncountersByPatient(page);
+		for (Map.Entry<Patient, List<Encounter>> patientEncounters : encountersByPatient.entrySet()) {
+			Patient p = patientEncounters.getKey();
+			writer.beginObject();
+			writer.name("uuid").value(p.getUuid());
+			writer.name("person").beginObject();
+			writer.name("uuid").value(p.getUuid());
+			writer.name("display").value(p.getPersonName().getFullName());
+			writer.name("preferredName").beginObject();
+			writer.name("display").value(p.getPersonName().getFullName());
+			writer.endObject();
+			writer.name("gender").value(p.getGender());
+			writer.name("age").value(p.getAge());
+			writer.endObject();
+			writer.name("identifiers").beginArray();
+			writer.beginObject();
+			writer.name("identifier").value(p.getPatientIdentifier().getIdentifier());
+			writer.endObject();
+			writer.endArray();
+			writer.name("encounters").beginArray();
+			for (Encounter e : patientEncounters.getValue()) {
+				writeEncounter(writer, e, params.get("containsOrderType") == null, request);
+			}
+			writer.endArray();
+			writer.endObject();
+		}
+		writer.endArray();
+		writeNextCursor(writer, page, limit);
+		writer.name("resourceVersion").value(getResourceVersion());
+		writer.endObject();
+	}
+	
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Evaluation">
+	/**
+	 * Reads one page of the encounters in the patient list, with the encounter details prefetched.
+	 * Pages are read before the response writer is opened, so a failing query is not sent as truncated JSON
+	 */
+	private List<Encounter> getEncounterPage(PatientList patientList, PatientListCursor cursor, Integer limit) {
+		List<Encounter> page = service.getEncountersInPatientList(patientList, cursor, limit);
+		service.prefetchEncounterDetails(page);
+		return page;
+	}
+	
+	/**
+	 * Creates an unsaved patient list whose searchQuery is the request params without the page params
+	 */
+	private PatientList createOnTheFlyPatientList(Map<String, String> params) {
 		PatientList patientList = new PatientList();
-		patientList.setSearchQuery(finalQuery);
-		SimpleObject obj = new SimpleObject();
-		obj.add("uuid", patientList.getUuid());
-		obj.add("name", patientList.getName());
-		obj.add("description", patientList.getDescription());
-		obj.add("searchQuery", patientList.getSearchQuery());
-		ArrayList patients = new ArrayList();
-		List<Patient> patientsInPatientList = service.getPatientsInPatientList(patientList);
-		List<Encounter> encountersInPatientList = service.getEncountersInPatientList(patientList);
-		
-		for (Patient p : patientsInPatientList) {
-			SimpleObject patient = new SimpleObject();
-			patient.add("uuid", p.getUuid());
-			SimpleObject person = new SimpleObject();
-			person.add("uuid", p.getUuid());
-			person.add("display", p.getPersonName().getFullName());
-			SimpleObject name = new SimpleObject();
-			name.add("display", p.getPersonName().getFullName());
-			person.add("preferredName", name);
-			person.add("gender", p.getGender());
-			person.add("age", p.getAge());
-			patient.add("person", person);
-			ArrayList identifiers = new ArrayList();
-			SimpleObject id = new SimpleObject();
-			id.add("identifier", p.getPatientIdentifier().getIdentifier());
-			identifiers.add(id);
-			patient.add("identifiers", identifiers);
-			//patient.add("identifiers", p.getActiveIdentifiers());
-			ArrayList encounters = new ArrayList();
-			//TODO: refactor this so we don't have to go through each time
-			for (Encounter e : encountersInPatientList) {
-				if (e.getPatient().equals(p)) {
-					SimpleObject encounter = new SimpleObject();
-					encounter.add("uuid", e.getUuid());
-					encounter.add("display", e.getEncounterType().getName() + " - " + e.getEncounterDatetime());
-					encounter.add("encounterType", e.getEncounterType().getUuid());
-					encounter.add("encounterDatetime", df.format(e.getEncounterDatetime()));
-					if (e.getProvider() != null) {
-						encounter.add("provider", e.getProvider().getUuid());
-					} else {
-						encounter.add("provider", null);
-					}
-					if (params.get("containsOrderType") != null) {
-						encounter.add("obs", null);
-					} else {
-						ArrayList obsArray = new ArrayList();
-						Set<Obs> obsAll = e.getObs();
-						for (Obs o : obsAll) {
-							SimpleObject obs = new SimpleObject();
-							obs.add("uuid", o.getUuid());
-							obs.add("display", o.getConcept().getName().getName() + " = "
-							        + o.getValueAsString(request.getLocale()));
-							obs.add("obsDatetime", df.format(o.getObsDatetime()));
-							obs.add("value", o.getValueAsString(request.getLocale()));
-							obs.add("comment", o.getComment());
-							if (o.getOrder() != null) {
-								obs.add("order", o.getOrder().getUuid());
-							} else {
-								obs.add("order", null);
-							}
-							obsArray.add(obs);
-						}
-						encounter.add("obs", obsArray);
-					}
-					encounters.add(encounter);
-				}
+		patientList.setSearchQuery("?" + Joiner.on("&").withKeyValueSeparator("=").join(withoutPageParams(params)));
+		return patientList;
+	}
+	
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="JSON writing">
+	/**
+	 * Creates a JsonWriter directly on the response body
+	 */
+	private JsonWriter createJsonWriter(HttpServletResponse response) throws IOException {
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		return createJsonWriter(response.getWriter());
+	}
+	
+	/**
+	 * Creates a JsonWriter that writes nulls and escapes html the same way gson does
+	 */
+	private JsonWriter createJsonWriter(Writer out) {
+		JsonWriter writer = new JsonWriter(out);
+		writer.setSerializeNulls(true);
+		writer.setHtmlSafe(true);
+		return writer;
+	}
+	
+	/**
+	 * Writes the uuid, display, gender and age of the patient into the current object
+	 */
+	private void writePatientFields(JsonWriter writer, Patient p) throws IOException {
+		writer.name("uuid").value(p.getUuid());
+		writer.name("display").value(p.getPersonName().getFullName());
+		writer.name("gender").value(p.getGender());
+		writer.name("age").value(p.getAge());
+	}
+	
+	/**
+	 * Writes the encounter as an object, with encounter.provider, obs.comment and obs.order
+	 * 
+	 * @param writer
+	 * @param e
+	 * @param includeObs whether to write the obs, otherwise obs is null
+	 * @param request
+	 * @throws IOException 
+	 */
+	private void writeEncounter(JsonWriter writer, Encounter e, boolean includeObs, HttpServletRequest request)
+	        throws IOException {
+		writer.beginObject();
+		writer.name("uuid").value(e.getUuid());
+		writer.name("display").value(e.getEncounterType().getName() + " - " + e.getEncounterDatetime());
+		writer.name("encounterType").value(e.getEncounterType().getUuid());
+		writer.name("encounterDatetime").value(RaxaDateFormat.format(e.getEncounterDatetime()));
+		writer.name("provider").value(e.getProvider() != null ? e.getProvider().getUuid() : null);
+		writer.name("obs");
+		if (includeObs) {
+			writer.beginArray();
+			Set<Obs> obsAll = e.getObs();
+			for (Obs o : obsAll) {
+				writer.beginObject();
+				writer.name("uuid").value(o.getUuid());
+				writer.name("display").value(
+				    o.getConcept().getName().getName() + " = " + o.getValueAsString(request.getLocale()));
+				writer.name("obsDatetime").value(RaxaDateFormat.format(o.getObsDatetime()));
+				writer.name("value").value(o.getValueAsString(request.getLocale()));
+				writer.name("comment").value(o.getComment());
+				writer.name("order").value(o.getOrder() != null ? o.getOrder().getUuid() : null);
+				writer.endObject();
 			}
-			patient.add("encounters", encounters);
-			patients.add(patient);
+			writer.endArray();
+		} else {
+			writer.nullValue();
+		}
+		writer.endObject();
+	}
+	
+	/**
+	 * Writes the cursor of the page's last encounter when the page is full, or null when there are
+	 * no more pages. Nothing is written for unpaged requests.
+	 */
+	private void writeNextCursor(JsonWriter writer, List<Encounter> page, Integer limit) throws IOException {
+		if (limit != null) {
+			writer.name("nextCursor").value(
+			    page.size() == limit ? PatientListCursor.after(page.get(page.size() - 1)).toString() : null);
 		}
-		obj.add("patients", patients);
-		obj.add("resourceVersion", getResourceVersion());
-		return gson.toJson(obj);
 	}
 	
+	private PatientListCursor getCursor(String cursor) {
+		return cursor == null ? null : PatientListCursor.parse(cursor);
+	}
+	
+	private Integer getLimit(String limit) {
+		if (limit == null) {
+			return null;
+		}
+		try {
+			return Integer.valueOf(limit);
+		}
+		catch (NumberFormatException ex) {
+			throw new IllegalArgumentException("limit must be a number");
+		}
+	}
+	
+	/**
+	 * The on-the-fly searchQuery is built from the request params, less the paging params
+	 */
+	private Map<String, String> withoutPageParams(Map<String, String> params) {
+		Map<String, String> query = new LinkedHashMap<String, String>(params);
+		query.remove("cursor");
+		query.remove("limit");
+		return query;
+	}
+	
+	/**
+	 * Writes a Boolean value, or null
+	 */
+	private void writeBoolean(JsonWriter writer, Boolean value) throws IOException {
+		if (value == null) {
+			writer.nullValue();
+		} else {
+			writer.value(value.booleanValue());
+		}
+	}
+	
+	//</editor-fold>
+	
 	//<editor-fold defaultstate="collapsed" desc="DELETE - Retire PatientList">
 	/**
 	 * Retires the patient list resource by making a DELETE call with the '!purge' param
@@ -16,10 +16,10 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.servlet.http.HttpServletRequest;
@@ -36,7 +36,10 @@ import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseCrudController;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
 import org.raxa.module.raxacore.RaxaAlert;
+import org.raxa.module.raxacore.RaxaAlertEvent;
 import org.raxa.module.raxacore.RaxaAlertService;
+import org.raxa.module.raxacore.RaxaAlertSubscription;
+import org.raxa.module.raxacore.util.RaxaDateFormat;
 import org.raxa.module.raxacore.web.v1_0.resource.RaxaAlertResource;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -57,6 +60,16 @@ public class RaxaAlertController {
 	
 	Gson gson = new GsonBuilder().serializeNulls().create();
 	
+	private static final int MAX_WAIT_SECONDS = 30;
+	
+	/**
+	 * Requests that wait for an alert hold a servlet thread each, so at most this many wait at a
+	 * time; the servlet container needs more threads than this to keep serving other requests
+	 */
+	private static final int MAX_WAITING_REQUESTS = 50;
+	
+	private static final Semaphore WAITING_REQUESTS = new Semaphore(MAX_WAITING_REQUESTS);
+	
 	private static final String[] REF = { "uuid", "name", "description" };
 	
 	/**
@@ -140,14 +153,9 @@ public class RaxaAlertController {
 			raxaAlert.setSeen(Boolean.parseBoolean(post.get("seen").toString()));
 		}
 		if (post.get("time") != null) {
-			String[] supportedFormats = { "yyyy-MM-dd'T'HH:mm:ss.SSSZ", "yyyy-MM-dd'T'HH:mm:ss.SSS",
-			        "yyyy-MM-dd'T'HH:mm:ssZ", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd" };
-			for (int i = 0; i < supportedFormats.length; i++) {
-				try {
-					Date date = new SimpleDateFormat(supportedFormats[i]).parse(post.get("time").toString());
-					raxaAlert.setTime(date);
-				}
-				catch (Exception ex) {}
+			Date date = RaxaDateFormat.parse(post.get("time").toString());
+			if (date != null) {
+				raxaAlert.setTime(date);
 			}
 		}
 		return raxaAlert;
@@ -198,17 +206,40 @@ public class RaxaAlertController {
 		return obj;
 	}
 	
+	/**
+	 * Get all raxa alerts in the system, or one page of them when startIndex or limit is given, with the total
+	 * number of raxa alerts in the X-Total-Count header. When the page is full, nextStartIndex is the startIndex
+	 * of the page after it.
+	 *
+	 * @param startIndex index of the first alert, 0 by default
+	 * @param limit maximum number of alerts, 50 by default when startIndex is given
+	 * @param request
+	 * @param response
+	 * @return
+	 * @throws ResponseException
+	 */
 	@RequestMapping(method = RequestMethod.GET)
 	@WSDoc("Get All Unretired Raxa Alerts in the system")
 	@ResponseBody()
-	public String getAllRaxaAlerts(HttpServletRequest request, HttpServletResponse response) throws ResponseException {
+	public String getAllRaxaAlerts(@RequestParam(value = "startIndex", required = false) Integer startIndex,
+	        @RequestParam(value = "limit", required = false) Integer limit, HttpServletRequest request,
+	        HttpServletResponse response) throws ResponseException {
 		initRaxaAlertController();
-		List<RaxaAlert> allRaxaAlert = service.getAllRaxaAlerts(true);
+		List<RaxaAlert> allRaxaAlert;
+		if (PagedResults.isPaged(startIndex, limit)) {
+			allRaxaAlert = service.getAllRaxaAlerts(true, startIndex, PagedResults.getLimit(limit));
+		} else {
+			allRaxaAlert = service.getAllRaxaAlerts(true);
+		}
 		ArrayList results = new ArrayList();
 		for (RaxaAlert raxaAlert : allRaxaAlert) {
 			results.add(getFieldsFromRaxaAlert(raxaAlert));
 		}
-		return gson.toJson(new SimpleObject().add("results", results));
+		SimpleObject obj = new SimpleObject().add("results", results);
+		if (PagedResults.isPaged(startIndex, limit)) {
+			PagedResults.addPaging(obj, response, startIndex, limit, allRaxaAlert.size(), service.getCountOfAllRaxaAlerts(true));
+		}
+		return gson.toJson(obj);
 	}
 	
 	/**
@@ -247,6 +278,165 @@ public class RaxaAlertController {
 		return alertListToJson(service.getRaxaAlertByToLocationUuid(toLocation, false));
 	}
 	
+	/**
+	 * Fetch the unseen alerts of a provider recipient and/or a to-location, oldest first. Alerts stay
+	 * in the inbox until they are seen, also those at or below the watermark: ids are assigned when an
+	 * alert is inserted rather than when it is committed, so an alert can show up after one with a
+	 * higher id. The returned watermark is the highest id returned so far; pass it on the next call.
+	 * With wait, an inbox with no alert above the watermark holds the request for up to that many
+	 * seconds (at most 30) until an alert is saved. When too many requests are waiting already the
+	 * inbox is returned without waiting.
+	 *
+	 * @param providerRecipient uuid of the provider, optional if toLocation is given
+	 * @param toLocation uuid of the location, optional if providerRecipient is given
+	 * @param watermark the watermark returned by the previous call, 0 by default
+	 * @param limit maximum number of alerts, 50 by default
+	 * @param wait seconds to wait for a new alert, optional
+	 * @param request
+	 * @return the new alerts and the watermark
+	 * @throws ResponseException
+	 */
+	@RequestMapping(value = "/inbox", method = RequestMethod.GET)
+	@WSDoc("Fetch unseen alerts of a providerRecipient or toLocation newer than the watermark")
+	@ResponseBody()
+	public String getInbox(@RequestParam(value = "providerRecipient", required = false) String providerRecipient,
+	        @RequestParam(value = "toLocation", required = false) String toLocation,
+	        @RequestParam(value = "watermark", required = false) Integer watermark,
+	        @RequestParam(value = "limit", required = false) Integer limit,
+	        @RequestParam(value = "wait", required = false) Integer wait, HttpServletRequest request)
+	        throws ResponseException {
+		initRaxaAlertController();
+		Integer providerRecipientId = getProviderRecipientId(providerRecipient);
+		Integer toLocationId = getToLocationId(toLocation);
+		if (providerRecipientId == null && toLocationId == null) {
+			throw new ResponseException(
+			                            "providerRecipient or toLocation is required") {};
+		}
+		int after = watermark == null ? 0 : watermark;
+		int pageSize = PagedResults.getLimit(limit);
+		List<RaxaAlert> inbox;
+		if (wait == null || wait <= 0 || !WAITING_REQUESTS.tryAcquire()) {
+			inbox = service.getRaxaAlertInbox(providerRecipientId, toLocationId, pageSize);
+		} else {
+			try {
+				//subscribe before querying, so an alert saved in between still wakes the request
+				RaxaAlertSubscription subscription = service.subscribeToRaxaAlerts(providerRecipientId, toLocationId,
+				    null);
+				try {
+					inbox = service.getRaxaAlertInbox(providerRecipientId, toLocationId, pageSize);
+					if (!hasAlertAbove(inbox, after, pageSize)
+					        && waitForSavedAlert(subscription, Math.min(wait, MAX_WAIT_SECONDS) * 1000L)) {
+						inbox = service.getRaxaAlertInbox(providerRecipientId, toLocationId, pageSize);
+					}
+				}
+				finally {
+					subscription.close();
+				}
+			}
+			finally {
+				WAITING_REQUESTS.release();
+			}
+		}
+		ArrayList results = new ArrayList();
+		for (RaxaAlert raxaAlert : inbox) {
+			results.add(getFieldsFromRaxaAlert(raxaAlert));
+		}
+		int newWatermark = inbox.isEmpty() ? after : Math.max(after, inbox.get(inbox.size() - 1).getId());
+		return gson.toJson(new SimpleObject().add("results", results).add("watermark", newWatermark));
+	}
+	
+	/**
+	 * Count the unseen alerts of a provider recipient and/or a to-location
+	 *
+	 * @param providerRecipient uuid of the provider, optional if toLocation is given
+	 * @param toLocation uuid of the location, optional if providerRecipient is given
+	 * @param request
+	 * @return the number of unseen alerts
+	 * @throws ResponseException
+	 */
+	@RequestMapping(value = "/inbox/count", method = RequestMethod.GET)
+	@WSDoc("Count unseen alerts of a providerRecipient or toLocation")
+	@ResponseBody()
+	public String getInboxCount(@RequestParam(value = "providerRecipient", required = false) String providerRecipient,
+	        @RequestParam(value = "toLocation", required = false) String toLocation, HttpServletRequest request)
+	        throws ResponseException {
+		initRaxaAlertController();
+		Integer providerRecipientId = getProviderRecipientId(providerRecipient);
+		Integer toLocationId = getToLocationId(toLocation);
+		if (providerRecipientId == null && toLocationId == null) {
+			throw new ResponseException(
+			                            "providerRecipient or toLocation is required") {};
+		}
+		return gson.toJson(new SimpleObject().add("unseen",
+		    service.getCountOfUnseenRaxaAlerts(providerRecipientId, toLocationId)));
+	}
+	
+	/**
+	 * Helper function that tells whether an inbox, oldest first, has an alert above the watermark. A
+	 * full inbox may have more alerts than were fetched, so it counts as having one.
+	 */
+	private boolean hasAlertAbove(List<RaxaAlert> inbox, int watermark, int limit) {
+		return inbox.size() == limit || (!inbox.isEmpty() && inbox.get(inbox.size() - 1).getId() > watermark);
+	}
+	
+	/**
+	 * Helper function that waits until an alert is saved for the subscription, or events were
+	 * dropped, or the timeout passes. Alerts marked as seen or voided do not end the wait.
+	 *
+	 * @return true if the inbox should be queried again
+	 */
+	private boolean waitForSavedAlert(RaxaAlertSubscription subscription, long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		try {
+			long remaining = timeout;
+			while (remaining > 0) {
+				for (RaxaAlertEvent event : subscription.poll(remaining)) {
+					if (RaxaAlertEvent.TYPE_SAVED.equals(event.getType())) {
+						return true;
+					}
+				}
+				if (subscription.clearOverflow()) {
+					return true;
+				}
+				remaining = deadline - System.currentTimeMillis();
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+	
+	/**
+	 * Helper function that resolves the id of a provider recipient uuid, null if no uuid is given
+	 */
+	private Integer getProviderRecipientId(String providerRecipient) throws ResponseException {
+		if (providerRecipient == null) {
+			return null;
+		}
+		Provider p = Context.getProviderService().getProviderByUuid(providerRecipient);
+		if (p == null) {
+			throw new ResponseException(
+			                            "Provider uuid not found") {};
+		}
+		return p.getId();
+	}
+	
+	/**
+	 * Helper function that resolves the id of a to-location uuid, null if no uuid is given
+	 */
+	private Integer getToLocationId(String toLocation) throws ResponseException {
+		if (toLocation == null) {
+			return null;
+		}
+		Location l = Context.getLocationService().getLocationByUuid(toLocation);
+		if (l == null) {
+			throw new ResponseException(
+			                            "Location uuid not found") {};
+		}
+		return l.getId();
+	}
+	
 	/**
 	 * Helper function that parses a list of Raxa Alerts, returns a JSon
 	 */
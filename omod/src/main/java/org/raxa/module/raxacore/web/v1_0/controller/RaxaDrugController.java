@@ -18,7 +18,6 @@ package org.raxa.module.raxacore.web.v1_0.controller;
 import com.google.common.base.Joiner;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -40,8 +39,11 @@ import org.openmrs.module.webservices.rest.web.annotation.WSDoc;
 import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.raxa.module.raxacore.DrugCatalogVersion;
 import org.raxa.module.raxacore.DrugInfo;
 import org.raxa.module.raxacore.DrugInfoService;
+import org.raxa.module.raxacore.util.Paging;
+import org.raxa.module.raxacore.util.RaxaDateFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -60,8 +62,6 @@ public class RaxaDrugController extends BaseRestController {
 	
 	ConceptService service;
 	
-	SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-	
 	Gson gson = new GsonBuilder().serializeNulls().create();
 	
 	private static final String[] REF = { "uuid", "name", "description" };
@@ -212,8 +212,14 @@ public class RaxaDrugController extends BaseRestController {
 	}
 	
 	/**
-	 * Get all the unretired drug (as REF representation) in the system
+	 * Get all unretired drugs (as REF representation) in the system, or one page of them when
+	 * startIndex or limit is given, with the total number of unretired drugs in the X-Total-Count
+	 * header. When the page is full, nextStartIndex is the startIndex of the page after it. Answers
+	 * 304 Not Modified when the If-None-Match or If-Modified-Since header matches the drug catalog
+	 * version.
 	 *
+	 * @param startIndex index of the first drug, 0 by default
+	 * @param limit maximum number of drugs, 50 by default when startIndex is given
 	 * @param request
 	 * @param response
 	 * @return
@@ -222,14 +228,33 @@ public class RaxaDrugController extends BaseRestController {
 	@RequestMapping(method = RequestMethod.GET)
 	@WSDoc("Get All Unretired Drug in the system")
 	@ResponseBody()
-	public String getAllDrugs(HttpServletRequest request, HttpServletResponse response) throws ResponseException {
+	public String getAllDrugs(@RequestParam(value = "startIndex", required = false) Integer startIndex,
+	        @RequestParam(value = "limit", required = false) Integer limit, HttpServletRequest request,
+	        HttpServletResponse response) throws ResponseException {
 		initDrugController();
-		List<Drug> allDrug = service.getAllDrugs(false);
+		int pageSize = PagedResults.getLimit(limit);
+		int first = Paging.getFirstResult(startIndex, pageSize);
+		if (ConditionalGet.checkNotModified(request, response, DrugCatalogVersion.getETag(), DrugCatalogVersion
+		        .getLastModified())) {
+			return null;
+		}
+		List<Drug> allDrug;
+		if (PagedResults.isPaged(startIndex, limit)) {
+			//an empty phrase matches every drug, so these are the paged and counted forms of getAllDrugs(false)
+			allDrug = service.getDrugs("", null, true, false, false, first, pageSize);
+		} else {
+			allDrug = service.getAllDrugs(false);
+		}
 		ArrayList results = new ArrayList();
 		for (Drug drug : allDrug) {
 			results.add(getDrugAsSimpleObject(drug));
 		}
-		return gson.toJson(new SimpleObject().add("results", results));
+		SimpleObject obj = new SimpleObject().add("results", results);
+		if (PagedResults.isPaged(startIndex, limit)) {
+			PagedResults.addPaging(obj, response, startIndex, limit, allDrug.size(), service.getCountOfDrugs("", null, true,
+			    false, false));
+		}
+		return gson.toJson(obj);
 	}
 	
 	/**
@@ -274,10 +299,10 @@ public class RaxaDrugController extends BaseRestController {
 			}
 			SimpleObject auditInfo = new SimpleObject();
 			auditInfo.add("creator", drug.getCreator().getUuid());
-			auditInfo.add("dateCreated", df.format(drug.getDateCreated()));
+			auditInfo.add("dateCreated", RaxaDateFormat.format(drug.getDateCreated()));
 			if (drug.getChangedBy() != null) {
 				auditInfo.add("changedBy", drug.getChangedBy().getUuid());
-				auditInfo.add("dateChanged", df.format(drug.getDateChanged()));
+				auditInfo.add("dateChanged", RaxaDateFormat.format(drug.getDateChanged()));
 			}
 			obj.add("auditInfo", auditInfo);
 		}
@@ -14,7 +14,6 @@ package org.raxa.module.raxacore.web.v1_0.controller;
  */
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -40,6 +39,7 @@ import org.openmrs.module.webservices.rest.web.annotation.WSDoc;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
 import org.openmrs.util.OpenmrsUtil;
+import org.raxa.module.raxacore.util.RaxaDateFormat;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -57,16 +57,10 @@ public class RaxaEncounterController extends BaseRestController {
 	
 	EncounterService service;
 	
-	SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-	
 	Gson gson = new GsonBuilder().serializeNulls().create();
 	
 	private static final String[] REQUIRED_FIELDS = { "encounterDatetime", "patient", "encounterType" };
 	
-	private static final String[] DATE_FORMATS = { "yyyy-MM-dd'T'HH:mm:ss.SSSZ", "yyyy-MM-dd'T'HH:mm:ss.SSS",
-	        "EEE MMM d yyyy HH:mm:ss zZzzzz", "yyyy-MM-dd'T'HH:mm:ssZ", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd HH:mm:ss",
-	        "yyyy-MM-dd" };
-	
 	public void initEncounterController() {
 		service = Context.getEncounterService();
 	}
@@ -109,13 +103,9 @@ public class RaxaEncounterController extends BaseRestController {
 	private Encounter createEncounterFromPost(SimpleObject post) throws ResponseException {
 		Encounter encounter = new Encounter();
 		encounter.setPatient(Context.getPatientService().getPatientByUuid(post.get("patient").toString()));
-		for (int i = 0; i < DATE_FORMATS.length; i++) {
-			try {
-				System.out.println(i);
-				Date date = new SimpleDateFormat(DATE_FORMATS[i]).parse(post.get("encounterDatetime").toString());
-				encounter.setEncounterDatetime(date);
-			}
-			catch (Exception ex) {}
+		Date encounterDatetime = RaxaDateFormat.parse(post.get("encounterDatetime").toString());
+		if (encounterDatetime != null) {
+			encounter.setEncounterDatetime(encounterDatetime);
 		}
 		encounter.setEncounterType(service.getEncounterTypeByUuid(post.get("encounterType").toString()));
 		if (post.get("location") != null) {
@@ -219,30 +209,20 @@ public class RaxaEncounterController extends BaseRestController {
 				order.setInstructions(orderObjects.get(i).get("instructions").toString());
 			}
 			if (orderObjects.get(i).get("startDate") != null) {
-				for (int j = 0; j < DATE_FORMATS.length; j++) {
-					try {
-						Date date = new SimpleDateFormat(DATE_FORMATS[j]).parse(orderObjects.get(i).get("startDate")
-						        .toString());
-						order.setStartDate(date);
-					}
-					catch (Exception ex) {
-						throw new ResponseException(
-						                            "Unable to parse date for Obs") {};
-					}
+				Date date = RaxaDateFormat.parse(orderObjects.get(i).get("startDate").toString());
+				if (date == null) {
+					throw new ResponseException(
+					                            "Unable to parse date for Obs") {};
 				}
+				order.setStartDate(date);
 			}
 			if (orderObjects.get(i).get("autoExpireDate") != null) {
-				for (int j = 0; j < DATE_FORMATS.length; j++) {
-					try {
-						Date date = new SimpleDateFormat(DATE_FORMATS[j]).parse(orderObjects.get(i).get("autoExpireDate")
-						        .toString());
-						order.setAutoExpireDate(date);
-					}
-					catch (Exception ex) {
-						throw new ResponseException(
-						                            "Unable to parse date for Obs") {};
-					}
+				Date date = RaxaDateFormat.parse(orderObjects.get(i).get("autoExpireDate").toString());
+				if (date == null) {
+					throw new ResponseException(
+					                            "Unable to parse date for Obs") {};
 				}
+				order.setAutoExpireDate(date);
 			}
 			order.setEncounter(encounter);
 			if (encounter.getProvider() != null) {
@@ -367,7 +347,7 @@ public class RaxaEncounterController extends BaseRestController {
 	private SimpleObject createObjectFromObs(Obs obs) {
 		SimpleObject newObsObject = new SimpleObject();
 		newObsObject.add("uuid", obs.getUuid());
-		newObsObject.add("obsDatetime", df.format(obs.getObsDatetime()));
+		newObsObject.add("obsDatetime", RaxaDateFormat.format(obs.getObsDatetime()));
 		newObsObject.add("value", obs.getValueAsString(Locale.ENGLISH));
 		newObsObject.add("comment", obs.getComment());
 		if (obs.getOrder() != null) {
@@ -17,7 +17,6 @@ package org.raxa.module.raxacore.web.v1_0.controller;
  */
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Set;
@@ -49,8 +48,6 @@ public class RaxaLoginController extends BaseRestController {
 	
 	ConceptService service;
 	
-	SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-	
 	Gson gson = new GsonBuilder().serializeNulls().create();
 	
 	/**
@@ -18,7 +18,6 @@ package org.raxa.module.raxacore.web.v1_0.controller;
 import com.google.common.base.Joiner;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -47,6 +46,7 @@ import org.openmrs.module.webservices.rest.web.annotation.WSDoc;
 import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.raxa.module.raxacore.util.RaxaDateFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -65,8 +65,6 @@ public class RaxaPatientController extends BaseRestController {
 	
 	PatientService service;
 	
-	SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-	
 	Gson gson = new GsonBuilder().serializeNulls().create();
 	
 	private static final String[] REQUIREDFIELDS = { "names", "gender" };
@@ -230,15 +228,10 @@ public class RaxaPatientController extends BaseRestController {
 		person.setGender(post.get("gender").toString());
 		if (post.get("birthdate") != null) {
 			if (post.get("time") != null) {
-				String[] supportedFormats = { "yyyy-MM-dd'T'HH:mm:ss.SSSZ", "yyyy-MM-dd'T'HH:mm:ss.SSS",
-				        "yyyy-MM-dd'T'HH:mm:ssZ", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd" };
-				for (int i = 0; i < supportedFormats.length; i++) {
-					try {
-						Date date = new SimpleDateFormat(supportedFormats[i]).parse(post.get("time").toString());
-						person.setBirthdate(date);
-						person.setBirthdateEstimated(Boolean.FALSE);
-					}
-					catch (Exception ex) {}
+				Date date = RaxaDateFormat.parse(post.get("time").toString());
+				if (date != null) {
+					person.setBirthdate(date);
+					person.setBirthdateEstimated(Boolean.FALSE);
 				}
 			}
 		} else if (post.get("age") != null) {
@@ -17,7 +17,6 @@ package org.raxa.module.raxacore.web.v1_0.controller;
  */
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Set;
@@ -59,8 +58,6 @@ import org.springframework.web.bind.annotation.ResponseBody;
 @RequestMapping(value = "/rest/v1/raxacore/user")
 public class RaxaUserController extends BaseRestController {
 	
-	SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-	
 	Gson gson = new GsonBuilder().serializeNulls().create();
 	
 	UserService service;
@@ -165,6 +165,29 @@ public class DrugGroupControllerTest extends BaseModuleContextSensitiveTest {
 		Assert.assertEquals(2, ((ArrayList) SimpleObject.parseJson(allDrugGroups).get("results")).size());
 	}
 	
+	/**
+	 * @see DrugGroupController#getAllDrugGroups(HttpServletRequest, HttpServletResponse)
+	 * @verifies answer 304 until the drug catalog changes
+	 */
+	@Test
+	public void shouldAnswerNotModifiedUntilTheDrugCatalogChanges() throws Exception {
+		controller.getAllDrugGroups(request, response);
+		String eTag = (String) response.getHeader("ETag");
+		Assert.assertNotNull(eTag);
+		MockHttpServletRequest conditionalRequest = new MockHttpServletRequest();
+		conditionalRequest.addHeader("If-None-Match", eTag);
+		MockHttpServletResponse notModifiedResponse = new MockHttpServletResponse();
+		Assert.assertNull(controller.getAllDrugGroups(conditionalRequest, notModifiedResponse));
+		Assert.assertEquals(304, notModifiedResponse.getStatus());
+		DrugGroup drugGroup = service.getDrugGroupByUuid(getUuid());
+		drugGroup.setDescription("changed");
+		service.updateDrugGroup(drugGroup);
+		MockHttpServletResponse changedResponse = new MockHttpServletResponse();
+		Assert.assertNotNull(controller.getAllDrugGroups(conditionalRequest, changedResponse));
+		Assert.assertEquals(200, changedResponse.getStatus());
+		Assert.assertFalse(eTag.equals(changedResponse.getHeader("ETag")));
+	}
+	
 	/**
 	 * @see org.openmrs.module.webservices.rest.web.v1_0.controller.BaseCrudControllerTest#getUuid()
 	 */
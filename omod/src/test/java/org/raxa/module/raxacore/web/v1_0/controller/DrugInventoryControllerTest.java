@@ -92,7 +92,7 @@ public class DrugInventoryControllerTest extends BaseModuleContextSensitiveTest
 		String json = "{ \"name\":\"Updated DrugInv\",\"description\":\"Update\"}";
 		SimpleObject post = new ObjectMapper().readValue(json, SimpleObject.class);
 		controller.updateDrugInventory("68547121-1b70-465c-99ee-c9dfd95e7d36", post, request, response);
-		String results = controller.getAllDrugInventories(request, response);
+		String results = controller.getAllDrugInventories(null, null, request, response);
 		//SimpleObject updatedRaxaAlert = SimpleObject.parseJson(results.substring(12, result.length() - 2));
 		LinkedHashMap updatedRaxaAlert = (LinkedHashMap) ((ArrayList) SimpleObject.parseJson(results).get("results")).get(0);
 		Assert.assertEquals("68547121-1b70-465c-99ee-c9dfd95e7d36", updatedRaxaAlert.get("uuid"));
@@ -100,13 +100,27 @@ public class DrugInventoryControllerTest extends BaseModuleContextSensitiveTest
 	}
 	
 	/**
-	 * @see DrugInventoryController#getAllDrugInventories(HttpServletRequest, HttpServletResponse)
+	 * @see DrugInventoryController#getAllDrugInventories(Integer, Integer, HttpServletRequest, HttpServletResponse)
 	 * @verifies get all the Drug Invs in the system
 	 */
 	@Test
 	public void shouldGetAll() throws Exception {
-		String allDIs = controller.getAllDrugInventories(request, response);
+		String allDIs = controller.getAllDrugInventories(null, null, request, response);
 		Assert.assertEquals(1, ((ArrayList) SimpleObject.parseJson(allDIs).get("results")).size());
+		Assert.assertNull(SimpleObject.parseJson(allDIs).get("nextStartIndex"));
+		Assert.assertNull(response.getHeader("X-Total-Count"));
+	}
+	
+	/**
+	 * @see DrugInventoryController#getAllDrugInventories(Integer, Integer, HttpServletRequest, HttpServletResponse)
+	 * @verifies get one page of the Drug Invs and their total count
+	 */
+	@Test
+	public void getAllDrugInventories_shouldGetOnePageAndTheTotalCount() throws Exception {
+		SimpleObject page = SimpleObject.parseJson(controller.getAllDrugInventories(0, 1, request, response));
+		Assert.assertEquals(1, ((ArrayList) page.get("results")).size());
+		Assert.assertEquals(1, page.get("nextStartIndex"));
+		Assert.assertEquals(String.valueOf(service.getAllDrugInventories().size()), response.getHeader("X-Total-Count"));
 	}
 	
 	/**
@@ -24,6 +24,7 @@ import org.junit.Before;
 import org.openmrs.Provider;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.raxa.module.raxacore.DrugInventory;
 import org.raxa.module.raxacore.DrugInventoryService;
@@ -78,6 +79,26 @@ public class DrugPurchaseOrderControllerTest extends BaseModuleContextSensitiveT
 		Assert.assertEquals(before + 1, after);
 	}
 	
+	/**
+	 * @see DrugPurchaseOrderController#createNewDrugPurchaseOrder(SimpleObject, HttpServletRequest, HttpServletResponse)
+	 * @verifies a negative quantity is refused instead of adding stock to its batch
+	 */
+	@Test
+	public void createNewDrugPurchaseOrder_shouldNotTakeANegativeQuantityOutOfABatch() throws Exception {
+		String json = "{ \"name\":\"Test purchase order\",\"description\":\"Test purchase order\", \"provider\": \"68547121-1b70-465e-99ee-c9df45jf9j32\", \"inventories\": [{\"name\":\"Test inner Drug Inventory\", \"drug\": \"05ec820a-d297-44e3-be6e-698531d9dd3f\", \"quantity\": -5, \"batchUuid\": \"68547121-1b70-465c-99ee-c9dfd95e7d36\"}]}";
+		SimpleObject post = new ObjectMapper().readValue(json, SimpleObject.class);
+		try {
+			controller.createNewDrugPurchaseOrder(post, request, response);
+			Assert.fail("a negative quantity should be refused");
+		}
+		catch (ResponseException ex) {
+			Assert.assertEquals("Requested quantity must be at least 1", ex.getMessage());
+		}
+		DrugInventory batch = Context.getService(DrugInventoryService.class).getDrugInventoryByUuid(
+		    "68547121-1b70-465c-99ee-c9dfd95e7d36");
+		Assert.assertEquals(Integer.valueOf(300), batch.getQuantity());
+	}
+	
 	/**
 	 * Test of getDrugPuchaseOrderByUuid method, of class DrugPurchaseOrderController.
 	 */
@@ -91,15 +112,38 @@ public class DrugPurchaseOrderControllerTest extends BaseModuleContextSensitiveT
 	}
 	
 	/**
-	 * @see DrugPurchaseOrderController#getAllDrugPurchaseOrders(HttpServletRequest, HttpServletResponse)
+	 * @see DrugPurchaseOrderController#getAllDrugPurchaseOrders(Integer, Integer, HttpServletRequest, HttpServletResponse)
 	 * @verifies get all the Drug Invs in the system
 	 */
 	@Test
 	public void shouldGetAll() throws Exception {
-		String allDIs = controller.getAllDrugPurchaseOrders(request, response);
+		String allDIs = controller.getAllDrugPurchaseOrders(null, null, request, response);
 		Assert.assertEquals(2, ((ArrayList) SimpleObject.parseJson(allDIs).get("results")).size());
 	}
 	
+	/**
+	 * @see DrugPurchaseOrderController#getAllDrugPurchaseOrders(Integer, Integer, HttpServletRequest, HttpServletResponse)
+	 * @verifies get one page of the Drug Purchase Orders and their total count
+	 */
+	@Test
+	public void getAllDrugPurchaseOrders_shouldGetOnePageAndTheTotalCount() throws Exception {
+		SimpleObject page = SimpleObject.parseJson(controller.getAllDrugPurchaseOrders(0, 1, request, response));
+		Assert.assertEquals(1, ((ArrayList) page.get("results")).size());
+		Assert.assertEquals(1, page.get("nextStartIndex"));
+		Assert.assertEquals("2", response.getHeader("X-Total-Count"));
+	}
+	
+	/**
+	 * @see PagedResults#getLimit(Integer)
+	 * @verifies cap the page size at MAX_LIMIT
+	 */
+	@Test
+	public void getLimit_shouldCapThePageSize() throws Exception {
+		Assert.assertEquals(PagedResults.DEFAULT_LIMIT, PagedResults.getLimit(null));
+		Assert.assertEquals(1, PagedResults.getLimit(1));
+		Assert.assertEquals(PagedResults.MAX_LIMIT, PagedResults.getLimit(10000000));
+	}
+	
 	/**
 	 * @see DrugPurchaseOrderController#searchByStockLocation(String, HttpServeletRequest, HttpServletResponse)
 	 * @throws Exception
@@ -122,7 +166,7 @@ public class DrugPurchaseOrderControllerTest extends BaseModuleContextSensitiveT
 		SimpleObject post = new ObjectMapper().readValue(json, SimpleObject.class);
 		controller.updateDrugPurchaseOrder("68547121-1b70-465c-99ee-c9dfd95e7d41", post, request, response);
 		Assert.assertEquals(before, service.getAllDrugPurchaseOrders().size());
-		String results = controller.getAllDrugPurchaseOrders(request, response);
+		String results = controller.getAllDrugPurchaseOrders(null, null, request, response);
 		LinkedHashMap updatedDrugPurchaseOrder = (LinkedHashMap) ((ArrayList) SimpleObject.parseJson(results).get("results"))
 		        .get(0);
 		Assert.assertEquals("Test DrugPurchaseOrder Change", updatedDrugPurchaseOrder.get("name"));
@@ -52,7 +52,7 @@ public class ImageControllerTest extends BaseModuleContextSensitiveTest {
 		Object result = controller.createNewImage(post, request, response);
 		Image i = service.getLatestImageByTag("profile");
 		Assert.assertEquals(before + 1, service.getAllImages().size());
-		Assert.assertEquals(i.getUuid() + ".jpeg", i.getFileName());
+		Assert.assertTrue(i.getFileName().matches("[0-9a-f]{2}/[0-9a-f]{2}/[0-9a-f]{64}\\.jpeg"));
 	}
 	
 	/**
@@ -60,7 +60,7 @@ public class ImageControllerTest extends BaseModuleContextSensitiveTest {
 	 */
 	@Test
 	public void testGetAllImages() throws Exception {
-		String allImages = controller.getAllImages(request, response);
+		String allImages = controller.getAllImages(null, null, request, response);
 		Assert.assertEquals(2, ((ArrayList) SimpleObject.parseJson(allImages).get("results")).size());
 	}
 	
@@ -102,7 +102,8 @@ public class ImageControllerTest extends BaseModuleContextSensitiveTest {
 		String json = "{ \"fileName\":\"square.png\",\"tags\":\"square\", \"dataURI\": \"data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAAoAAAAKCAIAAAACUFjqAAAABGdBTUEAALGPC/xhBQAAAAlwSFlzAAALEgAACxIB0t1+/AAAAAd0SU1FB9EFBAoYMhVvMQIAAAAtSURBVHicY/z//z8DHoBH+v///yy4FDEyMjIwMDDhM3lgpaEuh7gTEzDiDxYA9HEPDF90e5YAAAAASUVORK5CYII=\", \"patient\": \"da7f524f-27ce-4bb2-86d6-6d1d05312bd5\"}";
 		SimpleObject post = new ObjectMapper().readValue(json, SimpleObject.class);
 		Object result = controller.createNewImage(post, request, response);
-		String result2 = controller.searchLatestForPatientByTag("da7f524f-27ce-4bb2-86d6-6d1d05312bd5", "square", request);
+		String result2 = controller.searchLatestForPatientByTag("da7f524f-27ce-4bb2-86d6-6d1d05312bd5", "square", null,
+		    request, response);
 		SimpleObject imageReturned = SimpleObject.parseJson(result2);
 		Assert.assertNotNull(imageReturned);
 		System.out.println(result2);
@@ -124,7 +125,7 @@ public class ImageControllerTest extends BaseModuleContextSensitiveTest {
 		SimpleObject post = new ObjectMapper().readValue(json, SimpleObject.class);
 		controller.updateImage("68547121-1b70-465c-99ee-c9dfd06e7e32", post, request, response);
 		Assert.assertEquals(before, service.getAllImages().size());
-		String results = controller.getAllImages(request, response);
+		String results = controller.getAllImages(null, null, request, response);
 		LinkedHashMap updatedRaxaAlert = (LinkedHashMap) ((ArrayList) SimpleObject.parseJson(results).get("results")).get(0);
 		Assert.assertEquals("68547121-1b70-465c-99ee-c9dfd06e7e32", updatedRaxaAlert.get("uuid"));
 		Assert.assertEquals("new tags", updatedRaxaAlert.get("tags"));
@@ -135,10 +136,34 @@ public class ImageControllerTest extends BaseModuleContextSensitiveTest {
 	 */
 	@Test
 	public void testGetImageByUuid() throws Exception {
-		String result = controller.getImageByUuid("68547121-1b70-465c-99ee-c9dfd06e7e32", request);
+		String result = controller.getImageByUuid("68547121-1b70-465c-99ee-c9dfd06e7e32", null, request, response);
 		SimpleObject image = SimpleObject.parseJson(result);
 		Assert.assertNotNull(result);
 		Assert.assertEquals("68547121-1b70-465c-99ee-c9dfd06e7e32", image.get("uuid"));
 		Assert.assertEquals("mytest.jpg", image.get("fileName"));
 	}
+	
+	/**
+	 * Test of createNewImageFromData and getImageData methods, of class ImageController.
+	 */
+	@Test
+	public void testCreateNewImageFromData_shouldStreamTheImageBackWithItsContentType() throws Exception {
+		byte[] data = { 0x12, 0x11, 0x10, 0x9 };
+		request.setContentType("image/png");
+		request.setContent(data);
+		controller.createNewImageFromData("da7f524f-27ce-4bb2-86d6-6d1d05312bd5", null, null, "raw", request, response);
+		Image created = service.getLatestImageByTag("raw");
+		Assert.assertTrue(created.getFileName().endsWith(".png"));
+		MockHttpServletResponse dataResponse = new MockHttpServletResponse();
+		controller.getImageData(created.getUuid(), null, new MockHttpServletRequest(), dataResponse);
+		Assert.assertEquals("image/png", dataResponse.getContentType());
+		Assert.assertEquals("4", dataResponse.getHeader("Content-Length"));
+		Assert.assertArrayEquals(data, dataResponse.getContentAsByteArray());
+		MockHttpServletRequest conditionalRequest = new MockHttpServletRequest();
+		conditionalRequest.addHeader("If-None-Match", dataResponse.getHeader("ETag"));
+		MockHttpServletResponse notModifiedResponse = new MockHttpServletResponse();
+		controller.getImageData(created.getUuid(), null, conditionalRequest, notModifiedResponse);
+		Assert.assertEquals(304, notModifiedResponse.getStatus());
+		Assert.assertEquals(0, notModifiedResponse.getContentAsByteArray().length);
+	}
 }
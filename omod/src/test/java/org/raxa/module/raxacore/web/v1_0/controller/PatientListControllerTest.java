@@ -17,6 +17,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -132,6 +133,18 @@ public class PatientListControllerTest extends BaseModuleContextSensitiveTest {
 		Assert.assertEquals(1, patientList.size());
 	}
 	
+	@Test
+	public void getPatientsInPatientListV2_shouldNotSavePatientLists() throws Exception {
+		int before = service.getAllPatientList(true).size();
+		HashMap<String, String> hashMap = new HashMap<String, String>();
+		hashMap.put("encounterType", "61ae96f4-6afe-4351-b6f8-cd4fc383cce1");
+		hashMap.put("startDate", "2000-01-01T00:00:00");
+		hashMap.put("endDate", "2007-01-02T00:00:00");
+		hashMap.put("excludeEncounterType", "07000be2-26b6-4cce-8b40-866d8435b613");
+		controller.getPatientsInPatientListV2(hashMap, request);
+		Assert.assertEquals(before, service.getAllPatientList(true).size());
+	}
+	
 	/**
 	 * @see PatientListController#getPatientListsByName(String,HttpServletRequest)
 	 * @verifies return no results because no matching patientlist name
@@ -186,6 +199,35 @@ public class PatientListControllerTest extends BaseModuleContextSensitiveTest {
 		Assert.assertNull(patientList.get("auditInfo"));
 	}
 	
+	/**
+	 * @see PatientListController#getAllPatientListByUuid(String, String, Integer, HttpServletRequest, HttpServletResponse)
+	 * @verifies stream the same representation onto the response
+	 */
+	@Test
+	public void getPatientListByUuid_shouldStreamTheRepresentationOntoTheResponse() throws Exception {
+		controller.getAllPatientListByUuid(getUuid(), null, null, request, response);
+		Assert.assertTrue(response.getContentType().startsWith("application/json"));
+		Assert.assertEquals(controller.getAllPatientListByUuid(getUuid(), request), response.getContentAsString());
+	}
+	
+	/**
+	 * @see PatientListController#getPatientsInPatientList(Map, HttpServletRequest, HttpServletResponse)
+	 * @verifies return one page of encounters and the cursor of the next page
+	 */
+	@Test
+	public void getPatientsInPatientList_shouldReturnAPageOfEncounters() throws Exception {
+		HashMap<String, String> hashMap = new HashMap<String, String>();
+		hashMap.put("encounterType", "61ae96f4-6afe-4351-b6f8-cd4fc383cce1");
+		hashMap.put("limit", "1");
+		controller.getPatientsInPatientList(hashMap, request, response);
+		SimpleObject page = SimpleObject.parseJson(response.getContentAsString());
+		Assert.assertFalse(((String) page.get("searchQuery")).contains("limit"));
+		List patients = (ArrayList) page.get("patients");
+		Assert.assertEquals(1, patients.size());
+		Assert.assertEquals(1, ((ArrayList) ((Map) patients.get(0)).get("encounters")).size());
+		Assert.assertNotNull(page.get("nextCursor"));
+	}
+	
 	/**
 	 * @see PatientListController#getAllPatientLists(HttpServletRequest, HttpServletResponse)
 	 * @verifies get all the PatientList in the system
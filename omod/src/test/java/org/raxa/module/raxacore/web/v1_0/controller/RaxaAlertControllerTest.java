@@ -61,7 +61,7 @@ public class RaxaAlertControllerTest extends BaseModuleContextSensitiveTest {
 		SimpleObject post = new ObjectMapper().readValue(json, SimpleObject.class);
 		controller.updateRaxaAlert(getUuid(), post, request, response);
 		Assert.assertEquals(before, service.getAllRaxaAlerts(true).size());
-		String results = controller.getAllRaxaAlerts(request, response);
+		String results = controller.getAllRaxaAlerts(null, null, request, response);
 		//SimpleObject updatedRaxaAlert = SimpleObject.parseJson(results.substring(12, result.length() - 2));
 		LinkedHashMap updatedRaxaAlert = (LinkedHashMap) ((ArrayList) SimpleObject.parseJson(results).get("results")).get(0);
 		Assert.assertEquals(getUuid(), updatedRaxaAlert.get("uuid"));
@@ -95,12 +95,12 @@ public class RaxaAlertControllerTest extends BaseModuleContextSensitiveTest {
 	}
 	
 	/**
-	 * @see RaxaAlertController#getAllRaxaAlerts(HttpServletRequest, HttpServletResponse)
+	 * @see RaxaAlertController#getAllRaxaAlerts(Integer, Integer, HttpServletRequest, HttpServletResponse)
 	 * @verifies get all the RaxaAlert in the system
 	 */
 	@Test
 	public void shouldGetAll() throws Exception {
-		String allRaxaAlerts = controller.getAllRaxaAlerts(request, response);
+		String allRaxaAlerts = controller.getAllRaxaAlerts(null, null, request, response);
 		Assert.assertEquals(2, ((ArrayList) SimpleObject.parseJson(allRaxaAlerts).get("results")).size());
 	}
 	
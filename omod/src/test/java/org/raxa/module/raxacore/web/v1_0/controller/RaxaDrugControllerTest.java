@@ -92,7 +92,7 @@ public class RaxaDrugControllerTest extends BaseModuleContextSensitiveTest {
 		SimpleObject post = new ObjectMapper().readValue(json, SimpleObject.class);
 		controller.updateDrug(getUuid(), post, request, response);
 		Assert.assertEquals(before, service.getAllDrugs(true).size());
-		String results = controller.getAllDrugs(request, response);
+		String results = controller.getAllDrugs(null, null, request, response);
 		LinkedHashMap updatedDrugs = (LinkedHashMap) ((ArrayList) SimpleObject.parseJson(results).get("results")).get(0);
 		Assert.assertEquals(getUuid(), updatedDrugs.get("uuid"));
 		Assert.assertEquals("Changed name", updatedDrugs.get("name"));
@@ -103,7 +103,7 @@ public class RaxaDrugControllerTest extends BaseModuleContextSensitiveTest {
 	 */
 	@Test
 	public void getAllDrugs_shouldGetDrugs() throws Exception {
-		String allDrugs = controller.getAllDrugs(request, response);
+		String allDrugs = controller.getAllDrugs(null, null, request, response);
 		Assert.assertEquals(2, ((ArrayList) SimpleObject.parseJson(allDrugs).get("results")).size());
 	}
 	